@@ -0,0 +1,43 @@
+package com.rigiresearch.atl;
+
+import java.util.concurrent.TimeUnit;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the metamodel registration done by
+ * {@link AtlTransformation.Builder#withMetamodel(String, String)}.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class BuilderBenchmark {
+
+    /**
+     * Finds the nsURI of the Composed metamodel.
+     * @return The nsURI
+     */
+    @Benchmark
+    public URI nsUri() {
+        return AtlTransformation.Builder.nsUri(
+            ComposedModels.METAMODEL,
+            new ConcurrentPackageRegistry(EPackage.Registry.INSTANCE)
+        );
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.rigiresearch.atl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the heap retained by a loaded Composed model, with and without
+ * {@link ModelCompaction}. Besides the load time, the {@code bytesPerElement}
+ * counter reports the retained heap per model element, which should be
+ * lower when the model is compacted.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CompactionBenchmark {
+
+    /**
+     * The number of students in the model.
+     */
+    @Param({"100000", "1000000"})
+    private int size;
+
+    /**
+     * Whether the model is compacted.
+     */
+    @Param({"false", "true"})
+    private boolean compact;
+
+    /**
+     * A file with the model.
+     */
+    private Path file;
+
+    /**
+     * Creates the model.
+     * @throws IOException If the temporary file cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.file = new ComposedModels().file(this.size, ModelFormat.XMI);
+    }
+
+    /**
+     * Deletes the temporary file.
+     * @throws IOException If the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    /**
+     * Loads the model and measures the heap it retains.
+     * @param heap The retained heap counters
+     * @return The loaded objects
+     * @throws IOException If the model cannot be loaded
+     */
+    @Benchmark
+    public EList<EObject> load(final Heap heap) throws IOException {
+        final long before = CompactionBenchmark.used();
+        final EList<EObject> objects =
+            new SerializationParser(ModelFormat.XMI, this.compact)
+                .asEObjects(this.file);
+        final long after = CompactionBenchmark.used();
+        long elements = 0L;
+        final TreeIterator<EObject> iterator =
+            EcoreUtil.getAllContents(objects);
+        while (iterator.hasNext()) {
+            iterator.next();
+            elements += 1L;
+        }
+        heap.bytesPerElement = (after - before) / Math.max(1L, elements);
+        return objects;
+    }
+
+    /**
+     * The used heap after a full collection.
+     * @return A number of bytes
+     */
+    private static long used() {
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Retained heap counters reported along with the load time.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+
+        /**
+         * The heap retained per model element, in bytes. JMH reads public
+         * fields of auxiliary counters.
+         */
+        public long bytesPerElement;
+
+        /**
+         * Resets the counters.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.bytesPerElement = 0L;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Synthetic instances of the Composed metamodel, for benchmarking.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class ComposedModels {
+
+    /**
+     * The Composed metamodel.
+     */
+    static final File METAMODEL = new File("metamodels/Composed.ecore");
+
+    /**
+     * The Simple metamodel.
+     */
+    static final File SIMPLE = new File("metamodels/Simple.ecore");
+
+    /**
+     * The Composed2Simple transformation.
+     */
+    static final File MODULE =
+        new File("transformations/Composed2Simple.atl");
+
+    /**
+     * The number of distinct professors and departments.
+     */
+    private static final int DISTINCT = 100;
+
+    /**
+     * The Composed package.
+     */
+    private final EPackage epackage;
+
+    /**
+     * Default constructor. The Composed package is registered globally, so
+     * that {@link SerializationParser} can load the generated models.
+     */
+    ComposedModels() {
+        final String uri = AtlTransformation.Builder.nsUri(
+            ComposedModels.METAMODEL,
+            EPackage.Registry.INSTANCE
+        ).toString();
+        this.epackage = EPackage.Registry.INSTANCE.getEPackage(uri);
+    }
+
+    /**
+     * Creates students, each with a professor and a department.
+     * @param size The number of students
+     * @return A list of Student objects
+     */
+    List<EObject> students(final int size) {
+        final List<EObject> students = new ArrayList<>(size);
+        for (int index = 0; index < size; index += 1) {
+            final int group = index % ComposedModels.DISTINCT;
+            final EObject department = this.create("Department");
+            this.set(department, "name", String.format("Department %d", group));
+            final EObject professor = this.create("Professor");
+            this.set(professor, "name", String.format("Professor %d", group));
+            this.set(professor, "affiliation", department);
+            final EObject student = this.create("Student");
+            this.set(student, "name", String.format("Student %d", index));
+            this.set(student, "supervisor", professor);
+            students.add(student);
+        }
+        return students;
+    }
+
+    /**
+     * Writes students to a temporary file.
+     * @param size The number of students
+     * @param format The file format
+     * @return The file
+     * @throws IOException If the file cannot be written
+     */
+    Path file(final int size, final ModelFormat format) throws IOException {
+        final Path path = Files.createTempFile(
+            "composed",
+            String.format(".%s", format.getExtension())
+        );
+        path.toFile().deleteOnExit();
+        new SerializationParser().save(path, this.students(size));
+        return path;
+    }
+
+    /**
+     * Instantiates a class of the Composed package.
+     * @param name The class name
+     * @return A new object
+     */
+    private EObject create(final String name) {
+        return EcoreUtil.create(
+            (EClass) this.epackage.getEClassifier(name)
+        );
+    }
+
+    /**
+     * Sets a feature of an object.
+     * @param object The object
+     * @param feature The feature name
+     * @param value The new value
+     */
+    private void set(final EObject object, final String feature,
+        final Object value) {
+        object.eSet(object.eClass().getEStructuralFeature(feature), value);
+    }
+
+}
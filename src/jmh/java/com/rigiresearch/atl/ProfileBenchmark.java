@@ -0,0 +1,128 @@
+package com.rigiresearch.atl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loading and saving large Composed models with each
+ * {@link PerformanceProfile}.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx8g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ProfileBenchmark {
+
+    /**
+     * The number of students in the model.
+     */
+    @Param({"100000", "1000000"})
+    private int size;
+
+    /**
+     * The load and save profile.
+     */
+    @Param({"DEFAULT", "LARGE_MODELS"})
+    private String name;
+
+    /**
+     * The profile.
+     */
+    private PerformanceProfile profile;
+
+    /**
+     * A file with the model.
+     */
+    private Path file;
+
+    /**
+     * A file to save the model to.
+     */
+    private Path target;
+
+    /**
+     * The loaded model, to be saved.
+     */
+    private Resource loaded;
+
+    /**
+     * Creates the model.
+     * @throws IOException If the temporary files cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        if ("LARGE_MODELS".equals(this.name)) {
+            this.profile = PerformanceProfile.LARGE_MODELS;
+        } else {
+            this.profile = PerformanceProfile.DEFAULT;
+        }
+        this.file = new ComposedModels().file(this.size, ModelFormat.XMI);
+        this.target = Files.createTempFile("target", ".xmi");
+        this.loaded = this.load();
+        this.loaded.setURI(URI.createFileURI(this.target.toString()));
+    }
+
+    /**
+     * Deletes the temporary files.
+     * @throws IOException If the files cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+        Files.deleteIfExists(this.target);
+    }
+
+    /**
+     * Loads the model with the benchmark's profile.
+     * @return The loaded resource
+     */
+    @Benchmark
+    public Resource load() {
+        final ResourceSet set = new ResourceSetImpl();
+        set.getLoadOptions().putAll(this.profile.loadOptions());
+        set.getResourceFactoryRegistry()
+            .getExtensionToFactoryMap()
+            .put(
+                ModelFormat.XMI.getExtension(),
+                ModelFormat.XMI.getFactory()
+            );
+        return this.profile.load(
+            set,
+            URI.createFileURI(this.file.toString())
+        );
+    }
+
+    /**
+     * Saves the model with the benchmark's profile.
+     * @throws IOException If the model cannot be saved
+     */
+    @Benchmark
+    public void save() throws IOException {
+        this.loaded.save(this.profile.saveOptions());
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.rigiresearch.atl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link SerializationParser}, comparing XMI with the binary
+ * format for files.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SerializationBenchmark {
+
+    /**
+     * The number of students in the model.
+     */
+    @Param({"1", "1000", "100000"})
+    private int size;
+
+    /**
+     * The file format.
+     */
+    @Param({"XMI", "BINARY"})
+    private ModelFormat format;
+
+    /**
+     * The parser.
+     */
+    private SerializationParser parser;
+
+    /**
+     * The model, in an XMI resource.
+     */
+    private Resource xmi;
+
+    /**
+     * The model, in a resource of the benchmark's format.
+     */
+    private Resource resource;
+
+    /**
+     * The model, serialized as XMI.
+     */
+    private String xml;
+
+    /**
+     * A file with the model, in the benchmark's format.
+     */
+    private Path file;
+
+    /**
+     * A file to save the model to.
+     */
+    private Path target;
+
+    /**
+     * Creates the model. The objects are put in their resources once, so
+     * that the benchmarks measure serialization and not re-parenting.
+     * @throws IOException If the temporary files cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final ComposedModels models = new ComposedModels();
+        this.parser = new SerializationParser();
+        this.xml = this.parser.asXml(models.students(this.size));
+        this.file = models.file(this.size, this.format);
+        this.target = Files.createTempFile(
+            "target",
+            String.format(".%s", this.format.getExtension())
+        );
+        this.xmi = ModelFormat.XMI.getFactory().createResource(
+            URI.createURI(
+                String.format("resource.%s", ModelFormat.XMI.getExtension())
+            )
+        );
+        this.xmi.getContents().addAll(models.students(this.size));
+        this.resource = this.format.getFactory().createResource(
+            URI.createFileURI(this.target.toString())
+        );
+        this.resource.getContents().addAll(models.students(this.size));
+    }
+
+    /**
+     * Deletes the temporary files.
+     * @throws IOException If the files cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+        Files.deleteIfExists(this.target);
+    }
+
+    /**
+     * Serializes the model to a String.
+     * @return The XML-formatted string
+     * @throws IOException If the model cannot be serialized
+     */
+    @Benchmark
+    public String asXml() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.parser.save(stream, this.xmi);
+        return stream.toString(StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Parses the model from a String.
+     * @return The model objects
+     * @throws IOException If the model cannot be parsed
+     */
+    @Benchmark
+    public EList<EObject> asEObjects() throws IOException {
+        return this.parser.asEObjects(this.xml);
+    }
+
+    /**
+     * Loads the model from a file in the benchmark's format.
+     * @return The model objects
+     * @throws IOException If the model cannot be loaded
+     */
+    @Benchmark
+    public EList<EObject> load() throws IOException {
+        return this.parser.asEObjects(this.file);
+    }
+
+    /**
+     * Saves the model to a file in the benchmark's format.
+     * @throws IOException If the model cannot be saved
+     */
+    @Benchmark
+    public void save() throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(
+            Files.newOutputStream(this.target)
+        )) {
+            this.parser.save(stream, this.resource);
+        }
+    }
+
+}
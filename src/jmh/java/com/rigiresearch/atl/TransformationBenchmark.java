@@ -0,0 +1,102 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.m2m.atl.emftvm.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link AtlTransformation#run()}, both from scratch (cold) and
+ * through a {@link PreparedTransformation} (warm).
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TransformationBenchmark {
+
+    /**
+     * The number of students in the input model.
+     */
+    @Param({"1", "1000", "100000"})
+    private int size;
+
+    /**
+     * The input model file.
+     */
+    private File input;
+
+    /**
+     * The prepared transformation.
+     */
+    private PreparedTransformation prepared;
+
+    /**
+     * Creates the input model and prepares the transformation.
+     * @throws Exception If the input model cannot be written
+     */
+    @Setup
+    public void setup() throws Exception {
+        final Path path = new ComposedModels().file(this.size, ModelFormat.XMI);
+        this.input = path.toFile();
+        this.prepared = this.builder().build().prepare();
+    }
+
+    /**
+     * Configures, loads and runs the transformation from scratch.
+     * @return The output models
+     */
+    @Benchmark
+    public Map<String, Model> cold() {
+        return this.builder().build().run();
+    }
+
+    /**
+     * Runs the prepared transformation.
+     * @return The output models
+     */
+    @Benchmark
+    public Map<String, Model> warm() {
+        final Map<ModelType, List<NamedModel>> models =
+            AtlTransformation.Builder.emptyModels();
+        models.get(ModelType.INPUT).add(new NamedModel("IN", this.input));
+        models.get(ModelType.OUTPUT)
+            .add(new NamedModel("OUT", new ResourceImpl()));
+        return this.prepared.run(models);
+    }
+
+    /**
+     * Configures the transformation, with an in-memory output model.
+     * @return The builder
+     */
+    private AtlTransformation.Builder builder() {
+        return new AtlTransformation.Builder()
+            .withMetamodel("Simple", ComposedModels.SIMPLE.getPath())
+            .withMetamodel("Composed", ComposedModels.METAMODEL.getPath())
+            .withModel(ModelType.INPUT, "IN", this.input.getPath())
+            .withModel(ModelType.OUTPUT, "OUT", new ResourceImpl())
+            .withTransformation(ComposedModels.MODULE.getPath());
+    }
+
+}
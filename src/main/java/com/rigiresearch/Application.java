@@ -2,9 +2,21 @@ package com.rigiresearch;
 
 import com.rigiresearch.atl.AtlTransformation;
 import static com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.BatchResult;
+import com.rigiresearch.atl.BatchTransformation;
+import com.rigiresearch.atl.ModelConverter;
+import com.rigiresearch.atl.PipelinedTransformation;
+import com.rigiresearch.atl.PreparedTransformation;
+import com.rigiresearch.atl.RuleProfiler;
 import com.rigiresearch.atl.SerializationParser;
+import com.rigiresearch.atl.ShardedTransformation;
+import com.rigiresearch.atl.TransformationServer;
+import com.rigiresearch.atl.WatchingTransformation;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import org.eclipse.emf.ecore.EObject;
@@ -19,12 +31,172 @@ import org.eclipse.m2m.atl.emftvm.Model;
 @RequiredArgsConstructor
 public final class Application {
 
+    /**
+     * The batch mode argument.
+     */
+    private static final String BATCH = "batch";
+
+    /**
+     * The conversion mode argument.
+     */
+    private static final String CONVERT = "convert";
+
+    /**
+     * The pipelined batch mode argument.
+     */
+    private static final String PIPELINE = "pipeline";
+
+    /**
+     * The sharded mode argument.
+     */
+    private static final String SHARD = "shard";
+
+    /**
+     * The streaming sharded mode argument.
+     */
+    private static final String STREAM = "stream";
+
+    /**
+     * The number of root elements per shard in sharded mode.
+     */
+    private static final int SHARD_ROOTS = 10_000;
+
+    /**
+     * The profiling mode argument.
+     */
+    private static final String PROFILE = "profile";
+
+    /**
+     * The server mode argument.
+     */
+    private static final String SERVE = "serve";
+
+    /**
+     * The default server port.
+     */
+    private static final int PORT = 8080;
+
+    /**
+     * The watch mode argument.
+     */
+    private static final String WATCH = "watch";
+
+    /**
+     * The metrics mode argument.
+     */
+    private static final String METRICS = "metrics";
+
+    /**
+     * The default quiet period that ends a burst of changes in watch mode,
+     * in milliseconds.
+     */
+    private static final long DEBOUNCE = 300L;
+
     /**
      * The main entry point.
+     * <p>
+     * Without arguments, transforms models/composed.xmi. In metrics mode
+     * ({@code metrics}), it also prints the metrics of the run in JSON to the
+     * standard error. In batch mode, the
+     * arguments are: {@code batch <directory or glob> <output pattern>
+     * [threads]}, where the output pattern contains a {@code %s} placeholder
+     * for the input file name (e.g., {@code batch "models/*.xmi"
+     * "out/%s-simple.xmi"}). In conversion mode, the arguments are:
+     * {@code convert <source> <target>}, where the format of each file is
+     * given by its extension (.xmi, .xmib or .xmip). Pipeline mode takes the
+     * same arguments as batch mode, but overlaps parsing, transforming and
+     * saving.
+     * In server mode, the arguments are: {@code serve [port] [threads]}. In
+     * sharded mode, the arguments are: {@code shard <input> <output>
+     * [threads]}, and the roots of the single input model are transformed in
+     * parallel. Stream mode takes the same arguments as sharded mode, but
+     * writes the output of each shard as soon as it is ready. In profiling
+     * mode, the arguments are: {@code profile [folded stacks file]}. In
+     * watch mode, the arguments are: {@code watch [debounce milliseconds]},
+     * and the transformation runs again whenever its files change. A mode
+     * with too few or too many arguments, or an unknown mode, is reported as
+     * a usage error.
      * @param args The application arguments
      */
-    public static void main(final String... args) throws IOException {
-        new Application().start();
+    public static void main(final String... args)
+        throws IOException, InterruptedException {
+        final String mode;
+        if (args.length > 0) {
+            mode = args[0];
+        } else {
+            mode = "";
+        }
+        if (Application.CONVERT.equals(mode)) {
+            Application.expect(args, 3, 3, "convert <source> <target>");
+            new ModelConverter(
+                new File("metamodels/Simple.ecore"),
+                new File("metamodels/Composed.ecore")
+            ).convert(new File(args[1]), new File(args[2]));
+        } else if (Application.BATCH.equals(mode)
+            || Application.PIPELINE.equals(mode)) {
+            Application.expect(
+                args,
+                3,
+                4,
+                String.format(
+                    "%s <directory or glob> <output pattern> [threads]",
+                    mode
+                )
+            );
+            if (!BatchTransformation.valid(args[2])) {
+                Application.usage(
+                    String.format(
+                        "The output pattern must have exactly one %%s"
+                            + " placeholder: %s",
+                        args[2]
+                    )
+                );
+            }
+            new Application().batch(
+                args[1],
+                args[2],
+                Application.threads(args, 3),
+                Application.PIPELINE.equals(mode)
+            );
+        } else if (Application.SHARD.equals(mode)
+            || Application.STREAM.equals(mode)) {
+            Application.expect(
+                args,
+                3,
+                4,
+                String.format("%s <input> <output> [threads]", mode)
+            );
+            new Application().shard(
+                args[1],
+                args[2],
+                Application.threads(args, 3),
+                Application.STREAM.equals(mode)
+            );
+        } else if (Application.PROFILE.equals(mode)) {
+            Application.expect(args, 1, 2, "profile [folded stacks file]");
+            new Application().profile(
+                args.length > 1 ? args[1] : "profile.folded"
+            );
+        } else if (Application.SERVE.equals(mode)) {
+            Application.expect(args, 1, 3, "serve [port] [threads]");
+            new Application().serve(
+                args.length > 1 ? Integer.parseInt(args[1]) : Application.PORT,
+                Application.threads(args, 2)
+            );
+        } else if (Application.WATCH.equals(mode)) {
+            Application.expect(args, 1, 2, "watch [debounce milliseconds]");
+            new Application().watch(
+                args.length > 1 ? Long.parseLong(args[1])
+                    : Application.DEBOUNCE
+            );
+        } else if (Application.METRICS.equals(mode)) {
+            Application.expect(args, 1, 1, "metrics");
+            new Application().start(true);
+        } else if (args.length == 0) {
+            new Application().start(false);
+        } else {
+            Application.usage(String.format("Unknown mode '%s'", mode));
+        }
     }
 
     /**
@@ -32,20 +204,25 @@ public final class Application {
      * @throws IOException If something bad happens while saving the model
      */
     public void start() throws IOException {
-        final Map<String, Model> result = new AtlTransformation.Builder()
-            .withMetamodel("Simple", "metamodels/Simple.ecore")
-            .withMetamodel("Composed", "metamodels/Composed.ecore")
-            // There can be several inputs and outputs
-            .withModel(ModelType.INPUT, "IN", "models/composed.xmi")
-            .withModel(ModelType.OUTPUT, "OUT", "models/simple.xmi")
-            .withTransformation("transformations/Composed2Simple.atl")
-            .build()
-            .run();
+        this.start(false);
+    }
 
-        // Write the result to a file (models/simple.xmi)
-        result.get("OUT")
-            .getResource()
-            .save(Collections.EMPTY_MAP);
+    /**
+     * Runs the ALT transformation.
+     * @param metrics Whether to report where the time went, in JSON, to the
+     *  standard error
+     * @throws IOException If something bad happens while saving the model
+     */
+    public void start(final boolean metrics) throws IOException {
+        final AtlTransformation.Builder builder = this.builder()
+            // Write the result to a file (models/simple.xmi)
+            .withOutputSaving(true);
+        if (metrics) {
+            builder.withMetricsListener(
+                run -> System.err.println(run.toJson())
+            );
+        }
+        final Map<String, Model> result = builder.build().run();
 
         // Print out the result to the console
         final EObject simple = result.get("OUT")
@@ -55,4 +232,216 @@ public final class Application {
         System.out.println(new SerializationParser().asXml(simple));
     }
 
+    /**
+     * Runs the ATL transformation on several input models in parallel.
+     * @param location A directory or glob pattern of input models
+     * @param pattern The output file pattern
+     * @param threads The number of worker threads
+     * @param pipelined Whether to overlap parsing, transforming and saving
+     * @throws IOException If the input directory cannot be read
+     * @throws InterruptedException If interrupted while waiting for workers
+     */
+    public void batch(final String location, final String pattern,
+        final int threads, final boolean pipelined)
+        throws IOException, InterruptedException {
+        final List<File> files = BatchTransformation.files(location);
+        final PreparedTransformation prepared =
+            this.builder().build().prepare();
+        final BatchResult result;
+        if (pipelined) {
+            result = new PipelinedTransformation(
+                prepared,
+                "IN",
+                "OUT",
+                pattern,
+                threads,
+                threads * 2
+            ).run(files);
+        } else {
+            result = new BatchTransformation(
+                prepared,
+                "IN",
+                "OUT",
+                pattern,
+                threads
+            ).run(files);
+        }
+        for (final Map.Entry<File, Throwable> entry
+            : result.getFailures().entrySet()) {
+            System.err.printf(
+                "Failed to transform %s: %s%n",
+                entry.getKey(),
+                entry.getValue()
+            );
+        }
+        System.out.printf(
+            "Transformed %d of %d models in %.3f s (%.2f models/s)%n",
+            result.getOutputs().size(),
+            files.size(),
+            result.getElapsed() / 1.0e9,
+            result.throughput()
+        );
+    }
+
+    /**
+     * Runs the ATL transformation on the roots of a single input model in
+     * parallel, using at most half of the maximum heap for the shards.
+     * @param source The input model
+     * @param target The output model
+     * @param threads The number of worker threads
+     * @param streaming Whether to write the output of each shard as soon as
+     *  it is ready
+     * @throws IOException If the output model cannot be saved
+     * @throws InterruptedException If interrupted while waiting for workers
+     */
+    public void shard(final String source, final String target,
+        final int threads, final boolean streaming)
+        throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final ShardedTransformation sharded = new ShardedTransformation(
+            this.builder().build().prepare(),
+            "IN",
+            "OUT",
+            Application.SHARD_ROOTS,
+            threads,
+            Runtime.getRuntime().maxMemory() / 2L
+        );
+        if (streaming) {
+            sharded.stream(new File(source), new File(target));
+        } else {
+            sharded.run(new File(source), new File(target));
+        }
+        System.out.printf(
+            "Transformed %s in %.3f s%n",
+            source,
+            (System.nanoTime() - start) / 1.0e9
+        );
+    }
+
+    /**
+     * Runs the ATL transformation with the rule profiler, prints the report
+     * and writes the folded stacks for flame graphs.
+     * @param folded The folded stacks file
+     * @throws IOException If the folded stacks cannot be written
+     */
+    public void profile(final String folded) throws IOException {
+        final RuleProfiler profiler = new RuleProfiler();
+        this.builder()
+            .withProfiler(profiler)
+            .build()
+            .run();
+        System.out.print(profiler.report());
+        profiler.writeFolded(Paths.get(folded));
+    }
+
+    /**
+     * Keeps the ATL transformation resident and serves jobs over HTTP until
+     * the process is stopped. Model paths are resolved against the working
+     * directory, and jobs must send the random token printed at startup.
+     * @param port The local port to listen on
+     * @param threads The maximum number of concurrent jobs
+     * @throws IOException If the server cannot bind to the port
+     */
+    public void serve(final int port, final int threads) throws IOException {
+        final TransformationServer server = new TransformationServer(
+            Collections.singletonMap(
+                "Composed2Simple",
+                this.builder().build().prepare()
+            ),
+            port,
+            threads
+        );
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        System.out.printf(
+            "Listening on %s, send the token %s in the X-Auth-Token header%n",
+            server.address(),
+            server.token()
+        );
+    }
+
+    /**
+     * Keeps the ATL transformation resident and runs it again whenever the
+     * input model, the metamodels or the module change, until the process
+     * is stopped.
+     * @param debounce The quiet period that ends a burst of changes, in
+     *  milliseconds
+     * @throws IOException If the files cannot be watched
+     * @throws InterruptedException If interrupted while watching
+     */
+    public void watch(final long debounce)
+        throws IOException, InterruptedException {
+        final PreparedTransformation prepared = this.builder()
+            .withOutputSaving(true)
+            .build()
+            .prepare();
+        new WatchingTransformation(
+            debounce,
+            rerun -> System.out.println(rerun.summary())
+        ).watch("Composed2Simple", prepared).run();
+    }
+
+    /**
+     * Exits with a usage error unless the number of arguments, including the
+     * mode, is within the given bounds.
+     * @param args The application arguments
+     * @param min The minimum number of arguments
+     * @param max The maximum number of arguments
+     * @param usage The expected arguments
+     */
+    private static void expect(final String[] args, final int min,
+        final int max, final String usage) {
+        if (args.length < min || args.length > max) {
+            Application.usage(String.format("Usage: %s", usage));
+        }
+    }
+
+    /**
+     * Reports a usage error and exits.
+     * @param message The error message
+     */
+    private static void usage(final String message) {
+        System.err.println(message);
+        System.err.printf(
+            "Modes: %s, %s, %s, %s, %s, %s, %s, %s, %s%n",
+            Application.METRICS,
+            Application.BATCH,
+            Application.PIPELINE,
+            Application.CONVERT,
+            Application.SHARD,
+            Application.STREAM,
+            Application.PROFILE,
+            Application.SERVE,
+            Application.WATCH
+        );
+        System.exit(2);
+    }
+
+    /**
+     * The number of worker threads given at a position of the arguments.
+     * @param args The application arguments
+     * @param index The position of the number of threads
+     * @return The given number, or the number of available processors
+     */
+    private static int threads(final String[] args, final int index) {
+        if (args.length > index) {
+            return Integer.parseInt(args[index]);
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Configures the ATL transformation.
+     * @return The transformation builder
+     */
+    private AtlTransformation.Builder builder() {
+        return new AtlTransformation.Builder()
+            .withMetamodel("Simple", "metamodels/Simple.ecore")
+            .withMetamodel("Composed", "metamodels/Composed.ecore")
+            // There can be several inputs and outputs
+            .withModel(ModelType.INPUT, "IN", "models/composed.xmi")
+            .withModel(ModelType.OUTPUT, "OUT", "models/simple.xmi")
+            .withTransformation("transformations/Composed2Simple.atl");
+    }
+
 }
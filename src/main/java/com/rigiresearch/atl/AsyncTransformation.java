@@ -0,0 +1,446 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import lombok.ToString;
+import org.eclipse.m2m.atl.emftvm.Model;
+
+/**
+ * Runs a prepared transformation without blocking the caller. Each run
+ * returns a future of its output models.
+ * <p>
+ * At most a fixed number of runs execute at the same time; the others wait
+ * in a bounded queue, without holding a thread. When the queue is full, new
+ * runs are either rejected, completing their future with a
+ * {@link RejectedExecutionException}, or the caller blocks until there is
+ * room. Cancelling a future removes its run from the queue or, if it already
+ * started, stops the engine. Runs execute compiled code until cancelled, as
+ * synchronous runs do, since the monitor that stops them is only installed
+ * on cancellation.
+ * <p>
+ * Runs execute on virtual threads if the JDK supports them, and on a cached
+ * pool of daemon threads otherwise, unless an executor is given to the
+ * builder.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = {"transformation", "concurrency", "capacity", "policy"})
+public final class AsyncTransformation implements AutoCloseable {
+
+    /**
+     * The prepared transformation.
+     */
+    private final PreparedTransformation transformation;
+
+    /**
+     * The executor that runs the transformations.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Whether the executor was created by this object, and must be shut
+     * down when it is closed.
+     */
+    private final boolean owned;
+
+    /**
+     * The maximum number of runs executing at the same time.
+     */
+    private final int concurrency;
+
+    /**
+     * The maximum number of runs waiting to execute.
+     */
+    private final int capacity;
+
+    /**
+     * What to do when the queue is full.
+     */
+    private final Overflow policy;
+
+    /**
+     * Permits for running or queued runs.
+     */
+    private final Semaphore slots;
+
+    /**
+     * Runs waiting to execute, guarded by this object.
+     */
+    private final Queue<Job> pending;
+
+    /**
+     * The number of runs executing, guarded by this object.
+     */
+    private int active;
+
+    /**
+     * Default constructor.
+     * @param builder The builder
+     */
+    private AsyncTransformation(final Builder builder) {
+        this.transformation = builder.transformation;
+        this.owned = builder.executor == null;
+        this.executor = this.owned
+            ? AsyncTransformation.defaultExecutor() : builder.executor;
+        this.concurrency = builder.concurrency;
+        this.capacity = builder.capacity;
+        this.policy = builder.policy;
+        this.slots = new Semaphore(this.concurrency + this.capacity, true);
+        this.pending = new ArrayDeque<>();
+    }
+
+    /**
+     * Runs the transformation on the models given to the transformation
+     * builder.
+     * @return The future output models
+     */
+    public CompletableFuture<Map<String, Model>> submit() {
+        return this.submit(this.transformation.models());
+    }
+
+    /**
+     * Runs the transformation on the given models.
+     * @param models The input, output and in-out models
+     * @return The future output models
+     */
+    public CompletableFuture<Map<String, Model>> submit(
+        final Map<ModelType, List<NamedModel>> models) {
+        final Job job = new Job(models);
+        if (!this.admit(job)) {
+            return job.future;
+        }
+        job.future.whenComplete((result, throwable) -> {
+            if (throwable instanceof CancellationException) {
+                this.cancel(job);
+            }
+        });
+        final boolean start;
+        synchronized (this) {
+            start = this.active < this.concurrency;
+            if (start) {
+                this.active += 1;
+            } else {
+                this.pending.add(job);
+            }
+        }
+        if (start && !this.dispatch(job)) {
+            this.finished();
+        }
+        return job.future;
+    }
+
+    /**
+     * The number of runs executing.
+     * @return A number of runs
+     */
+    public synchronized int active() {
+        return this.active;
+    }
+
+    /**
+     * The number of runs waiting to execute.
+     * @return A number of runs
+     */
+    public synchronized int queued() {
+        return this.pending.size();
+    }
+
+    /**
+     * Shuts down the executor, unless it was given to the builder. Runs
+     * already executing are completed, whereas queued and new runs fail
+     * with a {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        if (this.owned) {
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * Takes a slot for a new run, according to the overflow policy.
+     * @param job The run
+     * @return Whether the run was admitted; otherwise its future is already
+     *  completed
+     */
+    private boolean admit(final Job job) {
+        if (this.slots.tryAcquire()) {
+            return true;
+        }
+        if (this.policy == Overflow.REJECT) {
+            job.future.completeExceptionally(
+                new RejectedExecutionException(
+                    String.format(
+                        "%d transformations are running and %d are queued",
+                        this.concurrency,
+                        this.capacity
+                    )
+                )
+            );
+            return false;
+        }
+        try {
+            this.slots.acquire();
+            return true;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            job.future.completeExceptionally(exception);
+            return false;
+        }
+    }
+
+    /**
+     * Hands a run over to the executor.
+     * @param job The run
+     * @return Whether the executor accepted the run; otherwise its future is
+     *  already completed
+     */
+    private boolean dispatch(final Job job) {
+        try {
+            this.executor.execute(() -> this.execute(job));
+            return true;
+        } catch (final RejectedExecutionException exception) {
+            job.future.completeExceptionally(exception);
+            return false;
+        }
+    }
+
+    /**
+     * Executes a run, then starts the next queued one.
+     * @param job The run
+     */
+    private void execute(final Job job) {
+        try {
+            if (!job.future.isDone()) {
+                job.future.complete(
+                    this.transformation.run(job.models, job.monitor)
+                );
+            }
+        // Runs fail with unchecked exceptions only, including the engine's
+        // when the monitor is terminated
+        } catch (final RuntimeException | Error exception) {
+            job.future.completeExceptionally(exception);
+        } finally {
+            this.finished();
+        }
+    }
+
+    /**
+     * Releases the slot of a finished run and starts the next queued run,
+     * if any.
+     */
+    private void finished() {
+        Job next;
+        do {
+            this.slots.release();
+            synchronized (this) {
+                next = this.pending.poll();
+                if (next == null) {
+                    this.active -= 1;
+                }
+            }
+        } while (next != null && !this.dispatch(next));
+    }
+
+    /**
+     * Stops a cancelled run, or removes it from the queue.
+     * @param job The run
+     */
+    private void cancel(final Job job) {
+        job.monitor.terminate();
+        final boolean removed;
+        synchronized (this) {
+            removed = this.pending.remove(job);
+        }
+        if (removed) {
+            this.slots.release();
+        }
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per run if the JDK
+     * supports them, or a cached pool of daemon threads otherwise. The
+     * number of threads is bounded by the concurrency limit either way.
+     * @return A new executor
+     */
+    private static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor")
+                .invoke(null);
+        } catch (final NoSuchMethodException | IllegalAccessException
+            | InvocationTargetException exception) {
+            return Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "atl-async");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * What to do with a new run when the queue is full.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    public enum Overflow {
+        /**
+         * Complete the run's future with a
+         * {@link RejectedExecutionException}.
+         */
+        REJECT,
+
+        /**
+         * Block the caller until there is room in the queue.
+         */
+        BLOCK
+    }
+
+    /**
+     * A submitted run.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private static final class Job {
+
+        /**
+         * The input, output and in-out models.
+         */
+        private final Map<ModelType, List<NamedModel>> models;
+
+        /**
+         * The future output models.
+         */
+        private final CompletableFuture<Map<String, Model>> future;
+
+        /**
+         * The monitor that stops the run when it is cancelled.
+         */
+        private final TerminableMonitor monitor;
+
+        /**
+         * Default constructor.
+         * @param models The input, output and in-out models
+         */
+        Job(final Map<ModelType, List<NamedModel>> models) {
+            this.models = models;
+            this.future = new CompletableFuture<>();
+            this.monitor = new TerminableMonitor();
+        }
+    }
+
+    /**
+     * An asynchronous transformation builder.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    public static final class Builder {
+
+        /**
+         * The prepared transformation.
+         */
+        private final PreparedTransformation transformation;
+
+        /**
+         * The executor, or {@code null} to create one.
+         */
+        private ExecutorService executor;
+
+        /**
+         * The maximum number of runs executing at the same time.
+         */
+        private int concurrency;
+
+        /**
+         * The maximum number of runs waiting to execute.
+         */
+        private int capacity;
+
+        /**
+         * What to do when the queue is full.
+         */
+        private Overflow policy;
+
+        /**
+         * Default constructor.
+         * @param transformation The prepared transformation
+         */
+        public Builder(final PreparedTransformation transformation) {
+            this.transformation = transformation;
+            this.concurrency = Runtime.getRuntime().availableProcessors();
+            this.capacity = Integer.MAX_VALUE - this.concurrency;
+            this.policy = Overflow.REJECT;
+        }
+
+        /**
+         * Runs the transformations on the given executor. It is not shut
+         * down when the asynchronous transformation is closed.
+         * @param service The executor
+         * @return This builder
+         */
+        public Builder withExecutor(final ExecutorService service) {
+            this.executor = service;
+            return this;
+        }
+
+        /**
+         * Limits the number of runs executing at the same time (all cores
+         * by default).
+         * @param limit The maximum number of runs
+         * @return This builder
+         */
+        public Builder withConcurrency(final int limit) {
+            this.concurrency = limit;
+            return this;
+        }
+
+        /**
+         * Limits the number of runs waiting to execute (unbounded by
+         * default), and what to do with new runs when there are that many.
+         * @param limit The maximum number of queued runs
+         * @param overflow What to do when the queue is full
+         * @return This builder
+         */
+        public Builder withQueue(final int limit, final Overflow overflow) {
+            this.capacity = limit;
+            this.policy = overflow;
+            return this;
+        }
+
+        /**
+         * Builds the asynchronous transformation.
+         * @return A new asynchronous transformation
+         */
+        public AsyncTransformation build() {
+            if (this.concurrency < 1) {
+                throw new IllegalArgumentException(
+                    "The concurrency limit must be positive");
+            }
+            if (this.capacity < 0) {
+                throw new IllegalArgumentException(
+                    "The queue capacity must not be negative");
+            }
+            this.capacity = Math.min(
+                this.capacity,
+                Integer.MAX_VALUE - this.concurrency
+            );
+            return new AsyncTransformation(this);
+        }
+    }
+
+}
@@ -1,14 +1,37 @@
 package com.rigiresearch.atl;
 
+import com.rigiresearch.atl.RunMetrics.Phase;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -18,18 +41,17 @@ import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.impl.EPackageRegistryImpl;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
-import org.eclipse.emf.ecore.util.BasicExtendedMetaData;
-import org.eclipse.emf.ecore.util.ExtendedMetaData;
-import org.eclipse.emf.ecore.xmi.XMLResource;
-import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
 import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
 import org.eclipse.m2m.atl.emftvm.EmftvmFactory;
 import org.eclipse.m2m.atl.emftvm.ExecEnv;
 import org.eclipse.m2m.atl.emftvm.Metamodel;
 import org.eclipse.m2m.atl.emftvm.Model;
 import org.eclipse.m2m.atl.emftvm.impl.resource.EMFTVMResourceFactoryImpl;
-import org.eclipse.m2m.atl.emftvm.util.DefaultModuleResolver;
+import org.eclipse.m2m.atl.emftvm.util.ModuleResolver;
 import org.eclipse.m2m.atl.emftvm.util.TimingData;
 
 /**
@@ -46,9 +68,11 @@ import org.eclipse.m2m.atl.emftvm.util.TimingData;
 public final class AtlTransformation {
 
     /**
-     * Pairs of metamodel name and nsURI.
+     * Pairs of metamodel name and nsURI. The map is immutable, and is
+     * replaced as a whole when the metamodels are reloaded, so that runs
+     * on other threads never see it half-updated.
      */
-    private final Map<String, URI> metamodels;
+    private final AtomicReference<Map<String, URI>> metamodels;
 
     /**
      * A map of models organized by type.
@@ -60,29 +84,536 @@ public final class AtlTransformation {
      */
     private final File transformation;
 
+    /**
+     * Pairs of metamodel name and file, for metamodels loaded from disk.
+     */
+    private final Map<String, File> metamodelFiles;
+
+    /**
+     * Listeners notified with the metrics of each run.
+     */
+    private final List<MetricsListener> listeners;
+
+    /**
+     * Whether output and in-out models stored in files are saved at the end
+     * of each run.
+     */
+    private final boolean saving;
+
+    /**
+     * The packages of this transformation's metamodels. It is not shared
+     * with other transformations, and falls back to the global registry.
+     */
+    private final EPackage.Registry registry;
+
+    /**
+     * The directory where compiled .atl modules are cached.
+     */
+    private final File cache;
+
+    /**
+     * The options to load and save models with.
+     */
+    private final PerformanceProfile profile;
+
+    /**
+     * The cache of results, or {@code null} if results are not cached.
+     */
+    private final ResultCache results;
+
+    /**
+     * The profiler attached to each run, or {@code null} if runs are not
+     * profiled.
+     */
+    private final RuleProfiler profiler;
+
+    /**
+     * Whether input models loaded from files are compacted for read-only
+     * use.
+     */
+    private final boolean compact;
+
+    /**
+     * The executor that loads metamodels and model files concurrently, or
+     * {@code null} to load them one after another.
+     */
+    private final ExecutorService loader;
+
     /**
      * Launches the transformation.
      * @return The output models
      */
     public Map<String, Model> run() {
-        final ResourceSet set = new ResourceSetImpl();
-        final ExecEnv environment = EmftvmFactory.eINSTANCE.createExecEnv();
-        this.registerMetamodels(set, environment);
-        this.registerFactories(set);
-        // Register the models
-        final Map<String, Model> instances =
-            this.registerModels(set, environment, this.models);
-        // Load and run the transformation module
+        return this.run(this.context(), this.models);
+    }
+
+    /**
+     * Loads the metamodels and the transformation module once, so that
+     * several model sets can be transformed without repeating the setup.
+     * @return A reusable, thread-safe transformation
+     */
+    public PreparedTransformation prepare() {
+        return new PreparedTransformation(this);
+    }
+
+    /**
+     * Runs the transformation module on the given models.
+     * @param context A context with the metamodels and module already loaded
+     * @param config The input, output and in-out models
+     * @return The registered models
+     */
+    Map<String, Model> run(final ExecutionContext context,
+        final Map<ModelType, List<NamedModel>> config) {
+        return this.run(context, config, null);
+    }
+
+    /**
+     * Runs the transformation module on the given models, stopping when
+     * the given monitor is terminated.
+     * @param context A context with the metamodels and module already loaded
+     * @param config The input, output and in-out models
+     * @param terminable The monitor, or {@code null} if the run cannot be
+     *  stopped
+     * @return The registered models
+     */
+    Map<String, Model> run(final ExecutionContext context,
+        final Map<ModelType, List<NamedModel>> config,
+        final TerminableMonitor terminable) {
+        final long allocated = RunMetrics.allocatedBytes();
+        final Map<Phase, Long> durations = context.takeSetup();
+        String key = null;
+        if (this.results != null) {
+            key = this.key(config);
+            final File entry = this.results.lookup(key);
+            final long start = System.nanoTime();
+            Map<String, Model> instances = null;
+            if (entry != null) {
+                instances = this.restore(context.getSet(), entry, config);
+            }
+            if (instances != null) {
+                this.results.hit();
+                durations.put(Phase.MODEL_LOAD, System.nanoTime() - start);
+                this.notify(durations, instances, allocated, 0L, "cached");
+                return instances;
+            }
+            // Not cached, or evicted while it was being read
+            this.results.miss();
+        }
         final TimingData data = new TimingData();
-        final DefaultModuleResolver resolver =
-            new DefaultModuleResolver(this.moduleDirectory(), set);
-        environment.loadModule(resolver, this.moduleName());
+        final LongAdder loading = new LongAdder();
+        long start = System.nanoTime();
+        final Map<String, Model> instances = this.registerModels(
+            context.getSet(),
+            context.getEnvironment(),
+            config,
+            loading
+        );
+        durations.put(Phase.MODEL_LOAD, System.nanoTime() - start);
         data.finishLoading();
-        environment.run(data);
+        start = System.nanoTime();
+        if (this.profiler != null) {
+            this.profiler.started();
+        }
+        if (terminable != null) {
+            terminable.setDelegate(this.profiler);
+            terminable.attach(context.getEnvironment());
+        }
+        if (this.profiler == null && terminable == null) {
+            context.getEnvironment().run(data);
+        } else {
+            if (this.profiler != null) {
+                context.getEnvironment().setMonitor(this.profiler);
+            }
+            try {
+                context.getEnvironment().run(data);
+            } finally {
+                if (terminable != null) {
+                    terminable.detach();
+                }
+                context.getEnvironment().setMonitor(null);
+            }
+        }
         data.finish();
+        durations.put(Phase.EXECUTION, System.nanoTime() - start);
+        if (this.saving) {
+            start = System.nanoTime();
+            this.save(instances, config);
+            durations.put(Phase.SAVE, System.nanoTime() - start);
+        }
+        if (key != null) {
+            final Map<String, Resource> outputs = new LinkedHashMap<>();
+            for (final NamedModel ref : AtlTransformation.targets(config)) {
+                outputs.put(
+                    ref.getName(),
+                    instances.get(ref.getName()).getResource()
+                );
+            }
+            this.results.store(key, outputs, this.profile.saveOptions());
+        }
+        this.notify(
+            durations,
+            instances,
+            allocated,
+            loading.sum(),
+            data.toString()
+        );
         return instances;
     }
 
+    /**
+     * Notifies the listeners of the metrics of a run.
+     * @param durations The duration of each phase
+     * @param instances The registered models
+     * @param allocated The bytes allocated by the thread before the run
+     * @param loading The bytes allocated by the loader threads for the run
+     * @param engine The engine's timing report
+     */
+    @SuppressWarnings("ParameterNumber")
+    private void notify(final Map<Phase, Long> durations,
+        final Map<String, Model> instances, final long allocated,
+        final long loading, final String engine) {
+        if (!this.listeners.isEmpty()) {
+            final long now = RunMetrics.allocatedBytes();
+            final RunMetrics metrics = new RunMetrics(
+                durations,
+                RunMetrics.count(instances),
+                allocated < 0L ? -1L : now - allocated + loading,
+                engine
+            );
+            for (final MetricsListener listener : this.listeners) {
+                listener.finished(metrics);
+            }
+        }
+    }
+
+    /**
+     * Computes the cache key of a run from the module, the libraries it
+     * imports, the metamodels and the input and in-out models. Metamodels
+     * given as packages only contribute their nsURI.
+     * @param config The input, output and in-out models
+     * @return A hexadecimal hash
+     */
+    private String key(final Map<ModelType, List<NamedModel>> config) {
+        final MessageDigest digest = ModelDigest.digest();
+        for (final File module : this.modules()) {
+            ModelDigest.update(digest, module.getName());
+            if (module.isFile()) {
+                ModelDigest.update(digest, module);
+            }
+        }
+        for (final Map.Entry<String, URI> entry
+            : new TreeMap<>(this.metamodels.get()).entrySet()) {
+            ModelDigest.update(digest, entry.getKey());
+            ModelDigest.update(digest, entry.getValue().toString());
+            final File file = this.metamodelFiles.get(entry.getKey());
+            if (file != null) {
+                ModelDigest.update(digest, file);
+            }
+        }
+        for (final ModelType type : ModelType.values()) {
+            for (final NamedModel ref : config.get(type)) {
+                ModelDigest.update(digest, type.name());
+                ModelDigest.update(digest, ref.getName());
+                if (type == ModelType.OUTPUT) {
+                    // Only the format of the output matters
+                    ModelDigest.update(
+                        digest,
+                        AtlTransformation.format(ref).name()
+                    );
+                } else if (ref.getPath() != null) {
+                    ModelDigest.update(digest, ref.getPath());
+                } else {
+                    for (final EObject root : ref.getResource().getContents()) {
+                        ModelDigest.update(digest, ModelDigest.of(root));
+                    }
+                }
+            }
+        }
+        return ModelDigest.hex(digest.digest());
+    }
+
+    /**
+     * Loads the output and in-out models of a run from the result cache,
+     * instead of running the module. Only these models are returned.
+     * <p>
+     * All the cached models are read before any model of the run is
+     * changed, so that an entry that cannot be read (e.g., because another
+     * process evicted it) leaves the run's models untouched.
+     * @param set The resource set
+     * @param entry The cache entry
+     * @param config The input, output and in-out models
+     * @return The cached models, or {@code null} if the entry cannot be read
+     */
+    private Map<String, Model> restore(final ResourceSet set,
+        final File entry, final Map<ModelType, List<NamedModel>> config) {
+        final ResourceSet scratch = this.resourceSet();
+        final Map<NamedModel, Resource> cached = new LinkedHashMap<>();
+        for (final NamedModel ref : AtlTransformation.targets(config)) {
+            final Resource resource = scratch.createResource(
+                URI.createURI(
+                    String.format(
+                        "cached/%s.%s",
+                        ref.getName(),
+                        AtlTransformation.format(ref).getExtension()
+                    )
+                )
+            );
+            final File file = new File(entry, ref.getName());
+            try (InputStream stream = new BufferedInputStream(
+                Files.newInputStream(file.toPath()))) {
+                resource.load(stream, scratch.getLoadOptions());
+            } catch (final IOException | RuntimeException exception) {
+                return null;
+            }
+            cached.put(ref, resource);
+        }
+        final Map<String, Model> result = new HashMap<>();
+        for (final Map.Entry<NamedModel, Resource> pair : cached.entrySet()) {
+            final NamedModel ref = pair.getKey();
+            final List<EObject> roots =
+                new ArrayList<>(pair.getValue().getContents());
+            pair.getValue().getContents().clear();
+            final Resource resource = this.resource(set, ref, false);
+            resource.getContents().clear();
+            resource.getContents().addAll(roots);
+            if (this.saving && ref.getPath() != null) {
+                this.copy(
+                    new File(entry, ref.getName()),
+                    ref.getPath(),
+                    resource
+                );
+            }
+            final Model model = EmftvmFactory.eINSTANCE.createModel();
+            model.setResource(resource);
+            result.put(ref.getName(), model);
+        }
+        return result;
+    }
+
+    /**
+     * Saves a model restored from the result cache, copying the cached file
+     * if it still exists.
+     * @param file The cached file
+     * @param target The model file
+     * @param resource The restored model
+     */
+    private void copy(final File file, final File target,
+        final Resource resource) {
+        try {
+            try {
+                Files.copy(
+                    file.toPath(),
+                    target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+                );
+            } catch (final NoSuchFileException exception) {
+                // Evicted in the meantime
+                resource.save(this.profile.saveOptions());
+            }
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * The format of an output or in-out model.
+     * @param ref The model
+     * @return The format of its file, or of its in-memory resource
+     */
+    private static ModelFormat format(final NamedModel ref) {
+        final ModelFormat format;
+        if (ref.getPath() != null) {
+            format = ModelFormat.of(ref.getPath().getName());
+        } else if (ref.getResource() instanceof BinaryResourceImpl) {
+            format = ModelFormat.BINARY;
+        } else {
+            format = ModelFormat.XMI;
+        }
+        return format;
+    }
+
+    /**
+     * The output and in-out models of a run.
+     * @param config The input, output and in-out models
+     * @return The output models, followed by the in-out models
+     */
+    private static List<NamedModel> targets(
+        final Map<ModelType, List<NamedModel>> config) {
+        final List<NamedModel> targets =
+            new ArrayList<>(config.get(ModelType.OUTPUT));
+        targets.addAll(config.get(ModelType.IN_OUT));
+        return targets;
+    }
+
+    /**
+     * Saves the output and in-out models that are stored in files.
+     * @param instances The registered models
+     * @param config The input, output and in-out models
+     */
+    private void save(final Map<String, Model> instances,
+        final Map<ModelType, List<NamedModel>> config) {
+        for (final NamedModel ref : AtlTransformation.targets(config)) {
+            if (ref.getPath() == null) {
+                continue;
+            }
+            try {
+                instances.get(ref.getName())
+                    .getResource()
+                    .save(this.profile.saveOptions());
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+    }
+
+    /**
+     * Creates a new execution context with the metamodels and the
+     * transformation module loaded.
+     * @return A new context
+     */
+    ExecutionContext context() {
+        final Fingerprint fingerprint = this.fingerprint();
+        final Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+        final ResourceSet set = this.resourceSet();
+        final ExecEnv environment = EmftvmFactory.eINSTANCE.createExecEnv();
+        long start = System.nanoTime();
+        this.registerMetamodels(set, environment);
+        durations.put(Phase.METAMODEL_LOAD, System.nanoTime() - start);
+        start = System.nanoTime();
+        final ModuleResolver resolver = new CompilingModuleResolver(
+            new File(this.moduleDirectory()),
+            new ModuleCompiler(this.cache),
+            set
+        );
+        environment.loadModule(resolver, this.moduleName());
+        durations.put(Phase.MODULE_LOAD, System.nanoTime() - start);
+        final Set<Resource> resources =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+        resources.addAll(set.getResources());
+        return new ExecutionContext(
+            set,
+            environment,
+            fingerprint,
+            durations,
+            resources
+        );
+    }
+
+    /**
+     * Creates a resource set that resolves this transformation's metamodels
+     * without using the global package registry.
+     * @return A new resource set
+     */
+    ResourceSet resourceSet() {
+        final ResourceSet set = new ResourceSetImpl();
+        set.setPackageRegistry(new EPackageRegistryImpl(this.registry));
+        set.getLoadOptions().putAll(this.profile.loadOptions());
+        this.registerFactories(set);
+        return set;
+    }
+
+    /**
+     * The options to load and save models with.
+     * @return The load and save profile
+     */
+    PerformanceProfile profile() {
+        return this.profile;
+    }
+
+    /**
+     * Takes a snapshot of the metamodel files, the module file and the files
+     * of the libraries it imports.
+     * @return The current fingerprint of the files this transformation
+     *  depends on
+     */
+    Fingerprint fingerprint() {
+        final List<File> files = new ArrayList<>(this.metamodelFiles.values());
+        files.addAll(this.modules());
+        return new Fingerprint(files);
+    }
+
+    /**
+     * The files a run depends on: the metamodel files, the .atl and
+     * .emftvm files of the module and of its imported libraries, and the
+     * input and in-out model files.
+     * @param config The input, output and in-out models
+     * @return The files, which may not all exist
+     */
+    List<File> dependencies(final Map<ModelType, List<NamedModel>> config) {
+        final List<File> files = new ArrayList<>(this.metamodelFiles.values());
+        for (final File module : this.modules()) {
+            final String path = module.getPath();
+            final String base = path.substring(0, path.lastIndexOf('.'));
+            files.add(new File(base + ".atl"));
+            files.add(new File(base + ".emftvm"));
+        }
+        for (final ModelType type : ModelType.values()) {
+            if (type == ModelType.OUTPUT) {
+                continue;
+            }
+            for (final NamedModel ref : config.get(type)) {
+                if (ref.getPath() != null) {
+                    files.add(ref.getPath());
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * The files a run writes: the output and in-out model files, if this
+     * transformation saves them.
+     * @param config The input, output and in-out models
+     * @return The files, which may not all exist
+     */
+    List<File> outputs(final Map<ModelType, List<NamedModel>> config) {
+        final List<File> files = new ArrayList<>();
+        if (this.saving) {
+            for (final NamedModel ref : AtlTransformation.targets(config)) {
+                if (ref.getPath() != null) {
+                    files.add(ref.getPath());
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * The files of the module and of the libraries it imports, as the
+     * module resolver loads them.
+     * @return The module files, main module first
+     */
+    private List<File> modules() {
+        return CompilingModuleResolver.files(
+            new File(this.moduleDirectory()),
+            this.moduleName()
+        );
+    }
+
+    /**
+     * Registers the metamodel files again, picking up any change on disk.
+     */
+    void reloadMetamodels() {
+        final Map<String, URI> reloaded =
+            new LinkedHashMap<>(this.metamodels.get());
+        for (final Map.Entry<String, File> entry
+            : this.metamodelFiles.entrySet()) {
+            reloaded.put(
+                entry.getKey(),
+                Builder.nsUri(entry.getValue(), this.registry)
+            );
+        }
+        this.metamodels.set(Collections.unmodifiableMap(reloaded));
+    }
+
+    /**
+     * The input, output and in-out models given to the builder.
+     * @return A map of models organized by type
+     */
+    Map<ModelType, List<NamedModel>> models() {
+        return this.models;
+    }
+
     /**
      * The ATL module directory.
      * @return The module directory path
@@ -106,28 +637,41 @@ public final class AtlTransformation {
      * @param set The resource set
      * @param environment The execution environment
      * @param config The input, output and in-out models
+     * @param loading The bytes allocated by the loader threads, to be added
+     *  to
      * @return The registered models
      */
     @SuppressWarnings("ParameterNumber")
     private Map<String, Model> registerModels(final ResourceSet set,
         final ExecEnv environment,
-        final Map<ModelType, List<NamedModel>> config) {
+        final Map<ModelType, List<NamedModel>> config,
+        final LongAdder loading) {
         final Map<String, Model> result = new HashMap<>();
+        final Map<NamedModel, Resource> loaded =
+            this.load(set, config, loading);
+        // Input models of the same run share their strings
+        final Map<String, String> strings = new HashMap<>();
         for (final ModelType type : config.keySet()) {
             for (final NamedModel ref : config.get(type)) {
                 final Model model = EmftvmFactory.eINSTANCE.createModel();
-                final URI uri = URI.createURI(ref.getPath().getAbsolutePath());
                 switch (type) {
                     case INPUT:
-                        model.setResource(set.getResource(uri, true));
+                        final Resource input =
+                            AtlTransformation.loaded(loaded, ref);
+                        if (this.compact && ref.getPath() != null) {
+                            ModelCompaction.compact(input, strings);
+                        }
+                        model.setResource(input);
                         environment.registerInputModel(ref.getName(), model);
                         break;
                     case OUTPUT:
-                        model.setResource(set.createResource(uri));
+                        model.setResource(this.resource(set, ref, false));
                         environment.registerOutputModel(ref.getName(), model);
                         break;
                     case IN_OUT:
-                        model.setResource(set.getResource(uri, true));
+                        model.setResource(
+                            AtlTransformation.loaded(loaded, ref)
+                        );
                         environment.registerInOutModel(ref.getName(), model);
                         break;
                     default:
@@ -139,6 +683,140 @@ public final class AtlTransformation {
         return result;
     }
 
+    /**
+     * Loads the input and in-out model files of a run. A file bound to
+     * several models is loaded once, and the models share its resource.
+     * With a loader, each file is loaded concurrently into a resource set of
+     * its own, and the resources are then moved to the shared resource set.
+     * References across models are proxies until they are first navigated,
+     * so they are resolved in the shared resource set.
+     * @param set The shared resource set
+     * @param config The input, output and in-out models
+     * @param loading The bytes allocated by the loader threads, to be added
+     *  to
+     * @return The loaded resource of each model stored in a file
+     */
+    private Map<NamedModel, Resource> load(final ResourceSet set,
+        final Map<ModelType, List<NamedModel>> config,
+        final LongAdder loading) {
+        final Map<Path, List<NamedModel>> files = new LinkedHashMap<>();
+        for (final ModelType type : config.keySet()) {
+            if (type == ModelType.OUTPUT) {
+                continue;
+            }
+            for (final NamedModel ref : config.get(type)) {
+                if (ref.getPath() != null) {
+                    files.computeIfAbsent(
+                        ref.getPath().toPath().toAbsolutePath().normalize(),
+                        path -> new ArrayList<>()
+                    ).add(ref);
+                }
+            }
+        }
+        final List<Resource> resources;
+        if (this.loader == null || files.size() < 2) {
+            resources = new ArrayList<>(files.size());
+            for (final List<NamedModel> refs : files.values()) {
+                resources.add(this.resource(set, refs.get(0), true));
+            }
+        } else {
+            final List<Callable<Resource>> tasks =
+                new ArrayList<>(files.size());
+            for (final List<NamedModel> refs : files.values()) {
+                tasks.add(
+                    () -> {
+                        // The loaders are shared, so measure each task
+                        final long before = RunMetrics.allocatedBytes();
+                        try {
+                            return this.resource(
+                                this.resourceSet(),
+                                refs.get(0),
+                                true
+                            );
+                        } finally {
+                            loading.add(RunMetrics.allocatedBytes() - before);
+                        }
+                    }
+                );
+            }
+            resources = this.invoke(tasks);
+            for (final Resource resource : resources) {
+                // Moves the resource out of its own resource set
+                set.getResources().add(resource);
+            }
+        }
+        final Map<NamedModel, Resource> loaded = new IdentityHashMap<>();
+        int index = 0;
+        for (final List<NamedModel> refs : files.values()) {
+            for (final NamedModel ref : refs) {
+                loaded.put(ref, resources.get(index));
+            }
+            index += 1;
+        }
+        return loaded;
+    }
+
+    /**
+     * Finds the resource of an input or in-out model.
+     * @param loaded The loaded resource of each model stored in a file
+     * @param ref The model
+     * @return The loaded or in-memory resource
+     */
+    private static Resource loaded(final Map<NamedModel, Resource> loaded,
+        final NamedModel ref) {
+        if (ref.getResource() != null) {
+            return ref.getResource();
+        }
+        return loaded.get(ref);
+    }
+
+    /**
+     * Runs tasks with the loader and waits for all of them.
+     * @param tasks The tasks
+     * @param <T> The type of the results
+     * @return The results, in the order of the tasks
+     */
+    private <T> List<T> invoke(final List<Callable<T>> tasks) {
+        final List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (final Future<T> future : this.loader.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(exception);
+        } catch (final ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw new IllegalStateException(exception.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Finds the resource of a model. In-memory models are used as they are;
+     * otherwise the resource is loaded from, or created for, its file.
+     * @param set The resource set
+     * @param ref The model
+     * @param load Whether the file must be loaded
+     * @return The model resource
+     */
+    private Resource resource(final ResourceSet set, final NamedModel ref,
+        final boolean load) {
+        if (ref.getResource() != null) {
+            return ref.getResource();
+        }
+        final URI uri = URI.createURI(ref.getPath().getAbsolutePath());
+        final Resource resource;
+        if (load) {
+            resource = this.profile.load(set, uri);
+        } else {
+            resource = set.createResource(uri);
+        }
+        return resource;
+    }
+
     /**
      * Loads the metamodels in the resource set and makes them available in the
      * execution environment.
@@ -147,7 +825,17 @@ public final class AtlTransformation {
      */
     private void registerMetamodels(final ResourceSet set,
         final ExecEnv environment) {
-        for (final Map.Entry<String, URI> entry : this.metamodels.entrySet()) {
+        final Map<String, URI> current = this.metamodels.get();
+        if (this.loader != null && current.size() > 1) {
+            // Parse the metamodel files concurrently; the shared registry
+            // and the metamodel cache are thread-safe
+            final List<Callable<EPackage>> tasks = new ArrayList<>();
+            for (final URI uri : current.values()) {
+                tasks.add(() -> this.registry.getEPackage(uri.toString()));
+            }
+            this.invoke(tasks);
+        }
+        for (final Map.Entry<String, URI> entry : current.entrySet()) {
             final Metamodel metamodel =
                 EmftvmFactory.eINSTANCE.createMetamodel();
             metamodel.setResource(set.getResource(entry.getValue(), true));
@@ -156,9 +844,10 @@ public final class AtlTransformation {
     }
 
     /**
-     * Create and register resource factories to read/parse .xmi and .emftvm
-     * files. The latter corresponds to files created by the transformation
-     * compiler (ATL-EMFTV compiler).
+     * Create and register resource factories to read/parse .xmi, .xmib,
+     * .xmip and .emftvm files. The .xmib extension corresponds to EMF's
+     * binary format, .xmip to the paged format, and .emftvm to files created
+     * by the transformation compiler (ATL-EMFTV compiler).
      * @param set The resource set
      */
     private void registerFactories(final ResourceSet set) {
@@ -169,19 +858,32 @@ public final class AtlTransformation {
         set.getResourceFactoryRegistry()
             .getExtensionToFactoryMap()
             .put("xmi", factory);
+        set.getResourceFactoryRegistry()
+            .getExtensionToFactoryMap()
+            .put(
+                ModelFormat.BINARY.getExtension(),
+                ModelFormat.BINARY.getFactory()
+            );
+        set.getResourceFactoryRegistry()
+            .getExtensionToFactoryMap()
+            .put(
+                ModelFormat.PAGED.getExtension(),
+                ModelFormat.PAGED.getFactory()
+            );
         set.getResourceFactoryRegistry()
             .getExtensionToFactoryMap()
             .put("emftvm", new EMFTVMResourceFactoryImpl());
     }
 
     /**
-     * A pair of variable name and file path.
+     * A pair of variable name and either a file path or an in-memory
+     * resource.
      * @author Miguel Jimenez (miguel@uvic.ca)
      * @version $Id$
      * @since 0.1.0
      */
     @Data
-    @AllArgsConstructor
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
     public static final class NamedModel {
 
         /**
@@ -190,9 +892,32 @@ public final class AtlTransformation {
         private final String name;
 
         /**
-         * The path to the XMI file.
+         * The path to the XMI file, or null for in-memory models.
          */
         private final File path;
+
+        /**
+         * The in-memory resource, or null for models stored in a file.
+         */
+        private final Resource resource;
+
+        /**
+         * A model stored in a file.
+         * @param name The variable name of the model in the ATL module
+         * @param path The path to the XMI file
+         */
+        public NamedModel(final String name, final File path) {
+            this(name, path, null);
+        }
+
+        /**
+         * An in-memory model.
+         * @param name The variable name of the model in the ATL module
+         * @param resource The model resource
+         */
+        public NamedModel(final String name, final Resource resource) {
+            this(name, null, resource);
+        }
     }
 
     /**
@@ -227,38 +952,110 @@ public final class AtlTransformation {
     public static final class Builder {
 
         /**
-         * The ecore extension.
+         * The executors that load files concurrently, by parallelism,
+         * shared by all transformations.
          */
-        private static final String ECORE_EXT = ".ecore";
+        private static final Map<Integer, ExecutorService> LOADERS =
+            new ConcurrentHashMap<>();
 
         /**
          * The metamodels.
          */
         private final Map<String, URI> metamodels;
 
+        /**
+         * The metamodel files.
+         */
+        private final Map<String, File> files;
+
+        /**
+         * The metamodel packages.
+         */
+        private final EPackage.Registry registry;
+
         /**
          * The input, output and in-out models.
          */
         private final Map<ModelType, List<NamedModel>> models;
 
+        /**
+         * The metrics listeners.
+         */
+        private final List<MetricsListener> listeners;
+
         /**
          * The transformation.
          */
         private File transformation;
 
+        /**
+         * Whether output models are saved at the end of each run.
+         */
+        private boolean saving;
+
+        /**
+         * The directory where compiled .atl modules are cached.
+         */
+        private File cache;
+
+        /**
+         * The options to load and save models with.
+         */
+        private PerformanceProfile profile;
+
+        /**
+         * The cache of results, or {@code null} if results are not cached.
+         */
+        private ResultCache results;
+
+        /**
+         * The profiler attached to each run, or {@code null} if runs are not
+         * profiled.
+         */
+        private RuleProfiler profiler;
+
+        /**
+         * Whether input models loaded from files are compacted for
+         * read-only use.
+         */
+        private boolean compact;
+
+        /**
+         * The number of metamodels and model files loaded at the same time.
+         */
+        private int loaders;
+
         /**
          * Default constructor.
          */
         public Builder() {
+            this(new ConcurrentPackageRegistry(EPackage.Registry.INSTANCE));
+        }
+
+        /**
+         * Constructor for transformations that share their metamodel
+         * packages.
+         * @param registry The package registry
+         */
+        Builder(final EPackage.Registry registry) {
             this.metamodels = new HashMap<>();
+            this.files = new HashMap<>();
+            this.registry = registry;
             this.models = Builder.emptyModels();
+            this.listeners = new ArrayList<>();
+            this.cache = new File(
+                System.getProperty("java.io.tmpdir"),
+                "atl-emftvm-cache"
+            );
+            this.profile = PerformanceProfile.DEFAULT;
+            this.loaders = Runtime.getRuntime().availableProcessors();
         }
 
         /**
          * Initialize the list of models.
          * @return A map
          */
-        private static Map<ModelType, List<NamedModel>> emptyModels() {
+        static Map<ModelType, List<NamedModel>> emptyModels() {
             final Map<ModelType, List<NamedModel>> models = new HashMap<>();
             models.put(ModelType.INPUT, new ArrayList<>());
             models.put(ModelType.IN_OUT, new ArrayList<>());
@@ -276,6 +1073,108 @@ public final class AtlTransformation {
             return this;
         }
 
+        /**
+         * Sets the directory where compiled .atl modules are cached. If the
+         * transformation's .atl file exists, it is compiled in-process the
+         * first time its current contents are used, and the compiled module
+         * is reused afterwards, even by other processes. Otherwise, the
+         * precompiled .emftvm file next to it is used.
+         * @param directory The cache directory
+         * @return This builder
+         */
+        public Builder withModuleCache(final String directory) {
+            this.cache = new File(directory);
+            return this;
+        }
+
+        /**
+         * Sets the options to load and save models with, for instance
+         * {@link PerformanceProfile#LARGE_MODELS} for inputs with millions
+         * of elements.
+         * @param profile The load and save profile
+         * @return This builder
+         */
+        public Builder withPerformanceProfile(
+            final PerformanceProfile profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        /**
+         * Caches the results of runs on disk. A run whose module, metamodels
+         * and input models have the same contents as an earlier run returns
+         * the cached output models instead of executing the module.
+         * @param cache The result cache, which may be shared by several
+         *  transformations
+         * @return This builder
+         */
+        public Builder withResultCache(final ResultCache cache) {
+            this.results = cache;
+            return this;
+        }
+
+        /**
+         * Profiles every run by rule, helper and binding. The profiler
+         * accumulates the statistics of all runs; see
+         * {@link RuleProfiler#report()}.
+         * @param profiler The profiler
+         * @return This builder
+         */
+        public Builder withProfiler(final RuleProfiler profiler) {
+            this.profiler = profiler;
+            return this;
+        }
+
+        /**
+         * Sets whether input models loaded from files use less memory. Equal
+         * string values are shared within each run, the lists of many-valued
+         * features are trimmed and notifications are turned off. Input
+         * models must then not be modified, and in-out models are not
+         * affected.
+         * @param low Whether to compact the input models
+         * @return This builder
+         */
+        public Builder withLowMemoryInputs(final boolean low) {
+            this.compact = low;
+            return this;
+        }
+
+        /**
+         * Sets how many metamodels and input or in-out model files are
+         * loaded at the same time (all cores by default). Each file is
+         * loaded into a resource of its own before it is added to the
+         * run's resource set. Use 1 to load them one after another on the
+         * calling thread.
+         * @param threads The loading parallelism
+         * @return This builder
+         */
+        public Builder withLoadingThreads(final int threads) {
+            this.loaders = threads;
+            return this;
+        }
+
+        /**
+         * Adds a listener notified with the metrics of each run.
+         * @param listener The listener
+         * @return This builder
+         */
+        public Builder withMetricsListener(final MetricsListener listener) {
+            this.listeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Sets whether the output and in-out models stored in files are
+         * saved at the end of each run. Saving time is then reported in the
+         * run metrics.
+         * @param save Whether to save the models
+         * @return This builder
+         */
+        public Builder withOutputSaving(final boolean save) {
+            this.saving = save;
+            return this;
+        }
+
         /**
          * Adds a metamodel to the transformation context.
          * @param name The name of the metamodel
@@ -283,7 +1182,9 @@ public final class AtlTransformation {
          * @return This builder
          */
         public Builder withMetamodel(final String name, final String path) {
-            this.metamodels.put(name, this.nsUri(new File(path)));
+            final File file = new File(path);
+            this.metamodels.put(name, Builder.nsUri(file, this.registry));
+            this.files.put(name, file);
             return this;
         }
 
@@ -297,20 +1198,57 @@ public final class AtlTransformation {
                 epackage.getName(),
                 URI.createURI(epackage.getNsURI())
             );
+            this.registry.put(epackage.getNsURI(), epackage);
+            this.files.remove(epackage.getName());
             return this;
         }
 
         /**
-         * Adds a model to the transformation context.
+         * Adds an in-memory model to the transformation context. The object
+         * is used directly, without serializing it. If it is a root of a
+         * resource, that resource (with all its roots) is the model; if it
+         * is not in a resource, a new in-memory resource is created for it.
+         * Objects nested in another object are rejected, since moving them
+         * to a resource of their own would change the caller's model.
          * @param type The type of the model
          * @param name The name of the ATL variable (e.g., OUT)
          * @param model The model object
          * @return This builder
-         * @throws IOException {@link #asFile(EObject)}
          */
         public Builder withModel(final ModelType type, final String name,
-            final EObject model) throws IOException {
-            return this.withModel(type, name, this.asFile(model).getPath());
+            final EObject model) {
+            if (model.eContainer() != null) {
+                throw new IllegalArgumentException(
+                    String.format(
+                        "Model %s must be a root object, not nested in %s",
+                        name,
+                        model.eContainer()
+                    )
+                );
+            }
+            Resource resource = model.eResource();
+            if (resource == null) {
+                resource = new XMIResourceImpl();
+                resource.getContents().add(model);
+            }
+            return this.withModel(type, name, resource);
+        }
+
+        /**
+         * Adds an in-memory model to the transformation context. For output
+         * models, pass an empty resource; it is filled in by the
+         * transformation and never saved unless the caller does so.
+         * @param type The type of the model
+         * @param name The name of the ATL variable (e.g., OUT)
+         * @param resource The model resource
+         * @return This builder
+         */
+        public Builder withModel(final ModelType type, final String name,
+            final Resource resource) {
+            this.models
+                .get(type)
+                .add(new NamedModel(name, resource));
+            return this;
         }
 
         /**
@@ -329,50 +1267,61 @@ public final class AtlTransformation {
         }
 
         /**
-         * Creates a temporal .xmi file from the given model.
-         * @param model The model
-         * @return The temporal file
-         * @throws IOException If something happens while serializing the model
+         * Lazy registration of the metamodel to get the nsUri. The nsUri is
+         * read from the file header, and the metamodel is only parsed when
+         * first needed; both are cached for the whole process.
+         * @param metamodel The metamodel file to register
+         * @param registry The registry to add the metamodel's package to
+         * @return The metamodel's nsUri
          */
-        private File asFile(final EObject model)
-            throws IOException {
-            final File file = File.createTempFile("model", Builder.ECORE_EXT);
-            Files.write(
-                Paths.get(file.toURI()),
-                new SerializationParser().asXml(model).getBytes(),
-                StandardOpenOption.TRUNCATE_EXISTING
-            );
-            return file;
+        static URI nsUri(final File metamodel,
+            final EPackage.Registry registry) {
+            final URI uri = MetamodelCache.nsUri(metamodel);
+            if (!uri.isEmpty()) {
+                registry.put(
+                    uri.toString(),
+                    MetamodelCache.descriptor(metamodel)
+                );
+            }
+            return uri;
         }
 
         /**
-         * Lazy registration of the metamodel to get the nsUri.
-         * @param metamodel The metamodel file to register
-         * @return The metamodel's nsUri
+         * Finds the executor that loads files concurrently. Transformations
+         * built with the same parallelism share one executor, created when
+         * first needed.
+         * @param threads The loading parallelism
+         * @return The executor, or {@code null} to load files one after
+         *  another
          */
-        private URI nsUri(final File metamodel) {
-            URI uri = URI.createURI("");
-            Resource.Factory.Registry.INSTANCE
-                .getExtensionToFactoryMap()
-                .put("ecore", new EcoreResourceFactoryImpl());
-            final ResourceSet set = new ResourceSetImpl();
-            final ExtendedMetaData metadata = new BasicExtendedMetaData(
-                EPackage.Registry.INSTANCE
-            );
-            set.getLoadOptions()
-                .put(XMLResource.OPTION_EXTENDED_META_DATA, metadata);
-            final Resource resource = set.getResource(
-                URI.createFileURI(metamodel.getAbsolutePath()), true
-            );
-            final EObject eobject = resource.getContents().get(0);
-            // A meta-model might have multiple packages we assume the main package
-            // is the first one listed
-            if (eobject instanceof EPackage) {
-                final EPackage epackage = (EPackage) eobject;
-                EPackage.Registry.INSTANCE.put(epackage.getNsURI(), epackage);
-                uri = URI.createURI(epackage.getNsURI());
+        private static ExecutorService loader(final int threads) {
+            if (threads < 2) {
+                return null;
             }
-            return uri;
+            return Builder.LOADERS.computeIfAbsent(threads, Builder::executor);
+        }
+
+        /**
+         * Creates an executor that loads files concurrently. Its threads
+         * are daemons and stop when idle, so it needs no shutdown.
+         * @param threads The loading parallelism
+         * @return The executor
+         */
+        private static ExecutorService executor(final int threads) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                1L,
+                TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "atl-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            );
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
         }
 
         /**
@@ -398,10 +1347,36 @@ public final class AtlTransformation {
                 throw new IllegalArgumentException(
                     "At least one output model is required");
             }
+            for (final NamedModel model : this.models.get(ModelType.IN_OUT)) {
+                if (model.getResource() instanceof PagedResourceImpl
+                    || AtlTransformation.format(model) == ModelFormat.PAGED) {
+                    throw new IllegalArgumentException(
+                        String.format(
+                            "In-out model %s cannot be paged (.xmip), since"
+                                + " paged models are read-only",
+                            model.getName()
+                        )
+                    );
+                }
+            }
             return new AtlTransformation(
-                this.metamodels,
+                new AtomicReference<>(
+                    Collections.unmodifiableMap(
+                        new LinkedHashMap<>(this.metamodels)
+                    )
+                ),
                 this.models,
-                this.transformation
+                this.transformation,
+                this.files,
+                this.listeners,
+                this.saving,
+                this.registry,
+                this.cache,
+                this.profile,
+                this.results,
+                this.profiler,
+                this.compact,
+                Builder.loader(this.loaders)
             );
         }
     }
@@ -0,0 +1,43 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+
+/**
+ * The outcome of a batch transformation.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@Data
+public final class BatchResult {
+
+    /**
+     * The output models that were successfully created.
+     */
+    private final List<File> outputs;
+
+    /**
+     * Pairs of input model and the error that prevented its transformation.
+     */
+    private final Map<File, Throwable> failures;
+
+    /**
+     * The wall-clock time of the batch, in nanoseconds.
+     */
+    private final long elapsed;
+
+    /**
+     * The aggregate throughput, counting failed models as well.
+     * @return The number of processed models per second
+     */
+    public double throughput() {
+        final int total = this.outputs.size() + this.failures.size();
+        return total * (double) TimeUnit.SECONDS.toNanos(1)
+            / Math.max(1L, this.elapsed);
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.ToString;
+import org.eclipse.m2m.atl.emftvm.Model;
+
+/**
+ * Runs a prepared transformation on many input models using a bounded pool of
+ * worker threads. Each concurrent run uses its own execution environment and
+ * resource set, and a failing model does not abort the rest of the batch.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString
+public final class BatchTransformation {
+
+    /**
+     * The default extension of input models.
+     */
+    private static final String XMI_GLOB = "*.xmi";
+
+    /**
+     * The prepared transformation.
+     */
+    private final PreparedTransformation transformation;
+
+    /**
+     * The name of the input variable in the ATL module (e.g., IN).
+     */
+    private final String input;
+
+    /**
+     * The name of the output variable in the ATL module (e.g., OUT).
+     */
+    private final String output;
+
+    /**
+     * The output file pattern. The {@code %s} placeholder is replaced by the
+     * input file name without extension (e.g., models/%s-simple.xmi).
+     */
+    private final String pattern;
+
+    /**
+     * The number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * Default constructor.
+     * @param transformation The prepared transformation
+     * @param input The name of the input variable in the ATL module
+     * @param output The name of the output variable in the ATL module
+     * @param pattern The output file pattern
+     * @param threads The number of worker threads
+     * @throws IllegalArgumentException If the pattern is not valid (see
+     *  {@link #valid(String)})
+     */
+    public BatchTransformation(final PreparedTransformation transformation,
+        final String input, final String output, final String pattern,
+        final int threads) {
+        this.transformation = transformation;
+        this.input = input;
+        this.output = output;
+        this.pattern = BatchTransformation.checked(pattern);
+        this.threads = threads;
+    }
+
+    /**
+     * Transforms the given input models and saves the output models.
+     * @param files The input model files
+     * @return The batch result
+     * @throws InterruptedException If interrupted while waiting for the
+     *  workers
+     * @throws IllegalArgumentException If two input models have the same
+     *  output file
+     */
+    public BatchResult run(final List<File> files)
+        throws InterruptedException {
+        final Map<File, File> targets =
+            BatchTransformation.targets(this.pattern, files);
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(this.threads, files.size()))
+        );
+        final long start = System.nanoTime();
+        final Map<File, Future<File>> futures = new LinkedHashMap<>();
+        try {
+            for (final File file : files) {
+                futures.put(file, executor.submit(
+                    () -> this.transform(file, targets.get(file))
+                ));
+            }
+            final List<File> outputs = new ArrayList<>(files.size());
+            final Map<File, Throwable> failures = new LinkedHashMap<>();
+            for (final Map.Entry<File, Future<File>> entry
+                : futures.entrySet()) {
+                try {
+                    outputs.add(entry.getValue().get());
+                } catch (final ExecutionException exception) {
+                    failures.put(entry.getKey(), exception.getCause());
+                }
+            }
+            return new BatchResult(
+                outputs,
+                failures,
+                System.nanoTime() - start
+            );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Transforms one input model and saves the output model.
+     * @param file The input model file
+     * @param target The output model file
+     * @return The output model file
+     * @throws IOException If the output model cannot be saved
+     */
+    private File transform(final File file, final File target)
+        throws IOException {
+        final Map<ModelType, List<NamedModel>> models =
+            AtlTransformation.Builder.emptyModels();
+        models.get(ModelType.INPUT).add(new NamedModel(this.input, file));
+        models.get(ModelType.OUTPUT).add(new NamedModel(this.output, target));
+        final Map<String, Model> result = this.transformation.run(models);
+        result.get(this.output)
+            .getResource()
+            .save(this.transformation.saveOptions());
+        return target;
+    }
+
+    /**
+     * Whether an output file pattern is valid: it has exactly one
+     * {@code %s} placeholder, and no other conversion ({@code %%} is
+     * allowed). Otherwise, all the input models would have the same output
+     * file, or formatting would fail.
+     * @param pattern The output file pattern
+     * @return Whether the pattern is valid
+     */
+    public static boolean valid(final String pattern) {
+        final String conversions = pattern.replace("%%", "");
+        final int placeholder = conversions.indexOf("%s");
+        return placeholder >= 0
+            && placeholder == conversions.lastIndexOf('%');
+    }
+
+    /**
+     * Checks an output file pattern.
+     * @param pattern The output file pattern
+     * @return The same pattern
+     * @throws IllegalArgumentException If the pattern is not valid
+     */
+    static String checked(final String pattern) {
+        if (!BatchTransformation.valid(pattern)) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "The output pattern must have exactly one %%s"
+                        + " placeholder: %s",
+                    pattern
+                )
+            );
+        }
+        return pattern;
+    }
+
+    /**
+     * The output files of some input models.
+     * @param pattern The output file pattern
+     * @param files The input model files
+     * @return The output model file of each input model file
+     * @throws IllegalArgumentException If two input models have the same
+     *  output file (e.g., a.xmi and a.xmib)
+     */
+    static Map<File, File> targets(final String pattern,
+        final List<File> files) {
+        final Map<File, File> targets = new LinkedHashMap<>();
+        final Map<Path, File> sources = new HashMap<>();
+        for (final File file : files) {
+            final File target = BatchTransformation.target(pattern, file);
+            final File previous = sources.putIfAbsent(
+                target.toPath().toAbsolutePath().normalize(),
+                file
+            );
+            if (previous != null) {
+                throw new IllegalArgumentException(
+                    String.format(
+                        "Input models %s and %s have the same output file %s",
+                        previous,
+                        file,
+                        target
+                    )
+                );
+            }
+            targets.put(file, target);
+        }
+        return targets;
+    }
+
+    /**
+     * The output file of an input model.
+     * @param pattern The output file pattern
+     * @param file The input model file
+     * @return The output model file
+     */
+    static File target(final String pattern, final File file) {
+        final String name = file.getName();
+        final int dot = name.lastIndexOf('.');
+        return new File(
+            String.format(pattern, dot > 0 ? name.substring(0, dot) : name)
+        );
+    }
+
+    /**
+     * Lists the input models in a directory, or those matching a glob
+     * pattern (e.g., models/*.xmi).
+     * @param location A directory or a glob pattern
+     * @return The matching files, sorted by name
+     * @throws IOException If the directory cannot be read
+     */
+    public static List<File> files(final String location) throws IOException {
+        final Path path = Paths.get(location);
+        final Path directory;
+        final String glob;
+        if (Files.isDirectory(path)) {
+            directory = path;
+            glob = BatchTransformation.XMI_GLOB;
+        } else {
+            directory = path.getParent() == null
+                ? Paths.get(".") : path.getParent();
+            glob = path.getFileName().toString();
+        }
+        final List<File> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream =
+            Files.newDirectoryStream(directory, glob)) {
+            for (final Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file.toFile());
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+}
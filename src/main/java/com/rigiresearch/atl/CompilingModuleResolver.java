@@ -0,0 +1,161 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.RequiredArgsConstructor;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.m2m.atl.emftvm.Module;
+import org.eclipse.m2m.atl.emftvm.impl.resource.EMFTVMResourceFactoryImpl;
+import org.eclipse.m2m.atl.emftvm.util.DefaultModuleResolver;
+import org.eclipse.m2m.atl.emftvm.util.ModuleNotFoundException;
+import org.eclipse.m2m.atl.emftvm.util.ModuleResolver;
+
+/**
+ * Resolves EMFTVM modules from their .atl sources when available, compiling
+ * them on demand, and from precompiled .emftvm files otherwise. Imported
+ * libraries are resolved the same way.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@RequiredArgsConstructor
+final class CompilingModuleResolver implements ModuleResolver {
+
+    /**
+     * Line comments in .atl sources.
+     */
+    private static final Pattern COMMENT =
+        Pattern.compile("--.*$", Pattern.MULTILINE);
+
+    /**
+     * Library imports in .atl sources (e.g., {@code uses Strings;}).
+     */
+    private static final Pattern USES =
+        Pattern.compile("\\buses\\s+([A-Za-z_][\\w:]*)\\s*;");
+
+    /**
+     * The directory containing the modules.
+     */
+    private final File directory;
+
+    /**
+     * The compiler.
+     */
+    private final ModuleCompiler compiler;
+
+    /**
+     * The resource set to load modules in.
+     */
+    private final ResourceSet set;
+
+    /**
+     * Finds the files of a module and of the libraries it imports,
+     * transitively, as this resolver would load them: the .atl file of each
+     * module if it exists, or its precompiled .emftvm file otherwise.
+     * @param directory The directory containing the modules
+     * @param name The name of the main module
+     * @return The module files, main module first. Files that do not exist
+     *  are included, but their imports are not
+     */
+    static List<File> files(final File directory, final String name) {
+        final List<File> files = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        final Deque<String> pending = new ArrayDeque<>();
+        pending.add(name);
+        while (!pending.isEmpty()) {
+            final String current = pending.poll();
+            if (!seen.add(current)) {
+                continue;
+            }
+            final String path = current.replace("::", "/");
+            File file = new File(directory, String.format("%s.atl", path));
+            if (!file.isFile()) {
+                file = new File(directory, String.format("%s.emftvm", path));
+            }
+            files.add(file);
+            pending.addAll(CompilingModuleResolver.imports(file));
+        }
+        return files;
+    }
+
+    @Override
+    public Module resolveModule(final String name)
+        throws ModuleNotFoundException {
+        final String path = name.replace("::", "/");
+        final File source =
+            new File(this.directory, String.format("%s.atl", path));
+        File base = this.directory;
+        if (source.isFile()) {
+            try {
+                base = this.compiler.compile(source, path);
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        return new DefaultModuleResolver(
+            String.format("%s/", base.getPath()),
+            this.set
+        ).resolveModule(name);
+    }
+
+    /**
+     * Reads the names of the libraries a module imports.
+     * @param file The .atl or .emftvm module file
+     * @return The library names, or an empty list if the file does not exist
+     */
+    private static List<String> imports(final File file) {
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+        final List<String> imports = new ArrayList<>();
+        if (file.getName().endsWith(".atl")) {
+            final String source;
+            try {
+                source = new String(
+                    Files.readAllBytes(file.toPath()),
+                    StandardCharsets.UTF_8
+                );
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            final Matcher matcher = CompilingModuleResolver.USES.matcher(
+                CompilingModuleResolver.COMMENT.matcher(source).replaceAll("")
+            );
+            while (matcher.find()) {
+                imports.add(matcher.group(1));
+            }
+        } else {
+            final ResourceSet set = new ResourceSetImpl();
+            set.getResourceFactoryRegistry()
+                .getExtensionToFactoryMap()
+                .put("emftvm", new EMFTVMResourceFactoryImpl());
+            final Resource resource = set.getResource(
+                URI.createFileURI(file.getAbsolutePath()),
+                true
+            );
+            for (final EObject object : resource.getContents()) {
+                if (object instanceof Module) {
+                    imports.addAll(((Module) object).getImports());
+                }
+            }
+        }
+        return imports;
+    }
+
+}
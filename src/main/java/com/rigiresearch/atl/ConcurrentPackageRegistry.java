@@ -0,0 +1,82 @@
+package com.rigiresearch.atl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.emf.ecore.EFactory;
+import org.eclipse.emf.ecore.EPackage;
+
+/**
+ * A thread-safe package registry that falls back to another registry for
+ * unknown nsURIs. Unlike EMF's default implementation, it can be read and
+ * updated from several threads at the same time.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class ConcurrentPackageRegistry extends ConcurrentHashMap<String, Object>
+    implements EPackage.Registry {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 7302498735166531527L;
+
+    /**
+     * The registry to look up unknown nsURIs.
+     */
+    private final transient EPackage.Registry delegate;
+
+    /**
+     * Default constructor.
+     * @param delegate The registry to look up unknown nsURIs
+     */
+    ConcurrentPackageRegistry(final EPackage.Registry delegate) {
+        super();
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        Object value = null;
+        if (key != null) {
+            value = super.get(key);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key != null && super.containsKey(key);
+    }
+
+    @Override
+    public EPackage getEPackage(final String uri) {
+        final Object value = this.get(uri);
+        final EPackage epackage;
+        if (value instanceof EPackage) {
+            epackage = (EPackage) value;
+        } else if (value instanceof EPackage.Descriptor) {
+            epackage = ((EPackage.Descriptor) value).getEPackage();
+            if (epackage != null) {
+                this.replace(uri, value, epackage);
+            }
+        } else {
+            epackage = this.delegate.getEPackage(uri);
+        }
+        return epackage;
+    }
+
+    @Override
+    public EFactory getEFactory(final String uri) {
+        final Object value = this.get(uri);
+        final EFactory factory;
+        if (value instanceof EPackage) {
+            factory = ((EPackage) value).getEFactoryInstance();
+        } else if (value instanceof EPackage.Descriptor) {
+            factory = ((EPackage.Descriptor) value).getEFactory();
+        } else {
+            factory = this.delegate.getEFactory(uri);
+        }
+        return factory;
+    }
+
+}
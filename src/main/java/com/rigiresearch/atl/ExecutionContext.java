@@ -0,0 +1,76 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.RunMetrics.Phase;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.m2m.atl.emftvm.ExecEnv;
+
+/**
+ * A resource set and an execution environment with the metamodels and the
+ * transformation module already loaded.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@Getter
+@RequiredArgsConstructor
+final class ExecutionContext {
+
+    /**
+     * The resource set.
+     */
+    private final ResourceSet set;
+
+    /**
+     * The execution environment.
+     */
+    private final ExecEnv environment;
+
+    /**
+     * The state of the metamodel and module files when this context was
+     * created.
+     */
+    private final Fingerprint fingerprint;
+
+    /**
+     * The duration of the phases that created this context, until they are
+     * reported.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<Phase, Long> setup;
+
+    /**
+     * The resources of the metamodels and the module, which are kept between
+     * runs.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Set<Resource> resources;
+
+    /**
+     * Reports the duration of the phases that created this context. Only the
+     * first run using this context gets them.
+     * @return Pairs of phase and duration in nanoseconds
+     */
+    Map<Phase, Long> takeSetup() {
+        final Map<Phase, Long> durations = new EnumMap<>(this.setup);
+        this.setup.clear();
+        return durations;
+    }
+
+    /**
+     * Unregisters the models of a previous run, leaving only the metamodels
+     * and the transformation module. It also works after a failed run,
+     * whose models are not known.
+     */
+    void reset() {
+        this.environment.clearModels();
+        this.set.getResources().retainAll(this.resources);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * A snapshot of the last-modified time and size of a list of files.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString
+@EqualsAndHashCode
+final class Fingerprint {
+
+    /**
+     * The files.
+     */
+    private final List<File> files;
+
+    /**
+     * Pairs of last-modified time and size, one pair per file.
+     */
+    private final List<Long> stamps;
+
+    /**
+     * Default constructor.
+     * @param files The files
+     */
+    Fingerprint(final List<File> files) {
+        this.files = files;
+        this.stamps = new ArrayList<>(files.size() * 2);
+        for (final File file : files) {
+            this.stamps.add(file.lastModified());
+            this.stamps.add(file.length());
+        }
+    }
+
+    /**
+     * Takes a new snapshot of the same files.
+     * @return A new fingerprint
+     */
+    Fingerprint update() {
+        return new Fingerprint(this.files);
+    }
+
+    /**
+     * Hashes the names and current contents of the files, so that touching
+     * or checking out a file again does not change the hash.
+     * @return A hexadecimal hash
+     */
+    String digest() {
+        final MessageDigest digest = ModelDigest.digest();
+        for (final File file : this.files) {
+            ModelDigest.update(digest, file.getName());
+            if (file.isFile()) {
+                ModelDigest.update(digest, file);
+            }
+        }
+        return ModelDigest.hex(digest.digest());
+    }
+
+}
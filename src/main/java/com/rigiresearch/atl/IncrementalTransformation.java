@@ -0,0 +1,472 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.Data;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.eclipse.m2m.atl.emftvm.trace.SourceElement;
+import org.eclipse.m2m.atl.emftvm.trace.TargetElement;
+import org.eclipse.m2m.atl.emftvm.trace.TraceLink;
+import org.eclipse.m2m.atl.emftvm.trace.TraceLinkSet;
+import org.eclipse.m2m.atl.emftvm.trace.TracedRule;
+
+/**
+ * Re-runs a transformation only on the input elements that changed since
+ * the previous run, patching the existing output model.
+ * <p>
+ * This is meant for modules in which every rule application depends only
+ * on the containment subtree of one root input element (e.g.,
+ * Composed2Simple). After each run, the EMFTVM trace links are used to find
+ * which output roots each input root produced; these links are saved next to
+ * the output model, in a .trace file, along with a content hash of each
+ * input root. In the next run, roots with a known hash reuse their previous
+ * output, roots with a new hash are transformed, and the output of roots
+ * that disappeared is removed. If the trace shows that the module is not
+ * root-local, or the module or metamodels changed, the whole input is
+ * transformed instead.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = {"input", "output"})
+public final class IncrementalTransformation {
+
+    /**
+     * The extension of trace files.
+     */
+    private static final String TRACE_EXT = ".trace";
+
+    /**
+     * The prefix of the first line of trace files.
+     */
+    private static final String HEADER = "module ";
+
+    /**
+     * The transformation configuration.
+     */
+    private final AtlTransformation transformation;
+
+    /**
+     * The name of the input variable in the ATL module (e.g., IN).
+     */
+    private final String input;
+
+    /**
+     * The name of the output variable in the ATL module (e.g., OUT).
+     */
+    private final String output;
+
+    /**
+     * The execution context, reused across runs.
+     */
+    private ExecutionContext context;
+
+    /**
+     * Default constructor.
+     * @param transformation The transformation configuration
+     * @param input The name of the input variable in the ATL module
+     * @param output The name of the output variable in the ATL module
+     */
+    public IncrementalTransformation(final AtlTransformation transformation,
+        final String input, final String output) {
+        this.transformation = transformation;
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Transforms an input model, reusing the output of a previous run when
+     * possible, and saves the output model and its trace.
+     * @param source The input model file
+     * @param target The output model file
+     * @return The changes applied to the output model
+     * @throws IOException If the output model or trace cannot be saved
+     */
+    public synchronized Delta run(final File source, final File target)
+        throws IOException {
+        final ExecutionContext current = this.context();
+        final ResourceSet set = current.getSet();
+        final Resource inputs = set.getResource(
+            URI.createFileURI(source.getAbsolutePath()), true
+        );
+        final Resource outputs;
+        final File trace = new File(
+            target.getPath() + IncrementalTransformation.TRACE_EXT
+        );
+        final String module = current.getFingerprint().digest();
+        final List<EObject> roots = new ArrayList<>(inputs.getContents());
+        final List<String> hashes = new ArrayList<>(roots.size());
+        for (final EObject root : roots) {
+            hashes.add(ModelDigest.of(root));
+        }
+        final List<String> previous =
+            IncrementalTransformation.previous(target, trace, module);
+        if (previous.isEmpty()) {
+            outputs = set.createResource(
+                URI.createFileURI(target.getAbsolutePath())
+            );
+        } else {
+            outputs = set.getResource(
+                URI.createFileURI(target.getAbsolutePath()), true
+            );
+        }
+        try {
+            Delta delta = null;
+            if (!previous.isEmpty()) {
+                delta = this.update(roots, hashes, outputs, previous);
+            }
+            if (delta == null) {
+                delta = this.full(roots, outputs);
+            }
+            outputs.save(Collections.EMPTY_MAP);
+            if (delta.isTraced()) {
+                final List<String> lines = new ArrayList<>(hashes.size() + 1);
+                lines.add(IncrementalTransformation.HEADER + module);
+                for (int index = 0; index < roots.size(); index += 1) {
+                    lines.add(
+                        String.format(
+                            "%s %d",
+                            hashes.get(index),
+                            delta.getCounts().get(index)
+                        )
+                    );
+                }
+                Files.write(trace.toPath(), lines, StandardCharsets.UTF_8);
+            } else {
+                Files.deleteIfExists(trace.toPath());
+            }
+            return delta;
+        } finally {
+            set.getResources().remove(inputs);
+            set.getResources().remove(outputs);
+        }
+    }
+
+    /**
+     * Transforms all the input roots, replacing the output model's contents.
+     * @param roots The input roots
+     * @param outputs The output resource
+     * @return The changes applied to the output model
+     */
+    private Delta full(final List<EObject> roots, final Resource outputs) {
+        final Resource scratch = new XMIResourceImpl();
+        final Map<EObject, List<EObject>> groups =
+            this.transform(roots, scratch);
+        if (groups == null) {
+            IncrementalTransformation.move(
+                new ArrayList<>(scratch.getContents()),
+                outputs
+            );
+            return new Delta(0, roots.size(), 0, false, null);
+        }
+        final List<EObject> contents = new ArrayList<>();
+        final List<Integer> counts = new ArrayList<>(roots.size());
+        for (final EObject root : roots) {
+            contents.addAll(groups.get(root));
+            counts.add(groups.get(root).size());
+        }
+        IncrementalTransformation.move(contents, outputs);
+        return new Delta(0, roots.size(), 0, true, counts);
+    }
+
+    /**
+     * Transforms only the input roots whose hash is not in the trace of the
+     * previous run, and patches the output model.
+     * @param roots The input roots
+     * @param hashes The hash of each input root
+     * @param outputs The output resource of the previous run
+     * @param previous The trace of the previous run
+     * @return The changes applied to the output model, or null if the trace
+     *  is not valid, does not match the output model or the module is not
+     *  root-local
+     */
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private Delta update(final List<EObject> roots, final List<String> hashes,
+        final Resource outputs, final List<String> previous) {
+        // Slice the previous output by input root
+        final Map<String, Deque<List<EObject>>> available = new HashMap<>();
+        final List<EObject> existing = outputs.getContents();
+        int offset = 0;
+        for (final String line : previous) {
+            final int count = IncrementalTransformation.count(line);
+            if (count < 0 || offset + count > existing.size()) {
+                return null;
+            }
+            final String[] parts = line.split(" ");
+            available.computeIfAbsent(parts[0], key -> new ArrayDeque<>())
+                .add(new ArrayList<>(existing.subList(offset, offset + count)));
+            offset += count;
+        }
+        if (offset != existing.size()) {
+            return null;
+        }
+        // Reuse the output of unchanged roots
+        final Map<EObject, List<EObject>> groups = new IdentityHashMap<>();
+        final List<EObject> pending = new ArrayList<>();
+        for (int index = 0; index < roots.size(); index += 1) {
+            final Deque<List<EObject>> candidates =
+                available.get(hashes.get(index));
+            if (candidates == null || candidates.isEmpty()) {
+                pending.add(roots.get(index));
+            } else {
+                groups.put(roots.get(index), candidates.poll());
+            }
+        }
+        int removed = 0;
+        for (final Deque<List<EObject>> stale : available.values()) {
+            removed += stale.size();
+        }
+        // Transform the new and changed roots
+        if (!pending.isEmpty()) {
+            final Map<EObject, List<EObject>> created =
+                this.transform(pending, new XMIResourceImpl());
+            if (created == null) {
+                return null;
+            }
+            groups.putAll(created);
+        }
+        final List<EObject> contents = new ArrayList<>();
+        final List<Integer> counts = new ArrayList<>(roots.size());
+        for (final EObject root : roots) {
+            contents.addAll(groups.get(root));
+            counts.add(groups.get(root).size());
+        }
+        IncrementalTransformation.move(contents, outputs);
+        return new Delta(
+            roots.size() - pending.size(),
+            pending.size(),
+            removed,
+            true,
+            counts
+        );
+    }
+
+    /**
+     * Runs the transformation module on the given input roots.
+     * @param roots The input roots, which are moved to an in-memory resource
+     * @param scratch The output resource
+     * @return The output roots created for each input root, or null if some
+     *  output root cannot be traced back to exactly one input root
+     */
+    private Map<EObject, List<EObject>> transform(final List<EObject> roots,
+        final Resource scratch) {
+        final Resource inputs = new XMIResourceImpl();
+        IncrementalTransformation.move(roots, inputs);
+        final Map<ModelType, List<NamedModel>> models =
+            AtlTransformation.Builder.emptyModels();
+        models.get(ModelType.INPUT).add(new NamedModel(this.input, inputs));
+        models.get(ModelType.OUTPUT).add(new NamedModel(this.output, scratch));
+        final ExecutionContext current = this.context();
+        try {
+            this.transformation.run(current, models);
+            return IncrementalTransformation.group(
+                current.getEnvironment().getTraces(),
+                roots,
+                scratch
+            );
+        } finally {
+            current.reset();
+        }
+    }
+
+    /**
+     * Replaces the contents of a resource with the given root elements. The
+     * elements are detached from their resources in bulk first: adding them
+     * one by one would remove each from the head of its old list, which is
+     * quadratic in the number of roots.
+     * @param roots The root elements
+     * @param target The resource
+     */
+    private static void move(final List<EObject> roots,
+        final Resource target) {
+        final Set<EObject> moving =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+        moving.addAll(roots);
+        final Set<Resource> sources =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final EObject root : roots) {
+            final Resource source = root.eResource();
+            if (source != null && source != target
+                && root.eContainer() == null) {
+                sources.add(source);
+            }
+        }
+        for (final Resource source : sources) {
+            final List<EObject> kept = new ArrayList<>();
+            for (final EObject root : source.getContents()) {
+                if (!moving.contains(root)) {
+                    kept.add(root);
+                }
+            }
+            source.getContents().clear();
+            source.getContents().addAll(kept);
+        }
+        target.getContents().clear();
+        target.getContents().addAll(roots);
+    }
+
+    /**
+     * Groups the output roots by the input root they were created from.
+     * @param traces The trace links of the run
+     * @param roots The input roots
+     * @param outputs The output resource
+     * @return The output roots of each input root, or null if some output
+     *  root cannot be traced back to exactly one input root
+     */
+    private static Map<EObject, List<EObject>> group(final TraceLinkSet traces,
+        final List<EObject> roots, final Resource outputs) {
+        final Map<EObject, EObject> owners = new IdentityHashMap<>();
+        for (final TracedRule rule : traces.getRules()) {
+            for (final TraceLink link : rule.getLinks()) {
+                EObject owner = null;
+                for (final SourceElement element : link.getSourceElements()) {
+                    final EObject root =
+                        EcoreUtil.getRootContainer(element.getObject());
+                    if (owner != null && owner != root) {
+                        return null;
+                    }
+                    owner = root;
+                }
+                for (final TargetElement element : link.getTargetElements()) {
+                    owners.put(element.getObject(), owner);
+                }
+            }
+        }
+        final Map<EObject, List<EObject>> groups = new IdentityHashMap<>();
+        for (final EObject root : roots) {
+            groups.put(root, new ArrayList<>());
+        }
+        for (final EObject target : outputs.getContents()) {
+            final List<EObject> group = groups.get(owners.get(target));
+            if (group == null) {
+                return null;
+            }
+            group.add(target);
+        }
+        return groups;
+    }
+
+    /**
+     * Reads the trace of the previous run.
+     * @param target The output model file
+     * @param trace The trace file
+     * @param module The hash of the module and metamodels
+     * @return One line per input root, or an empty list if there is no
+     *  usable trace
+     * @throws IOException If the trace file cannot be read
+     */
+    private static List<String> previous(final File target, final File trace,
+        final String module) throws IOException {
+        List<String> lines = Collections.emptyList();
+        if (target.exists() && trace.exists()) {
+            try {
+                lines = Files.readAllLines(
+                    trace.toPath(),
+                    StandardCharsets.UTF_8
+                );
+            } catch (final CharacterCodingException exception) {
+                // Not a trace written by this class
+                return Collections.emptyList();
+            }
+            if (lines.isEmpty() || !lines.get(0).equals(
+                IncrementalTransformation.HEADER + module)) {
+                lines = Collections.emptyList();
+            } else {
+                lines = lines.subList(1, lines.size());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Reads the number of output roots in a line of a trace.
+     * @param line A line with the hash of an input root and the number of
+     *  output roots created for it, separated by a space
+     * @return The number, or -1 if the line is not valid (e.g., truncated or
+     *  edited by hand)
+     */
+    private static int count(final String line) {
+        final String[] parts = line.split(" ", -1);
+        int count = -1;
+        if (parts.length == 2 && !parts[0].isEmpty()) {
+            try {
+                count = Integer.parseInt(parts[1]);
+            } catch (final NumberFormatException exception) {
+                count = -1;
+            }
+        }
+        return Math.max(count, -1);
+    }
+
+    /**
+     * The execution context, recreated if the metamodels or module changed.
+     * @return The execution context
+     */
+    private ExecutionContext context() {
+        if (this.context == null) {
+            this.context = this.transformation.context();
+        } else if (!this.context.getFingerprint()
+            .equals(this.context.getFingerprint().update())) {
+            this.transformation.reloadMetamodels();
+            this.context = this.transformation.context();
+        }
+        return this.context;
+    }
+
+    /**
+     * The changes applied to an output model.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @Data
+    public static final class Delta {
+
+        /**
+         * The number of input roots whose previous output was reused.
+         */
+        private final int reused;
+
+        /**
+         * The number of input roots that were transformed.
+         */
+        private final int transformed;
+
+        /**
+         * The number of input roots whose output was removed.
+         */
+        private final int removed;
+
+        /**
+         * Whether the output could be traced back to the input roots, so
+         * that the next run can be incremental.
+         */
+        private final boolean traced;
+
+        /**
+         * The number of output roots of each input root, if traced.
+         */
+        private final List<Integer> counts;
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import lombok.ToString;
+
+/**
+ * A read-only file mapped into memory, addressed with 64-bit positions. The
+ * file is mapped in segments, since a single mapping cannot exceed 2 GB, so
+ * the operating system pages its contents in and out as they are read
+ * without using the Java heap.
+ * <p>
+ * Reads use absolute positions only, so instances can be shared by several
+ * threads.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = "file")
+final class MappedFile {
+
+    /**
+     * The number of bits of the position within a segment.
+     */
+    private static final int SEGMENT_BITS = 30;
+
+    /**
+     * The size of each segment, in bytes.
+     */
+    private static final long SEGMENT_SIZE = 1L << MappedFile.SEGMENT_BITS;
+
+    /**
+     * The mask of the position within a segment.
+     */
+    private static final long SEGMENT_MASK = MappedFile.SEGMENT_SIZE - 1L;
+
+    /**
+     * The mapped file.
+     */
+    private final File file;
+
+    /**
+     * The mapped segments.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * The size of the file, in bytes.
+     */
+    private final long size;
+
+    /**
+     * Default constructor.
+     * @param file The file to map
+     * @throws IOException If the file cannot be mapped
+     */
+    MappedFile(final File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile access = new RandomAccessFile(file, "r");
+            FileChannel channel = access.getChannel()) {
+            this.size = channel.size();
+            final int count = (int) (
+                (this.size + MappedFile.SEGMENT_SIZE - 1L)
+                    >>> MappedFile.SEGMENT_BITS
+            );
+            this.segments = new MappedByteBuffer[count];
+            for (int index = 0; index < count; index += 1) {
+                final long start = (long) index << MappedFile.SEGMENT_BITS;
+                this.segments[index] = channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    start,
+                    Math.min(MappedFile.SEGMENT_SIZE, this.size - start)
+                );
+            }
+        }
+    }
+
+    /**
+     * The size of the file.
+     * @return A number of bytes
+     */
+    long size() {
+        return this.size;
+    }
+
+    /**
+     * Reads a byte.
+     * @param position The position in the file
+     * @return The byte
+     */
+    byte get(final long position) {
+        return this.segments[(int) (position >>> MappedFile.SEGMENT_BITS)]
+            .get((int) (position & MappedFile.SEGMENT_MASK));
+    }
+
+    /**
+     * Reads a big-endian int.
+     * @param position The position in the file
+     * @return The int
+     */
+    int getInt(final long position) {
+        final int offset = (int) (position & MappedFile.SEGMENT_MASK);
+        final MappedByteBuffer segment =
+            this.segments[(int) (position >>> MappedFile.SEGMENT_BITS)];
+        if (offset + Integer.BYTES <= segment.limit()) {
+            return segment.getInt(offset);
+        }
+        return (int) this.straddling(position, Integer.BYTES);
+    }
+
+    /**
+     * Reads a big-endian long.
+     * @param position The position in the file
+     * @return The long
+     */
+    long getLong(final long position) {
+        final int offset = (int) (position & MappedFile.SEGMENT_MASK);
+        final MappedByteBuffer segment =
+            this.segments[(int) (position >>> MappedFile.SEGMENT_BITS)];
+        if (offset + Long.BYTES <= segment.limit()) {
+            return segment.getLong(offset);
+        }
+        return this.straddling(position, Long.BYTES);
+    }
+
+    /**
+     * Reads a string written as its length followed by its UTF-8 bytes. A
+     * negative length stands for {@code null}.
+     * @param position The position in the file
+     * @return The string, or {@code null}
+     */
+    String getString(final long position) {
+        final int length = this.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        final long start = position + Integer.BYTES;
+        for (int index = 0; index < bytes.length; index += 1) {
+            bytes[index] = this.get(start + index);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The number of bytes taken by a string written as its length followed
+     * by its UTF-8 bytes.
+     * @param position The position of the string in the file
+     * @return A number of bytes
+     */
+    long stringSize(final long position) {
+        return Integer.BYTES + (long) Math.max(0, this.getInt(position));
+    }
+
+    /**
+     * Reads a big-endian number that spans two segments.
+     * @param position The position in the file
+     * @param bytes The size of the number
+     * @return The number
+     */
+    private long straddling(final long position, final int bytes) {
+        long value = 0L;
+        for (int index = 0; index < bytes; index += 1) {
+            value = value << Byte.SIZE | this.get(position + index) & 0xFF;
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,259 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import lombok.RequiredArgsConstructor;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EFactory;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.impl.EPackageRegistryImpl;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.BasicExtendedMetaData;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.eclipse.emf.ecore.xmi.impl.EcoreResourceFactoryImpl;
+
+/**
+ * A process-wide cache of .ecore files, keyed by path and invalidated when
+ * the file's last-modified time or size change.
+ * <p>
+ * The nsURI of a metamodel is found by scanning the root element's
+ * attributes only, and the metamodel itself is parsed at most once, the
+ * first time a transformation needs it. Loaded packages are shared by all
+ * transformations, so their derived features are computed before they are
+ * published, to make them safe to read from several threads.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class MetamodelCache {
+
+    /**
+     * The name of the root element of .ecore files.
+     */
+    private static final String EPACKAGE = "EPackage";
+
+    /**
+     * The name of the nsURI attribute.
+     */
+    private static final String NS_URI = "nsURI";
+
+    /**
+     * The cached metamodels, by absolute path.
+     */
+    private static final Map<String, Entry> ENTRIES =
+        new ConcurrentHashMap<>();
+
+    /**
+     * The XML parser factory used to scan headers.
+     */
+    private static final XMLInputFactory FACTORY = MetamodelCache.factory();
+
+    /**
+     * Hidden constructor.
+     */
+    private MetamodelCache() {
+        // Nothing to do here
+    }
+
+    /**
+     * Finds the nsURI of a metamodel's main package, without loading it.
+     * @param metamodel The .ecore file
+     * @return The nsURI, or an empty URI if the file does not contain a
+     *  package
+     */
+    static URI nsUri(final File metamodel) {
+        return URI.createURI(MetamodelCache.entry(metamodel).uri);
+    }
+
+    /**
+     * Loads a metamodel's main package, or returns the one already loaded.
+     * @param metamodel The .ecore file
+     * @return The package, or null if the file does not contain a package
+     */
+    static EPackage load(final File metamodel) {
+        final Entry entry = MetamodelCache.entry(metamodel);
+        synchronized (entry) {
+            if (entry.epackage == null) {
+                entry.epackage = MetamodelCache.parse(metamodel);
+            }
+        }
+        return entry.epackage;
+    }
+
+    /**
+     * A package descriptor that loads the metamodel on demand.
+     * @param metamodel The .ecore file
+     * @return The descriptor
+     */
+    static EPackage.Descriptor descriptor(final File metamodel) {
+        return new EPackage.Descriptor() {
+            @Override
+            public EPackage getEPackage() {
+                return MetamodelCache.load(metamodel);
+            }
+
+            @Override
+            public EFactory getEFactory() {
+                return this.getEPackage().getEFactoryInstance();
+            }
+        };
+    }
+
+    /**
+     * Finds the cache entry of a file, replacing it if the file changed.
+     * @param metamodel The .ecore file
+     * @return The cache entry
+     */
+    private static Entry entry(final File metamodel) {
+        final String key = metamodel.getAbsolutePath();
+        final long modified = metamodel.lastModified();
+        final long size = metamodel.length();
+        Entry entry = MetamodelCache.ENTRIES.get(key);
+        if (entry == null || entry.modified != modified || entry.size != size) {
+            entry = new Entry(modified, size, MetamodelCache.scan(metamodel));
+            MetamodelCache.ENTRIES.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Reads the nsURI attribute of the main package, stopping at the first
+     * package element.
+     * @param metamodel The .ecore file
+     * @return The nsURI, or an empty string if there is no package
+     */
+    private static String scan(final File metamodel) {
+        String uri = null;
+        try (InputStream stream = Files.newInputStream(metamodel.toPath())) {
+            final XMLStreamReader reader =
+                MetamodelCache.FACTORY.createXMLStreamReader(stream);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && MetamodelCache.EPACKAGE
+                        .equals(reader.getLocalName())) {
+                        uri = reader.getAttributeValue(
+                            null, MetamodelCache.NS_URI
+                        );
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException | XMLStreamException exception) {
+            // Let the full parser report the problem
+            uri = null;
+        }
+        if (uri == null) {
+            // Unusual serialization (e.g., the package is not the root
+            // element or has no nsURI attribute)
+            final EPackage epackage = MetamodelCache.parse(metamodel);
+            uri = "";
+            if (epackage != null) {
+                uri = epackage.getNsURI();
+            }
+        }
+        return uri;
+    }
+
+    /**
+     * Parses a metamodel and computes its derived features.
+     * @param metamodel The .ecore file
+     * @return The main package, or null if the file does not contain one
+     */
+    private static EPackage parse(final File metamodel) {
+        final ResourceSet set = new ResourceSetImpl();
+        set.getResourceFactoryRegistry()
+            .getExtensionToFactoryMap()
+            .put("ecore", new EcoreResourceFactoryImpl());
+        set.getLoadOptions().put(
+            XMLResource.OPTION_EXTENDED_META_DATA,
+            new BasicExtendedMetaData(
+                new EPackageRegistryImpl(EPackage.Registry.INSTANCE)
+            )
+        );
+        final Resource resource = set.getResource(
+            URI.createFileURI(metamodel.getAbsolutePath()), true
+        );
+        // A meta-model might have multiple packages we assume the main package
+        // is the first one listed
+        final EObject eobject = resource.getContents().get(0);
+        EPackage epackage = null;
+        if (eobject instanceof EPackage) {
+            epackage = (EPackage) eobject;
+            final TreeIterator<EObject> iterator = resource.getAllContents();
+            while (iterator.hasNext()) {
+                final EObject next = iterator.next();
+                if (next instanceof EClass) {
+                    final EClass eclass = (EClass) next;
+                    eclass.getEAllSuperTypes();
+                    eclass.getEAllStructuralFeatures();
+                    eclass.getEAllAttributes();
+                    eclass.getEAllReferences();
+                    eclass.getEAllContainments();
+                    eclass.getEAllOperations();
+                    eclass.getEIDAttribute();
+                }
+            }
+        }
+        return epackage;
+    }
+
+    /**
+     * Creates the XML parser factory.
+     * @return A factory that does not resolve external entities
+     */
+    private static XMLInputFactory factory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(
+            XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false
+        );
+        return factory;
+    }
+
+    /**
+     * A cached metamodel.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @RequiredArgsConstructor
+    private static final class Entry {
+
+        /**
+         * The file's last-modified time.
+         */
+        private final long modified;
+
+        /**
+         * The file size.
+         */
+        private final long size;
+
+        /**
+         * The nsURI of the main package.
+         */
+        private final String uri;
+
+        /**
+         * The main package, once loaded.
+         */
+        private EPackage epackage;
+    }
+
+}
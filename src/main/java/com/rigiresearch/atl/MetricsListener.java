@@ -0,0 +1,17 @@
+package com.rigiresearch.atl;
+
+/**
+ * A callback notified at the end of each transformation run.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+public interface MetricsListener {
+
+    /**
+     * Receives the measurements of a finished run.
+     * @param metrics The run metrics
+     */
+    void finished(RunMetrics metrics);
+
+}
@@ -0,0 +1,123 @@
+package com.rigiresearch.atl;
+
+import java.util.List;
+import java.util.Map;
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.InternalEList;
+
+/**
+ * Reduces the heap retained by a loaded model that is only read afterwards,
+ * such as the input model of a transformation.
+ * <p>
+ * Equal string attribute values share a single instance, the arrays backing
+ * many-valued features are trimmed to their size, and notifications are
+ * turned off for the resource and its elements. Containment is kept, since
+ * modules may navigate to the container of an input element.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class ModelCompaction {
+
+    /**
+     * Hidden constructor.
+     */
+    private ModelCompaction() {
+        // Nothing to do here
+    }
+
+    /**
+     * Compacts the elements of a resource.
+     * @param resource The loaded resource
+     * @param strings The canonical instance of each string seen so far. It
+     *  can be shared by the resources loaded for the same run
+     */
+    static void compact(final Resource resource,
+        final Map<String, String> strings) {
+        if (resource instanceof PagedResourceImpl) {
+            // Paged elements are not on the heap
+            return;
+        }
+        resource.eSetDeliver(false);
+        ModelCompaction.shrink(resource.getContents());
+        final TreeIterator<EObject> iterator = resource.getAllContents();
+        while (iterator.hasNext()) {
+            ModelCompaction.compact(iterator.next(), strings);
+        }
+    }
+
+    /**
+     * Compacts the features of an element.
+     * @param object The element
+     * @param strings The canonical instance of each string seen so far
+     */
+    @SuppressWarnings("unchecked")
+    private static void compact(final EObject object,
+        final Map<String, String> strings) {
+        object.eSetDeliver(false);
+        for (final EStructuralFeature feature
+            : object.eClass().getEAllStructuralFeatures()) {
+            if (feature.isDerived() || feature.isVolatile()
+                || !object.eIsSet(feature)) {
+                continue;
+            }
+            final Object value = object.eGet(feature, false);
+            if (value instanceof InternalEList) {
+                final InternalEList<Object> list =
+                    (InternalEList<Object>) value;
+                if (feature instanceof EAttribute) {
+                    for (int index = 0; index < list.size(); index += 1) {
+                        final Object element = list.basicGet(index);
+                        if (element instanceof String) {
+                            list.setUnique(
+                                index,
+                                ModelCompaction.canonical(
+                                    strings,
+                                    (String) element
+                                )
+                            );
+                        }
+                    }
+                }
+                ModelCompaction.shrink(list);
+            } else if (value instanceof String) {
+                final String canonical =
+                    ModelCompaction.canonical(strings, (String) value);
+                if (canonical != value) {
+                    object.eSet(feature, canonical);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the canonical instance of a string.
+     * @param strings The canonical instance of each string seen so far
+     * @param value The string
+     * @return An equal string, possibly the same
+     */
+    private static String canonical(final Map<String, String> strings,
+        final String value) {
+        final String existing = strings.putIfAbsent(value, value);
+        if (existing == null) {
+            return value;
+        }
+        return existing;
+    }
+
+    /**
+     * Trims the array backing a list to the list's size.
+     * @param list The list
+     */
+    private static void shrink(final List<?> list) {
+        if (list instanceof BasicEList) {
+            ((BasicEList<?>) list).shrink();
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Converts models between the supported formats (e.g., from XMI to binary).
+ * The format of each file is inferred from its extension. XMI models are
+ * imported into the paged format in a streaming fashion (see
+ * {@link PagedStoreImporter}), so models larger than the heap can be
+ * imported; other conversions load the source model.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString
+public final class ModelConverter {
+
+    /**
+     * The resource set, with the metamodels registered.
+     */
+    private final ResourceSet set;
+
+    /**
+     * Default constructor.
+     * @param metamodels The .ecore files of the models to convert
+     */
+    public ModelConverter(final File... metamodels) {
+        this.set = new ResourceSetImpl();
+        for (final ModelFormat format : ModelFormat.values()) {
+            this.set.getResourceFactoryRegistry()
+                .getExtensionToFactoryMap()
+                .put(format.getExtension(), format.getFactory());
+        }
+        this.set.getResourceFactoryRegistry()
+            .getExtensionToFactoryMap()
+            .put("ecore", ModelFormat.XMI.getFactory());
+        for (final File metamodel : metamodels) {
+            final Resource resource = this.set.getResource(
+                URI.createFileURI(metamodel.getAbsolutePath()), true
+            );
+            for (final EObject eobject : resource.getContents()) {
+                if (eobject instanceof EPackage) {
+                    final EPackage epackage = (EPackage) eobject;
+                    this.set.getPackageRegistry()
+                        .put(epackage.getNsURI(), epackage);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a model file.
+     * @param source The file to read
+     * @param target The file to write
+     * @throws IOException If something fails while reading or writing
+     */
+    public void convert(final File source, final File target)
+        throws IOException {
+        if (ModelFormat.of(source.getName()) == ModelFormat.XMI
+            && ModelFormat.of(target.getName()) == ModelFormat.PAGED) {
+            // Import without loading the model, which may not fit the heap
+            new PagedStoreImporter(this.set.getPackageRegistry())
+                .convert(source, target);
+            return;
+        }
+        final Resource input = this.set.getResource(
+            URI.createFileURI(source.getAbsolutePath()), true
+        );
+        final Resource output = this.set.createResource(
+            URI.createFileURI(target.getAbsolutePath())
+        );
+        if (input instanceof PagedResourceImpl) {
+            // Paged models are read-only, so their elements cannot be moved
+            output.getContents().addAll(
+                EcoreUtil.copyAll(input.getContents())
+            );
+        } else {
+            output.getContents().addAll(input.getContents());
+        }
+        try {
+            output.save(Collections.EMPTY_MAP);
+        } finally {
+            this.set.getResources().remove(input);
+            this.set.getResources().remove(output);
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Computes content hashes of model elements.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class ModelDigest {
+
+    /**
+     * The hashing algorithm.
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * Hidden constructor.
+     */
+    private ModelDigest() {
+        // Nothing to do here
+    }
+
+    /**
+     * Hashes an element and its containment subtree: the classes, attribute
+     * values and references of every element, and where each one is
+     * located within the subtree.
+     * @param root The element
+     * @return A hexadecimal hash
+     */
+    static String of(final EObject root) {
+        final MessageDigest digest = ModelDigest.digest();
+        ModelDigest.update(digest, root, root);
+        final Iterator<EObject> iterator = root.eAllContents();
+        while (iterator.hasNext()) {
+            ModelDigest.update(digest, root, iterator.next());
+        }
+        return ModelDigest.hex(digest.digest());
+    }
+
+    /**
+     * Hashes the contents of a file.
+     * @param digest The digest
+     * @param file The file
+     */
+    static void update(final MessageDigest digest, final File file) {
+        final byte[] buffer = new byte[1 << 16];
+        try (InputStream stream = Files.newInputStream(file.toPath())) {
+            for (int read = stream.read(buffer); read >= 0;
+                read = stream.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Creates a new message digest.
+     * @return The digest
+     */
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(ModelDigest.ALGORITHM);
+        } catch (final NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Formats a hash in hexadecimal.
+     * @param bytes The hash
+     * @return The hexadecimal string
+     */
+    static String hex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte value : bytes) {
+            hex.append(String.format("%02x", value));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Hashes one element of a subtree. Containment references are not
+     * hashed here, since the contained elements are hashed on their own
+     * along with their location.
+     * @param digest The digest
+     * @param root The root of the subtree
+     * @param object The element
+     */
+    private static void update(final MessageDigest digest, final EObject root,
+        final EObject object) {
+        ModelDigest.update(
+            digest,
+            EcoreUtil.getRelativeURIFragmentPath(root, object)
+        );
+        ModelDigest.update(digest, object.eClass().getName());
+        for (final EStructuralFeature feature
+            : object.eClass().getEAllStructuralFeatures()) {
+            if (feature.isTransient() || !object.eIsSet(feature)
+                || feature instanceof EReference
+                && ((EReference) feature).isContainment()) {
+                continue;
+            }
+            ModelDigest.update(digest, feature.getName());
+            final Object value = object.eGet(feature);
+            if (feature instanceof EAttribute) {
+                ModelDigest.update(digest, String.valueOf(value));
+            } else if (value instanceof List) {
+                for (final Object target : (List<?>) value) {
+                    ModelDigest.reference(digest, root, (EObject) target);
+                }
+            } else {
+                ModelDigest.reference(digest, root, (EObject) value);
+            }
+        }
+    }
+
+    /**
+     * Hashes a reference to an element, relative to the subtree if the
+     * element belongs to it.
+     * @param digest The digest
+     * @param root The root of the subtree
+     * @param target The referenced element
+     */
+    private static void reference(final MessageDigest digest,
+        final EObject root, final EObject target) {
+        if (EcoreUtil.isAncestor(root, target)) {
+            ModelDigest.update(
+                digest,
+                EcoreUtil.getRelativeURIFragmentPath(root, target)
+            );
+        } else {
+            ModelDigest.update(digest, EcoreUtil.getURI(target).toString());
+        }
+    }
+
+    /**
+     * Hashes a string, followed by a separator.
+     * @param digest The digest
+     * @param value The string
+     */
+    static void update(final MessageDigest digest, final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+}
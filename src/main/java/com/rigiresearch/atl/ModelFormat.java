@@ -0,0 +1,61 @@
+package com.rigiresearch.atl;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
+
+/**
+ * Supported model file formats.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ModelFormat {
+    /**
+     * XML Metadata Interchange.
+     */
+    XMI("xmi", new XMIResourceFactoryImpl()),
+
+    /**
+     * EMF's binary format. It is smaller and faster to load and save than
+     * XMI, but not human-readable.
+     */
+    BINARY("xmib", new BinaryResourceFactoryImpl()),
+
+    /**
+     * A read-only format whose elements are memory-mapped and paged in as
+     * they are navigated, for models larger than the heap.
+     */
+    PAGED("xmip", new PagedResourceFactoryImpl());
+
+    /**
+     * The file extension.
+     */
+    private final String extension;
+
+    /**
+     * The resource factory.
+     */
+    private final Resource.Factory factory;
+
+    /**
+     * Finds the format of a file based on its extension.
+     * @param path The file path
+     * @return The binary format for .xmib files, the paged format for .xmip
+     *  files, XMI otherwise
+     */
+    public static ModelFormat of(final String path) {
+        final ModelFormat format;
+        if (path.endsWith(String.format(".%s", BINARY.extension))) {
+            format = BINARY;
+        } else if (path.endsWith(String.format(".%s", PAGED.extension))) {
+            format = PAGED;
+        } else {
+            format = XMI;
+        }
+        return format;
+    }
+}
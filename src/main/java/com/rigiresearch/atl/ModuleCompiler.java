@@ -0,0 +1,157 @@
+package com.rigiresearch.atl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.m2m.atl.emftvm.compiler.AtlToEmftvmCompiler;
+
+/**
+ * Compiles .atl modules to EMFTVM bytecode and caches the result by content
+ * hash, so that a module is only recompiled when its source changes.
+ * <p>
+ * Each compiled module is stored as {@code <cache>/<hash>/<module>.emftvm},
+ * where the hash is computed from the .atl source.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@RequiredArgsConstructor
+@ToString
+final class ModuleCompiler {
+
+    /**
+     * Serializes compilations, since the ATL parser is not meant to be used
+     * from several threads at once.
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * The severity of compilation problems that prevent using the module.
+     */
+    private static final String ERROR = "error";
+
+    /**
+     * The cache directory.
+     */
+    private final File cache;
+
+    /**
+     * Compiles a module, unless it is already in the cache.
+     * @param source The .atl file
+     * @param path The module path, relative to the module directory and
+     *  without extension (e.g., Composed2Simple)
+     * @return The directory containing the compiled module
+     * @throws IOException If the module cannot be read or the compiled
+     *  module cannot be written
+     */
+    File compile(final File source, final String path) throws IOException {
+        final byte[] content = Files.readAllBytes(source.toPath());
+        final File root = new File(
+            this.cache,
+            ModelDigest.hex(ModelDigest.digest().digest(content))
+        );
+        final File target = new File(root, String.format("%s.emftvm", path));
+        if (!target.isFile()) {
+            synchronized (ModuleCompiler.LOCK) {
+                if (!target.isFile()) {
+                    ModuleCompiler.compile(source, content, target);
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Compiles a module into a file.
+     * @param source The .atl file, for error messages
+     * @param content The contents of the .atl file
+     * @param target The .emftvm file
+     * @throws IOException If the compiled module cannot be written
+     */
+    private static void compile(final File source, final byte[] content,
+        final File target) throws IOException {
+        Files.createDirectories(target.getParentFile().toPath());
+        final File temporary = File.createTempFile(
+            target.getName(), ".tmp", target.getParentFile()
+        );
+        try {
+            final EObject[] problems;
+            try (Reader reader = new InputStreamReader(
+                new ByteArrayInputStream(content), StandardCharsets.UTF_8);
+                OutputStream stream =
+                    Files.newOutputStream(temporary.toPath())) {
+                problems = new AtlToEmftvmCompiler()
+                    .compileWithProblemModel(reader, stream);
+            }
+            ModuleCompiler.check(source, problems);
+            // Other processes may be compiling the same module
+            Files.move(
+                temporary.toPath(),
+                target.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING
+            );
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /**
+     * Fails if the compiler reported errors.
+     * @param source The .atl file
+     * @param problems The problems reported by the compiler
+     */
+    private static void check(final File source, final EObject... problems) {
+        final List<String> errors = new ArrayList<>();
+        for (final EObject problem : problems) {
+            if (ModuleCompiler.ERROR.equals(
+                ModuleCompiler.value(problem, "severity"))) {
+                errors.add(
+                    String.format(
+                        "%s: %s",
+                        ModuleCompiler.value(problem, "location"),
+                        ModuleCompiler.value(problem, "description")
+                    )
+                );
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "Module %s does not compile:%n%s",
+                    source,
+                    String.join(System.lineSeparator(), errors)
+                )
+            );
+        }
+    }
+
+    /**
+     * Reads a feature of a problem reported by the ATL compiler.
+     * @param problem The problem
+     * @param name The feature name
+     * @return The feature value as a String
+     */
+    private static String value(final EObject problem, final String name) {
+        final EStructuralFeature feature =
+            problem.eClass().getEStructuralFeature(name);
+        String value = "";
+        if (feature != null) {
+            value = String.valueOf(problem.eGet(feature));
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.rigiresearch.atl;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceFactoryImpl;
+
+/**
+ * A resource factory for the paged, memory-mapped model format.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+public final class PagedResourceFactoryImpl extends ResourceFactoryImpl {
+
+    @Override
+    public Resource createResource(final URI uri) {
+        return new PagedResourceImpl(uri);
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.Map;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+
+/**
+ * A resource stored in the paged format (.xmip). Once loaded, its elements
+ * are kept in a memory-mapped file and paged in lazily as they are
+ * navigated (see {@link PagedStore}), so models larger than the heap can be
+ * used as transformation inputs.
+ * <p>
+ * Loaded resources are read-only. Saving writes the resource's contents in
+ * the paged format, which is how models are imported from other formats
+ * (see {@link ModelConverter}).
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+public final class PagedResourceImpl extends ResourceImpl {
+
+    /**
+     * The store of the loaded model, or {@code null} if the resource is not
+     * loaded.
+     */
+    private PagedStore store;
+
+    /**
+     * The root elements of the loaded model.
+     */
+    private EList<EObject> roots;
+
+    /**
+     * Default constructor.
+     * @param uri The resource URI
+     */
+    public PagedResourceImpl(final URI uri) {
+        super(uri);
+    }
+
+    @Override
+    public EList<EObject> getContents() {
+        if (this.roots == null) {
+            return super.getContents();
+        }
+        return this.roots;
+    }
+
+    /**
+     * The number of elements in the loaded model.
+     * @return A number of elements, or zero if the resource is not loaded
+     */
+    public long size() {
+        if (this.store == null) {
+            return 0L;
+        }
+        return this.store.size();
+    }
+
+    @Override
+    protected void doLoad(final InputStream stream, final Map<?, ?> options)
+        throws IOException {
+        final File file;
+        if (this.uri != null && this.uri.isFile()) {
+            // Map the file instead of reading the stream
+            file = new File(this.uri.toFileString());
+        } else {
+            final Path copy = Files.createTempFile("model", ".xmip");
+            copy.toFile().deleteOnExit();
+            Files.copy(stream, copy, StandardCopyOption.REPLACE_EXISTING);
+            file = copy.toFile();
+        }
+        final EPackage.Registry registry;
+        if (this.getResourceSet() == null) {
+            registry = EPackage.Registry.INSTANCE;
+        } else {
+            registry = this.getResourceSet().getPackageRegistry();
+        }
+        final PagedStore loaded =
+            new PagedStore(new MappedFile(file), registry, this);
+        this.store = loaded;
+        this.roots = new Roots(loaded);
+    }
+
+    @Override
+    protected void doSave(final OutputStream stream, final Map<?, ?> options)
+        throws IOException {
+        new PagedStoreWriter(stream).write(this.getContents());
+    }
+
+    @Override
+    protected void doUnload() {
+        // Paged elements are not turned into proxies; they are released
+        // with the store
+        this.store = null;
+        this.roots = null;
+    }
+
+    /**
+     * The read-only list of root elements of a loaded model.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private static final class Roots extends AbstractList<EObject>
+        implements EList<EObject> {
+
+        /**
+         * The store.
+         */
+        private final PagedStore store;
+
+        /**
+         * Default constructor.
+         * @param store The store
+         */
+        Roots(final PagedStore store) {
+            super();
+            this.store = store;
+        }
+
+        @Override
+        public EObject get(final int index) {
+            return this.store.root(index);
+        }
+
+        @Override
+        public int size() {
+            return this.store.roots();
+        }
+
+        @Override
+        public void move(final int index, final EObject object) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EObject move(final int target, final int source) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,670 @@
+package com.rigiresearch.atl;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.ToString;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.impl.EStoreEObjectImpl;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * A read-only EMF store whose elements live in a memory-mapped file written
+ * by {@link PagedStoreWriter}, instead of on the heap.
+ * <p>
+ * Elements are created when they are first navigated to, and read their
+ * feature values from the file on every access. The store only keeps weak
+ * references to them, so elements that are no longer referenced are
+ * collected and created again if needed. The heap used by a model is then
+ * bounded by the elements its clients hold on to, regardless of its size.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = "file")
+final class PagedStore implements InternalEObject.EStore {
+
+    /**
+     * The message of the exception thrown by operations that modify
+     * elements.
+     */
+    private static final String READ_ONLY = "Paged models are read-only";
+
+    /**
+     * The mapped file.
+     */
+    private final MappedFile file;
+
+    /**
+     * The resource that contains the root elements.
+     */
+    private final Resource.Internal resource;
+
+    /**
+     * The classes of the elements, by their index in the file.
+     */
+    private final ClassLayout[] classes;
+
+    /**
+     * The number of root elements.
+     */
+    private final int roots;
+
+    /**
+     * The position of the root element identifiers.
+     */
+    private final long rootsPosition;
+
+    /**
+     * The position of the index of records.
+     */
+    private final long indexPosition;
+
+    /**
+     * The elements that are currently in use, by identifier, guarded by
+     * this object.
+     */
+    private final Map<Long, ElementReference> elements;
+
+    /**
+     * The references of collected elements, to be removed from the map.
+     */
+    private final ReferenceQueue<PagedEObject> collected;
+
+    /**
+     * Default constructor.
+     * @param file The mapped file
+     * @param registry The registry to find the classes of the elements in
+     * @param resource The resource that contains the root elements
+     * @throws IOException If the file is not a paged model, or one of its
+     *  classes is not registered
+     */
+    PagedStore(final MappedFile file, final EPackage.Registry registry,
+        final Resource.Internal resource) throws IOException {
+        this.file = file;
+        this.resource = resource;
+        this.elements = new HashMap<>();
+        this.collected = new ReferenceQueue<>();
+        if (file.size() < Integer.BYTES * 2
+            || file.getInt(0L) != PagedStoreWriter.MAGIC) {
+            throw new IOException(
+                String.format("%s is not a paged model", file)
+            );
+        }
+        if (file.getInt(Integer.BYTES) != PagedStoreWriter.VERSION) {
+            throw new IOException(
+                String.format("Unsupported paged model version in %s", file)
+            );
+        }
+        long position = Integer.BYTES * 2L;
+        this.classes = new ClassLayout[file.getInt(position)];
+        position += Integer.BYTES;
+        for (int index = 0; index < this.classes.length; index += 1) {
+            final String uri = file.getString(position);
+            position += file.stringSize(position);
+            final String name = file.getString(position);
+            position += file.stringSize(position);
+            this.classes[index] = new ClassLayout(
+                PagedStore.eclass(registry, uri, name)
+            );
+        }
+        this.roots = file.getInt(position);
+        this.rootsPosition = position + Integer.BYTES;
+        this.indexPosition = file.getLong(file.size() - Long.BYTES);
+    }
+
+    /**
+     * The number of root elements.
+     * @return A number of elements
+     */
+    int roots() {
+        return this.roots;
+    }
+
+    /**
+     * Finds a root element.
+     * @param index The index of the root element
+     * @return The element
+     */
+    EObject root(final int index) {
+        if (index < 0 || index >= this.roots) {
+            throw new IndexOutOfBoundsException(
+                String.format("Index: %d, Size: %d", index, this.roots)
+            );
+        }
+        return this.element(
+            this.file.getLong(this.rootsPosition + (long) Long.BYTES * index)
+        );
+    }
+
+    /**
+     * The number of elements in the model.
+     * @return A number of elements
+     */
+    long size() {
+        return this.file.getLong(this.indexPosition);
+    }
+
+    @Override
+    public Object get(final InternalEObject object,
+        final EStructuralFeature feature, final int index) {
+        if (PagedStore.isContainer(feature)) {
+            return this.container(object, feature);
+        }
+        final long position = this.position(object, feature);
+        if (feature.isMany()) {
+            final int size = this.size(object, feature);
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(
+                    String.format("Index: %d, Size: %d", index, size)
+                );
+            }
+            return this.value(
+                feature,
+                this.item(feature, position + Integer.BYTES, index)
+            );
+        }
+        if (position < 0L) {
+            return feature.getDefaultValue();
+        }
+        return this.value(feature, position);
+    }
+
+    @Override
+    public boolean isSet(final InternalEObject object,
+        final EStructuralFeature feature) {
+        if (PagedStore.isContainer(feature)) {
+            return this.container(object, feature) != null;
+        }
+        return this.position(object, feature) >= 0L;
+    }
+
+    @Override
+    public boolean isEmpty(final InternalEObject object,
+        final EStructuralFeature feature) {
+        return this.size(object, feature) == 0;
+    }
+
+    @Override
+    public int size(final InternalEObject object,
+        final EStructuralFeature feature) {
+        final long position = this.position(object, feature);
+        if (position < 0L) {
+            return 0;
+        }
+        return this.file.getInt(position);
+    }
+
+    @Override
+    public boolean contains(final InternalEObject object,
+        final EStructuralFeature feature, final Object value) {
+        return this.indexOf(object, feature, value) >= 0;
+    }
+
+    @Override
+    public int indexOf(final InternalEObject object,
+        final EStructuralFeature feature, final Object value) {
+        final int size = this.size(object, feature);
+        for (int index = 0; index < size; index += 1) {
+            if (PagedStore.equal(value, this.get(object, feature, index))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(final InternalEObject object,
+        final EStructuralFeature feature, final Object value) {
+        for (int index = this.size(object, feature) - 1; index >= 0;
+            index -= 1) {
+            if (PagedStore.equal(value, this.get(object, feature, index))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Object[] toArray(final InternalEObject object,
+        final EStructuralFeature feature) {
+        final Object[] array = new Object[this.size(object, feature)];
+        for (int index = 0; index < array.length; index += 1) {
+            array[index] = this.get(object, feature, index);
+        }
+        return array;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(final InternalEObject object,
+        final EStructuralFeature feature, final T[] array) {
+        final int size = this.size(object, feature);
+        final T[] result;
+        if (array.length < size) {
+            result = Arrays.copyOf(array, size);
+        } else {
+            result = array;
+        }
+        for (int index = 0; index < size; index += 1) {
+            result[index] = (T) this.get(object, feature, index);
+        }
+        if (result.length > size) {
+            result[size] = null;
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode(final InternalEObject object,
+        final EStructuralFeature feature) {
+        return Arrays.hashCode(this.toArray(object, feature));
+    }
+
+    @Override
+    public InternalEObject getContainer(final InternalEObject object) {
+        final long container =
+            this.file.getLong(this.record(object) + Integer.BYTES);
+        if (container < 0L) {
+            return null;
+        }
+        return this.element(container);
+    }
+
+    @Override
+    public EStructuralFeature getContainingFeature(
+        final InternalEObject object) {
+        final InternalEObject container = this.getContainer(object);
+        if (container == null) {
+            return null;
+        }
+        return container.eClass().getEStructuralFeature(
+            this.file.getInt(
+                this.record(object) + Integer.BYTES + Long.BYTES
+            )
+        );
+    }
+
+    @Override
+    public Object set(final InternalEObject object,
+        final EStructuralFeature feature, final int index,
+        final Object value) {
+        throw new UnsupportedOperationException(PagedStore.READ_ONLY);
+    }
+
+    @Override
+    public void unset(final InternalEObject object,
+        final EStructuralFeature feature) {
+        throw new UnsupportedOperationException(PagedStore.READ_ONLY);
+    }
+
+    @Override
+    public void add(final InternalEObject object,
+        final EStructuralFeature feature, final int index,
+        final Object value) {
+        throw new UnsupportedOperationException(PagedStore.READ_ONLY);
+    }
+
+    @Override
+    public Object remove(final InternalEObject object,
+        final EStructuralFeature feature, final int index) {
+        throw new UnsupportedOperationException(PagedStore.READ_ONLY);
+    }
+
+    @Override
+    public Object move(final InternalEObject object,
+        final EStructuralFeature feature, final int target,
+        final int source) {
+        throw new UnsupportedOperationException(PagedStore.READ_ONLY);
+    }
+
+    @Override
+    public void clear(final InternalEObject object,
+        final EStructuralFeature feature) {
+        throw new UnsupportedOperationException(PagedStore.READ_ONLY);
+    }
+
+    @Override
+    public EObject create(final EClass eclass) {
+        throw new UnsupportedOperationException(PagedStore.READ_ONLY);
+    }
+
+    /**
+     * Finds an element, creating it if it is not in use.
+     * @param id The element identifier
+     * @return The element
+     */
+    private synchronized PagedEObject element(final long id) {
+        ElementReference reference = (ElementReference) this.collected.poll();
+        while (reference != null) {
+            this.elements.remove(reference.id, reference);
+            reference = (ElementReference) this.collected.poll();
+        }
+        reference = this.elements.get(id);
+        PagedEObject element = null;
+        if (reference != null) {
+            element = reference.get();
+        }
+        if (element == null) {
+            final long record = this.record(id);
+            final ClassLayout layout = this.classes[this.file.getInt(record)];
+            Resource.Internal direct = null;
+            if (this.file.getLong(record + Integer.BYTES) < 0L) {
+                direct = this.resource;
+            }
+            element = new PagedEObject(layout, this, id, direct);
+            this.elements.put(
+                id,
+                new ElementReference(element, this.collected)
+            );
+        }
+        return element;
+    }
+
+    /**
+     * Finds the position of an element's record.
+     * @param object The element
+     * @return The position in the file
+     */
+    private long record(final InternalEObject object) {
+        return this.record(((PagedEObject) object).id);
+    }
+
+    /**
+     * Finds the position of an element's record.
+     * @param id The element identifier
+     * @return The position in the file
+     */
+    private long record(final long id) {
+        return this.file.getLong(
+            this.indexPosition + Long.BYTES + Long.BYTES * id
+        );
+    }
+
+    /**
+     * Finds the position of a feature's value.
+     * @param object The element
+     * @param feature The feature
+     * @return The position in the file, or -1 if the feature is not set or
+     *  not persisted
+     */
+    private long position(final InternalEObject object,
+        final EStructuralFeature feature) {
+        final PagedEObject element = (PagedEObject) object;
+        final int slot = element.layout.slot(element.eClass(), feature);
+        if (slot < 0) {
+            return -1L;
+        }
+        final long record = this.record(element.id);
+        final int offset = this.file.getInt(
+            record + PagedStoreWriter.RECORD_HEADER
+                + (long) Integer.BYTES * slot
+        );
+        if (offset < 0) {
+            return -1L;
+        }
+        return record + offset;
+    }
+
+    /**
+     * Finds the position of an item of a many-valued feature.
+     * @param feature The feature
+     * @param start The position of the first item
+     * @param index The index of the item
+     * @return The position in the file
+     */
+    private long item(final EStructuralFeature feature, final long start,
+        final int index) {
+        if (feature instanceof EReference) {
+            return start + (long) Long.BYTES * index;
+        }
+        long position = start;
+        for (int item = 0; item < index; item += 1) {
+            position += this.file.stringSize(position);
+        }
+        return position;
+    }
+
+    /**
+     * Reads a value of a feature.
+     * @param feature The feature
+     * @param position The position of the value
+     * @return The attribute value or the referenced element
+     */
+    private Object value(final EStructuralFeature feature,
+        final long position) {
+        if (feature instanceof EReference) {
+            final long id = this.file.getLong(position);
+            if (id < 0L) {
+                return null;
+            }
+            return this.element(id);
+        }
+        final String value = this.file.getString(position);
+        if (value == null) {
+            return null;
+        }
+        return EcoreUtil.createFromString(
+            ((EAttribute) feature).getEAttributeType(),
+            value
+        );
+    }
+
+    /**
+     * Finds the value of a container reference.
+     * @param object The element
+     * @param feature The container reference
+     * @return The container, or {@code null} if the element is not
+     *  contained through the opposite of the reference
+     */
+    private InternalEObject container(final InternalEObject object,
+        final EStructuralFeature feature) {
+        final EStructuralFeature containing =
+            this.getContainingFeature(object);
+        if (containing == null
+            || containing != ((EReference) feature).getEOpposite()) {
+            return null;
+        }
+        return this.getContainer(object);
+    }
+
+    /**
+     * Whether a feature is a container reference.
+     * @param feature The feature
+     * @return Whether the feature is the opposite of a containment
+     */
+    private static boolean isContainer(final EStructuralFeature feature) {
+        return feature instanceof EReference
+            && ((EReference) feature).isContainer();
+    }
+
+    /**
+     * Compares two values, by identity for elements.
+     * @param expected The value to look for
+     * @param actual A value of the feature
+     * @return Whether the values are equal
+     */
+    private static boolean equal(final Object expected, final Object actual) {
+        if (expected instanceof EObject) {
+            return expected == actual;
+        }
+        return expected == null ? actual == null : expected.equals(actual);
+    }
+
+    /**
+     * Finds a registered class.
+     * @param registry The package registry
+     * @param uri The nsURI of the class's package
+     * @param name The name of the class
+     * @return The class
+     * @throws IOException If the class is not registered
+     */
+    private static EClass eclass(final EPackage.Registry registry,
+        final String uri, final String name) throws IOException {
+        final EPackage epackage = registry.getEPackage(uri);
+        if (epackage == null) {
+            throw new IOException(
+                String.format("Package %s is not registered", uri)
+            );
+        }
+        final EClassifier classifier = epackage.getEClassifier(name);
+        if (!(classifier instanceof EClass)) {
+            throw new IOException(
+                String.format("Class %s is not defined in %s", name, uri)
+            );
+        }
+        return (EClass) classifier;
+    }
+
+    /**
+     * The persisted features of a class and their slots in its records.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private static final class ClassLayout {
+
+        /**
+         * The class.
+         */
+        private final EClass eclass;
+
+        /**
+         * The slot of each feature, by feature ID, or -1 for features that
+         * are not persisted.
+         */
+        private final int[] slots;
+
+        /**
+         * Default constructor.
+         * @param eclass The class
+         */
+        ClassLayout(final EClass eclass) {
+            this.eclass = eclass;
+            this.slots = new int[eclass.getFeatureCount()];
+            Arrays.fill(this.slots, -1);
+            final List<EStructuralFeature> features =
+                PagedStoreWriter.features(eclass);
+            for (int slot = 0; slot < features.size(); slot += 1) {
+                this.slots[eclass.getFeatureID(features.get(slot))] = slot;
+            }
+        }
+
+        /**
+         * Finds the slot of a feature.
+         * @param owner The class of the element
+         * @param feature The feature
+         * @return The slot, or -1 if the feature is not persisted
+         */
+        int slot(final EClass owner, final EStructuralFeature feature) {
+            final int id = owner.getFeatureID(feature);
+            if (id < 0) {
+                return -1;
+            }
+            return this.slots[id];
+        }
+    }
+
+    /**
+     * An element backed by a paged store.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    static final class PagedEObject extends EStoreEObjectImpl {
+
+        /**
+         * The element identifier.
+         */
+        private final long id;
+
+        /**
+         * The layout of the element's records.
+         */
+        private final ClassLayout layout;
+
+        /**
+         * Default constructor.
+         * @param layout The layout of the element's class
+         * @param store The store
+         * @param id The element identifier
+         * @param resource The resource, for root elements, or {@code null}
+         */
+        PagedEObject(final ClassLayout layout, final PagedStore store,
+            final long id, final Resource.Internal resource) {
+            super(layout.eclass, store);
+            this.id = id;
+            this.layout = layout;
+            if (resource != null) {
+                this.eSetDirectResource(resource);
+            }
+        }
+
+        @Override
+        public InternalEObject eInternalContainer() {
+            return this.eStore().getContainer(this);
+        }
+
+        @Override
+        protected boolean eIsCaching() {
+            // Read every value from the file, so that the heap does not
+            // grow with the values read
+            return false;
+        }
+
+        @Override
+        public int eContainerFeatureID() {
+            final InternalEObject container = this.eInternalContainer();
+            if (container == null) {
+                return 0;
+            }
+            final EReference containing = (EReference)
+                this.eStore().getContainingFeature(this);
+            if (containing.getEOpposite() == null) {
+                return InternalEObject.EOPPOSITE_FEATURE_BASE
+                    - container.eClass().getFeatureID(containing);
+            }
+            return this.eClass().getFeatureID(containing.getEOpposite());
+        }
+    }
+
+    /**
+     * A weak reference to an element, which remembers the element's
+     * identifier once it is collected.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private static final class ElementReference
+        extends WeakReference<PagedEObject> {
+
+        /**
+         * The element identifier.
+         */
+        private final long id;
+
+        /**
+         * Default constructor.
+         * @param element The element
+         * @param queue The queue of collected references
+         */
+        ElementReference(final PagedEObject element,
+            final ReferenceQueue<PagedEObject> queue) {
+            super(element, queue);
+            this.id = element.id;
+        }
+    }
+
+}
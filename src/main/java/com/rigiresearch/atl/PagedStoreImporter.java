@@ -0,0 +1,1391 @@
+package com.rigiresearch.atl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EModelElement;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.ExtendedMetaData;
+import org.eclipse.emf.ecore.util.FeatureMapUtil;
+import org.eclipse.emf.ecore.xmi.XMIResource;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Imports an XMI model into the paged format read by {@link PagedStore},
+ * without loading the model.
+ * <p>
+ * The XMI file is parsed with SAX three times. The first pass collects the
+ * elements that are referenced by non-containment references (as fragment
+ * paths or identifiers). The second pass numbers the elements in
+ * containment pre-order, as {@link PagedStoreWriter} does, finds the classes
+ * and the roots, and maps each referenced element to its identifier. The
+ * third pass writes the records. A record is written when its element ends,
+ * so only the values of the elements on the current containment path are
+ * kept; the position of each record is kept in a memory-mapped index file.
+ * The heap used is then bounded by the depth of the model and the number of
+ * referenced elements, regardless of its size.
+ * <p>
+ * Only the XMI that EMF saves with its default options is supported:
+ * elements named after their features, or after their class at the root;
+ * classes given by xsi:type; and references written as identifiers (XMI
+ * identifiers or ID attributes) or as fragment paths of feature names and
+ * indexes (e.g., {@code //@members.0}), possibly after the name of the file
+ * itself. Anything else is rejected: references to elements in other files,
+ * as in {@link PagedStoreWriter}, fragments with keys or names (e.g.,
+ * {@code @members[name='a']}), feature maps, and packages with extended
+ * metadata, whose XML names may differ from their feature names. DTDs are
+ * rejected as well, and external entities are never resolved.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = "registry")
+final class PagedStoreImporter {
+
+    /**
+     * The namespace of XML Schema instance attributes (e.g., xsi:type).
+     */
+    private static final String XSI_URI =
+        "http://www.w3.org/2001/XMLSchema-instance";
+
+    /**
+     * A segment of a supported fragment path after the root segment.
+     */
+    private static final Pattern SEGMENT =
+        Pattern.compile("@[^./\\[\\]]+(\\.\\d+)?");
+
+    /**
+     * The number of bits of the position within an index segment.
+     */
+    private static final int SEGMENT_BITS = 30;
+
+    /**
+     * The size of each index segment, in bytes.
+     */
+    private static final long SEGMENT_SIZE =
+        1L << PagedStoreImporter.SEGMENT_BITS;
+
+    /**
+     * The mask of the position within an index segment.
+     */
+    private static final long SEGMENT_MASK =
+        PagedStoreImporter.SEGMENT_SIZE - 1L;
+
+    /**
+     * The registry to find the packages of the model in.
+     */
+    private final EPackage.Registry registry;
+
+    /**
+     * The persisted features of each class seen so far.
+     */
+    private final Map<EClass, List<EStructuralFeature>> features;
+
+    /**
+     * The classes seen so far, which are supported.
+     */
+    private final Set<EClass> supported;
+
+    /**
+     * Default constructor.
+     * @param registry The registry to find the packages of the model in
+     */
+    PagedStoreImporter(final EPackage.Registry registry) {
+        this.registry = registry;
+        this.features = new HashMap<>();
+        this.supported = new HashSet<>();
+    }
+
+    /**
+     * Imports an XMI file.
+     * @param source The XMI file
+     * @param target The paged file to write
+     * @throws IOException If the files cannot be read or written, the source
+     *  is not a valid or supported model, or an element references an
+     *  element outside of the model
+     */
+    void convert(final File source, final File target) throws IOException {
+        final Set<String> targets = new HashSet<>();
+        this.parse(source, new Targets(source, targets));
+        final Path roots = Files.createTempFile("roots", ".bin");
+        final Path index = Files.createTempFile("index", ".bin");
+        boolean done = false;
+        try {
+            final Identifiers identifiers;
+            try (DataOutputStream stream = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(roots)))) {
+                identifiers = new Identifiers(source, targets, stream);
+                this.parse(source, identifiers);
+            }
+            try (OutputStream stream = new BufferedOutputStream(
+                Files.newOutputStream(target.toPath()));
+                RandomAccessFile access =
+                    new RandomAccessFile(index.toFile(), "rw");
+                FileChannel channel = access.getChannel()) {
+                final Records records = new Records(
+                    source,
+                    identifiers,
+                    new DataOutputStream(stream),
+                    PagedStoreImporter.map(
+                        channel,
+                        Long.BYTES * identifiers.count()
+                    )
+                );
+                records.header(roots);
+                this.parse(source, records);
+                records.footer(index);
+            }
+            done = true;
+        } finally {
+            Files.deleteIfExists(roots);
+            Files.deleteIfExists(index);
+            if (!done) {
+                // Do not leave a truncated model behind
+                Files.deleteIfExists(target.toPath());
+            }
+        }
+    }
+
+    /**
+     * Parses an XMI file.
+     * @param source The XMI file
+     * @param handler The handler of the pass
+     * @throws IOException If the file cannot be read or is not a valid or
+     *  supported model
+     */
+    private void parse(final File source, final Walker handler)
+        throws IOException {
+        try {
+            PagedStoreImporter.factory().newSAXParser().parse(source, handler);
+        } catch (final ParserConfigurationException exception) {
+            throw new IOException(exception);
+        } catch (final SAXException exception) {
+            throw new IOException(
+                String.format(
+                    "Cannot import %s: %s",
+                    source,
+                    exception.getMessage()
+                ),
+                exception
+            );
+        }
+    }
+
+    /**
+     * Makes sure the elements of a class can be imported.
+     * @param eclass The class
+     * @throws SAXException If the class, its package or one of its features
+     *  has extended metadata, or one of its features is a feature map
+     */
+    private void check(final EClass eclass) throws SAXException {
+        if (this.supported.contains(eclass)) {
+            return;
+        }
+        if (PagedStoreImporter.extended(eclass.getEPackage())
+            || PagedStoreImporter.extended(eclass)) {
+            throw new SAXException(
+                String.format(
+                    "Class '%s' has extended metadata, which is not supported",
+                    eclass.getName()
+                )
+            );
+        }
+        for (final EStructuralFeature feature
+            : eclass.getEAllStructuralFeatures()) {
+            if (FeatureMapUtil.isFeatureMap(feature)
+                || PagedStoreImporter.extended(feature)) {
+                throw new SAXException(
+                    String.format(
+                        "Feature '%s' of class '%s' is a feature map or has"
+                            + " extended metadata, which is not supported",
+                        feature.getName(),
+                        eclass.getName()
+                    )
+                );
+            }
+        }
+        this.supported.add(eclass);
+    }
+
+    /**
+     * The persisted features of a class.
+     * @param eclass The class
+     * @return The features, in the order of {@link PagedStoreWriter}
+     */
+    private List<EStructuralFeature> features(final EClass eclass) {
+        return this.features.computeIfAbsent(
+            eclass,
+            PagedStoreWriter::features
+        );
+    }
+
+    /**
+     * Creates the XML parser factory.
+     * @return A factory that rejects DTDs and does not resolve external
+     *  entities
+     * @throws ParserConfigurationException If a feature is not supported
+     * @throws SAXException If a feature is not supported
+     */
+    private static SAXParserFactory factory()
+        throws ParserConfigurationException, SAXException {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setXIncludeAware(false);
+        factory.setFeature(
+            "http://apache.org/xml/features/disallow-doctype-decl",
+            true
+        );
+        factory.setFeature(
+            "http://xml.org/sax/features/external-general-entities",
+            false
+        );
+        factory.setFeature(
+            "http://xml.org/sax/features/external-parameter-entities",
+            false
+        );
+        factory.setFeature(
+            "http://apache.org/xml/features/nonvalidating/load-external-dtd",
+            false
+        );
+        return factory;
+    }
+
+    /**
+     * Checks whether a model element has extended metadata.
+     * @param element The package, class or feature
+     * @return Whether it has an extended metadata annotation
+     */
+    private static boolean extended(final EModelElement element) {
+        return element.getEAnnotation(ExtendedMetaData.ANNOTATION_URI) != null;
+    }
+
+    /**
+     * Maps a file in segments for writing.
+     * @param channel The channel of the file
+     * @param size The size of the file
+     * @return The mapped segments
+     * @throws IOException If the file cannot be mapped
+     */
+    private static MappedByteBuffer[] map(final FileChannel channel,
+        final long size) throws IOException {
+        final int count = (int) (
+            (size + PagedStoreImporter.SEGMENT_SIZE - 1L)
+                >>> PagedStoreImporter.SEGMENT_BITS
+        );
+        final MappedByteBuffer[] segments = new MappedByteBuffer[count];
+        for (int index = 0; index < count; index += 1) {
+            final long start = (long) index << PagedStoreImporter.SEGMENT_BITS;
+            segments[index] = channel.map(
+                FileChannel.MapMode.READ_WRITE,
+                start,
+                Math.min(PagedStoreImporter.SEGMENT_SIZE, size - start)
+            );
+        }
+        return segments;
+    }
+
+    /**
+     * Normalizes a reference to an element of the model into the key it is
+     * mapped with: an identifier, or a fragment path whose root segment is
+     * always an index.
+     * @param source The XMI file
+     * @param value The reference, as written in the XMI file
+     * @return The key
+     * @throws SAXException If the reference is to another file, or its
+     *  fragment is not supported
+     */
+    private static String key(final File source, final String value)
+        throws SAXException {
+        String fragment = value;
+        final int hash = value.indexOf('#');
+        if (hash >= 0) {
+            final String document = value.substring(0, hash);
+            final URI location = URI.createFileURI(
+                source.toPath().toAbsolutePath().normalize().toString()
+            );
+            // Relative to the file itself (e.g., teams.xmi or ./teams.xmi)
+            if (!document.isEmpty()
+                && !URI.createURI(document).resolve(location)
+                    .equals(location)) {
+                throw new SAXException(
+                    String.format(
+                        "References to elements outside of the model are"
+                            + " not supported: %s",
+                        value
+                    )
+                );
+            }
+            fragment = value.substring(hash + 1);
+        }
+        if (fragment.startsWith("/")) {
+            final int end = fragment.indexOf('/', 1);
+            final String root;
+            final String rest;
+            if (end < 0) {
+                root = fragment.substring(1);
+                rest = "";
+            } else {
+                root = fragment.substring(1, end);
+                rest = fragment.substring(end);
+            }
+            if (!PagedStoreImporter.supported(root, rest)) {
+                throw new SAXException(
+                    String.format(
+                        "Fragment '%s' is not supported: only identifiers"
+                            + " and paths of feature names and indexes"
+                            + " (e.g., //@members.0) are",
+                        value
+                    )
+                );
+            }
+            if (root.isEmpty()) {
+                return String.format("/0%s", rest);
+            }
+        }
+        return fragment;
+    }
+
+    /**
+     * Checks whether a fragment path can be imported.
+     * @param root The root segment
+     * @param rest The other segments, each preceded by a slash
+     * @return Whether the root segment is empty or an index, and the other
+     *  segments are feature names, with an index if many-valued
+     */
+    private static boolean supported(final String root, final String rest) {
+        if (!root.chars().allMatch(Character::isDigit)) {
+            return false;
+        }
+        if (rest.isEmpty()) {
+            return true;
+        }
+        for (final String segment : rest.substring(1).split("/", -1)) {
+            if (!PagedStoreImporter.SEGMENT.matcher(segment).matches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An element on the current containment path of a pass.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private static final class Frame {
+
+        /**
+         * The frame of the containing element, or {@code null}.
+         */
+        private final Frame parent;
+
+        /**
+         * The class of the element, or {@code null} if this frame is the
+         * XMI wrapper of the roots or a value of its parent.
+         */
+        private final EClass eclass;
+
+        /**
+         * The containing feature, or the feature of the value.
+         */
+        private final EStructuralFeature feature;
+
+        /**
+         * The identifier of the element.
+         */
+        private final long id;
+
+        /**
+         * The segment of the element in fragment paths.
+         */
+        private final String segment;
+
+        /**
+         * The number of elements contained so far, by feature.
+         */
+        private final Map<EStructuralFeature, Integer> counts;
+
+        /**
+         * The text of a value.
+         */
+        private final StringBuilder text;
+
+        /**
+         * Whether the value is null.
+         */
+        private boolean nil;
+
+        /**
+         * Default constructor.
+         * @param parent The frame of the containing element
+         * @param eclass The class of the element
+         * @param feature The containing feature, or the feature of the value
+         * @param id The identifier of the element
+         * @param segment The segment of the element in fragment paths
+         */
+        Frame(final Frame parent, final EClass eclass,
+            final EStructuralFeature feature, final long id,
+            final String segment) {
+            this.parent = parent;
+            this.eclass = eclass;
+            this.feature = feature;
+            this.id = id;
+            this.segment = segment;
+            this.counts = new HashMap<>();
+            this.text = new StringBuilder();
+        }
+
+        /**
+         * Whether this frame is a model element.
+         * @return Whether it has a class
+         */
+        boolean element() {
+            return this.eclass != null;
+        }
+
+        /**
+         * Whether this frame is a root element.
+         * @return Whether it is an element without a containing element
+         */
+        boolean root() {
+            return this.element()
+                && (this.parent == null || !this.parent.element());
+        }
+
+        /**
+         * Counts an element contained by a feature.
+         * @param contained The containing feature
+         * @return The index of the element in the feature
+         */
+        int count(final EStructuralFeature contained) {
+            return this.counts.merge(contained, 1, Integer::sum) - 1;
+        }
+
+        /**
+         * The fragment path of the element, with an index as root segment.
+         * @return The path
+         */
+        String path() {
+            final Deque<String> segments = new ArrayDeque<>();
+            Frame frame = this;
+            while (!frame.root()) {
+                segments.push(frame.segment);
+                frame = frame.parent;
+            }
+            segments.push(frame.segment);
+            if (segments.size() == 1) {
+                return String.format("/%s", frame.segment);
+            }
+            final StringBuilder path = new StringBuilder("/");
+            path.append(segments.pop()).append('/');
+            path.append(String.join("/", segments));
+            return path.toString();
+        }
+    }
+
+    /**
+     * A pass over the XMI file, which follows the containment path of the
+     * current element and reports elements and values to subclasses.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private abstract class Walker extends DefaultHandler {
+
+        /**
+         * The XMI file.
+         */
+        private final File source;
+
+        /**
+         * The frames of the current containment path, innermost first.
+         */
+        private final Deque<Frame> frames;
+
+        /**
+         * The namespaces of the prefixes in scope, innermost first.
+         */
+        private final Map<String, Deque<String>> prefixes;
+
+        /**
+         * The identifier of the next element.
+         */
+        private long next;
+
+        /**
+         * The number of roots seen so far.
+         */
+        private int roots;
+
+        /**
+         * The depth within an ignored element (e.g., xmi:Extension).
+         */
+        private int ignored;
+
+        /**
+         * Default constructor.
+         * @param source The XMI file
+         */
+        Walker(final File source) {
+            super();
+            this.source = source;
+            this.frames = new ArrayDeque<>();
+            this.prefixes = new HashMap<>();
+        }
+
+        /**
+         * The number of elements seen so far.
+         * @return A number of elements
+         */
+        final long count() {
+            return this.next;
+        }
+
+        @Override
+        public final void startPrefixMapping(final String prefix,
+            final String uri) {
+            this.prefixes.computeIfAbsent(prefix, key -> new ArrayDeque<>())
+                .push(uri);
+        }
+
+        @Override
+        public final void endPrefixMapping(final String prefix) {
+            this.prefixes.get(prefix).pop();
+        }
+
+        @Override
+        public final void startElement(final String uri, final String local,
+            final String name, final Attributes attributes)
+            throws SAXException {
+            if (this.ignored > 0) {
+                this.ignored += 1;
+                return;
+            }
+            final Frame parent = this.frames.peek();
+            if (XMIResource.XMI_URI.equals(uri)) {
+                if (parent == null && XMIResource.XMI_TAG_NAME.equals(local)) {
+                    this.frames.push(new Frame(null, null, null, -1L, ""));
+                } else {
+                    this.ignored = 1;
+                }
+            } else if (parent == null || parent.eclass == null
+                && parent.feature == null) {
+                this.element(
+                    parent,
+                    null,
+                    this.eclass(uri, local, attributes),
+                    attributes
+                );
+            } else if (!parent.element()) {
+                throw new SAXException(
+                    String.format("Unexpected element '%s'", name)
+                );
+            } else {
+                final EStructuralFeature feature =
+                    parent.eclass.getEStructuralFeature(local);
+                if (feature == null) {
+                    throw new SAXException(
+                        String.format(
+                            "Feature '%s' not found in class '%s'",
+                            local,
+                            parent.eclass.getName()
+                        )
+                    );
+                }
+                if (feature instanceof EReference
+                    && ((EReference) feature).isContainment()) {
+                    this.element(
+                        parent,
+                        feature,
+                        this.eclass((EReference) feature, attributes),
+                        attributes
+                    );
+                } else {
+                    final Frame value =
+                        new Frame(parent, null, feature, -1L, "");
+                    value.nil = "true".equals(
+                        attributes.getValue(PagedStoreImporter.XSI_URI, "nil")
+                    );
+                    this.frames.push(value);
+                    final String href = attributes.getValue("href");
+                    if (feature instanceof EReference && href != null) {
+                        this.reference(parent, (EReference) feature, href);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public final void endElement(final String uri, final String local,
+            final String name) throws SAXException {
+            if (this.ignored > 0) {
+                this.ignored -= 1;
+                return;
+            }
+            final Frame frame = this.frames.pop();
+            if (frame.element()) {
+                this.end(frame);
+            } else if (frame.feature instanceof EAttribute) {
+                final String value;
+                if (frame.nil) {
+                    value = null;
+                } else {
+                    value = frame.text.toString();
+                }
+                this.attribute(
+                    frame.parent,
+                    (EAttribute) frame.feature,
+                    value
+                );
+            } else if (frame.feature instanceof EReference) {
+                // References given as text instead of an href
+                for (final String item
+                    : frame.text.toString().trim().split("\\s+")) {
+                    if (!item.isEmpty()) {
+                        this.reference(
+                            frame.parent,
+                            (EReference) frame.feature,
+                            item
+                        );
+                    }
+                }
+            }
+        }
+
+        @Override
+        public final void characters(final char[] chars, final int start,
+            final int length) {
+            final Frame frame = this.frames.peek();
+            if (this.ignored == 0 && frame != null && !frame.element()
+                && frame.feature != null) {
+                frame.text.append(chars, start, length);
+            }
+        }
+
+        /**
+         * Normalizes a reference into the key of the referenced element.
+         * @param value The reference, as written in the XMI file
+         * @return The key
+         * @throws SAXException If the reference is to another file
+         */
+        final String key(final String value) throws SAXException {
+            return PagedStoreImporter.key(this.source, value);
+        }
+
+        /**
+         * The keys an element can be referenced with: its fragment path,
+         * its XMI identifier and the value of its ID attribute, if any.
+         * @param frame The element
+         * @param attributes The XML attributes of the element
+         * @return The keys
+         */
+        final List<String> keys(final Frame frame,
+            final Attributes attributes) {
+            final List<String> keys = new ArrayList<>(3);
+            keys.add(frame.path());
+            final String xmi = attributes.getValue(XMIResource.XMI_URI, "id");
+            if (xmi != null) {
+                keys.add(xmi);
+            }
+            final EAttribute id = frame.eclass.getEIDAttribute();
+            if (id != null && attributes.getValue(id.getName()) != null) {
+                keys.add(attributes.getValue(id.getName()));
+            }
+            return keys;
+        }
+
+        /**
+         * Called when an element starts, before its values.
+         * @param frame The element
+         * @param attributes The XML attributes of the element
+         * @throws SAXException If the element cannot be processed
+         */
+        void started(final Frame frame, final Attributes attributes)
+            throws SAXException {
+            // Nothing to do by default
+        }
+
+        /**
+         * Called for each value of an attribute.
+         * @param frame The element
+         * @param feature The attribute
+         * @param value The value, as written in the XMI file
+         * @throws SAXException If the value cannot be processed
+         */
+        void attribute(final Frame frame, final EAttribute feature,
+            final String value) throws SAXException {
+            // Nothing to do by default
+        }
+
+        /**
+         * Called for each value of a non-containment reference.
+         * @param frame The element
+         * @param feature The reference
+         * @param value The reference, as written in the XMI file
+         * @throws SAXException If the value cannot be processed
+         */
+        void reference(final Frame frame, final EReference feature,
+            final String value) throws SAXException {
+            // Nothing to do by default
+        }
+
+        /**
+         * Called when an element ends, after its values and contents.
+         * @param frame The element
+         * @throws SAXException If the element cannot be processed
+         */
+        void end(final Frame frame) throws SAXException {
+            // Nothing to do by default
+        }
+
+        /**
+         * Starts an element and reports its XML attributes.
+         * @param parent The frame of the containing element, or of the XMI
+         *  wrapper of the roots, or {@code null}
+         * @param feature The containing feature, or {@code null} for roots
+         * @param eclass The class of the element
+         * @param attributes The XML attributes of the element
+         * @throws SAXException If the element cannot be processed
+         */
+        private void element(final Frame parent,
+            final EStructuralFeature feature, final EClass eclass,
+            final Attributes attributes) throws SAXException {
+            final String segment;
+            if (feature == null) {
+                segment = Integer.toString(this.roots);
+                this.roots += 1;
+            } else if (feature.isMany()) {
+                segment = String.format(
+                    "@%s.%d",
+                    feature.getName(),
+                    parent.count(feature)
+                );
+            } else {
+                segment = String.format("@%s", feature.getName());
+            }
+            PagedStoreImporter.this.check(eclass);
+            final Frame frame =
+                new Frame(parent, eclass, feature, this.next, segment);
+            this.next += 1;
+            this.frames.push(frame);
+            this.started(frame, attributes);
+            for (int index = 0; index < attributes.getLength(); index += 1) {
+                final String uri = attributes.getURI(index);
+                if (XMIResource.XMI_URI.equals(uri)
+                    || PagedStoreImporter.XSI_URI.equals(uri)
+                    || attributes.getQName(index).startsWith("xmlns")) {
+                    continue;
+                }
+                this.value(
+                    frame,
+                    attributes.getLocalName(index),
+                    attributes.getValue(index)
+                );
+            }
+        }
+
+        /**
+         * Reports the value of an XML attribute of an element.
+         * @param frame The element
+         * @param name The name of the XML attribute
+         * @param value The value of the XML attribute
+         * @throws SAXException If the value cannot be processed
+         */
+        private void value(final Frame frame, final String name,
+            final String value) throws SAXException {
+            final EStructuralFeature feature =
+                frame.eclass.getEStructuralFeature(name);
+            if (feature == null) {
+                throw new SAXException(
+                    String.format(
+                        "Feature '%s' not found in class '%s'",
+                        name,
+                        frame.eclass.getName()
+                    )
+                );
+            }
+            if (feature instanceof EAttribute) {
+                if (feature.isMany()) {
+                    for (final String item : value.trim().split("\\s+")) {
+                        if (!item.isEmpty()) {
+                            this.attribute(frame, (EAttribute) feature, item);
+                        }
+                    }
+                } else {
+                    this.attribute(frame, (EAttribute) feature, value);
+                }
+            } else if (((EReference) feature).isContainment()) {
+                throw new SAXException(
+                    String.format(
+                        "Containment reference '%s' given by reference is"
+                            + " not supported",
+                        name
+                    )
+                );
+            } else {
+                for (final String item : value.trim().split("\\s+")) {
+                    if (!item.isEmpty()) {
+                        this.reference(frame, (EReference) feature, item);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds the class of a root element.
+         * @param uri The namespace of the XML element
+         * @param local The local name of the XML element
+         * @param attributes The XML attributes of the element
+         * @return The class
+         * @throws SAXException If the class is not found
+         */
+        private EClass eclass(final String uri, final String local,
+            final Attributes attributes) throws SAXException {
+            final String type =
+                attributes.getValue(PagedStoreImporter.XSI_URI, "type");
+            if (type != null) {
+                return this.eclass(type);
+            }
+            return this.eclass(uri, local);
+        }
+
+        /**
+         * Finds the class of a contained element.
+         * @param feature The containing reference
+         * @param attributes The XML attributes of the element
+         * @return The class
+         * @throws SAXException If the class is not found
+         */
+        private EClass eclass(final EReference feature,
+            final Attributes attributes) throws SAXException {
+            final String type =
+                attributes.getValue(PagedStoreImporter.XSI_URI, "type");
+            if (type != null) {
+                return this.eclass(type);
+            }
+            return feature.getEReferenceType();
+        }
+
+        /**
+         * Finds a class by its qualified name (e.g., an xsi:type value).
+         * @param type The qualified name
+         * @return The class
+         * @throws SAXException If the class is not found
+         */
+        private EClass eclass(final String type) throws SAXException {
+            final int colon = type.indexOf(':');
+            final String prefix;
+            if (colon < 0) {
+                prefix = "";
+            } else {
+                prefix = type.substring(0, colon);
+            }
+            final Deque<String> uris = this.prefixes.get(prefix);
+            if (uris == null || uris.isEmpty()) {
+                throw new SAXException(
+                    String.format("Undeclared prefix in type '%s'", type)
+                );
+            }
+            return this.eclass(uris.peek(), type.substring(colon + 1));
+        }
+
+        /**
+         * Finds a class by its package's namespace and its name.
+         * @param uri The namespace
+         * @param name The name
+         * @return The class
+         * @throws SAXException If the class is not found
+         */
+        private EClass eclass(final String uri, final String name)
+            throws SAXException {
+            final EPackage epackage =
+                PagedStoreImporter.this.registry.getEPackage(uri);
+            if (epackage == null) {
+                throw new SAXException(
+                    String.format("Package '%s' is not registered", uri)
+                );
+            }
+            final EClassifier classifier = epackage.getEClassifier(name);
+            if (!(classifier instanceof EClass)) {
+                throw new SAXException(
+                    String.format(
+                        "Class '%s' not found in package '%s'",
+                        name,
+                        uri
+                    )
+                );
+            }
+            return (EClass) classifier;
+        }
+    }
+
+    /**
+     * The first pass, which collects the keys of the referenced elements.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private final class Targets extends Walker {
+
+        /**
+         * The keys of the referenced elements.
+         */
+        private final Set<String> keys;
+
+        /**
+         * Default constructor.
+         * @param source The XMI file
+         * @param keys The keys of the referenced elements, to be filled
+         */
+        Targets(final File source, final Set<String> keys) {
+            super(source);
+            this.keys = keys;
+        }
+
+        @Override
+        void reference(final Frame frame, final EReference feature,
+            final String value) throws SAXException {
+            this.keys.add(this.key(value));
+        }
+    }
+
+    /**
+     * The second pass, which numbers the elements and finds their classes,
+     * the roots and the identifiers of the referenced elements.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private final class Identifiers extends Walker {
+
+        /**
+         * The keys of the referenced elements.
+         */
+        private final Set<String> targets;
+
+        /**
+         * The identifiers of the referenced elements, by key.
+         */
+        private final Map<String, Long> ids;
+
+        /**
+         * The classes of the elements, with their index in the file.
+         */
+        private final Map<EClass, Integer> classes;
+
+        /**
+         * The stream of root identifiers.
+         */
+        private final DataOutputStream output;
+
+        /**
+         * The number of roots.
+         */
+        private int roots;
+
+        /**
+         * Default constructor.
+         * @param source The XMI file
+         * @param targets The keys of the referenced elements
+         * @param roots The stream to write the root identifiers to
+         */
+        Identifiers(final File source, final Set<String> targets,
+            final DataOutputStream roots) {
+            super(source);
+            this.targets = targets;
+            this.ids = new HashMap<>();
+            this.classes = new LinkedHashMap<>();
+            this.output = roots;
+        }
+
+        @Override
+        void started(final Frame frame, final Attributes attributes)
+            throws SAXException {
+            this.classes.putIfAbsent(frame.eclass, this.classes.size());
+            if (frame.root()) {
+                this.roots += 1;
+                try {
+                    this.output.writeLong(frame.id);
+                } catch (final IOException exception) {
+                    throw new SAXException(exception);
+                }
+            }
+            if (!this.targets.isEmpty()) {
+                for (final String key : this.keys(frame, attributes)) {
+                    if (this.targets.contains(key)) {
+                        this.ids.put(key, frame.id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The third pass, which writes the paged file.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private final class Records extends Walker {
+
+        /**
+         * The results of the second pass.
+         */
+        private final Identifiers identifiers;
+
+        /**
+         * The output stream.
+         */
+        private final DataOutputStream stream;
+
+        /**
+         * The mapped segments of the index file.
+         */
+        private final MappedByteBuffer[] index;
+
+        /**
+         * The records of the elements on the current containment path,
+         * innermost first.
+         */
+        private final Deque<Record> records;
+
+        /**
+         * The number of bytes written so far.
+         */
+        private long position;
+
+        /**
+         * Default constructor.
+         * @param source The XMI file
+         * @param identifiers The results of the second pass
+         * @param stream The output stream
+         * @param index The mapped segments of the index file
+         */
+        Records(final File source, final Identifiers identifiers,
+            final DataOutputStream stream, final MappedByteBuffer[] index) {
+            super(source);
+            this.identifiers = identifiers;
+            this.stream = stream;
+            this.index = index;
+            this.records = new ArrayDeque<>();
+        }
+
+        /**
+         * Writes the header.
+         * @param roots The file of root identifiers
+         * @throws IOException If the stream cannot be written
+         */
+        void header(final Path roots) throws IOException {
+            this.writeInt(PagedStoreWriter.MAGIC);
+            this.writeInt(PagedStoreWriter.VERSION);
+            this.writeInt(this.identifiers.classes.size());
+            for (final EClass eclass : this.identifiers.classes.keySet()) {
+                this.writeString(eclass.getEPackage().getNsURI());
+                this.writeString(eclass.getName());
+            }
+            this.writeInt(this.identifiers.roots);
+            this.position += Files.copy(roots, this.stream);
+        }
+
+        /**
+         * Writes the index and its position.
+         * @param file The index file
+         * @throws IOException If the stream cannot be written
+         */
+        void footer(final Path file) throws IOException {
+            for (final MappedByteBuffer segment : this.index) {
+                segment.force();
+            }
+            final long position = this.position;
+            this.writeLong(this.identifiers.count());
+            this.position += Files.copy(file, this.stream);
+            this.writeLong(position);
+            this.stream.flush();
+        }
+
+        @Override
+        void started(final Frame frame, final Attributes attributes)
+            throws SAXException {
+            final Record parent = this.records.peek();
+            final Record record;
+            if (parent == null || frame.root()) {
+                record = new Record(
+                    this.identifiers.classes.get(frame.eclass),
+                    -1L,
+                    -1,
+                    PagedStoreImporter.this.features(frame.eclass)
+                );
+            } else {
+                record = new Record(
+                    this.identifiers.classes.get(frame.eclass),
+                    frame.parent.id,
+                    frame.parent.eclass.getFeatureID(frame.feature),
+                    PagedStoreImporter.this.features(frame.eclass)
+                );
+                parent.reference(frame.feature, frame.id);
+            }
+            this.records.push(record);
+        }
+
+        @Override
+        void attribute(final Frame frame, final EAttribute feature,
+            final String value) throws SAXException {
+            this.records.peek().attribute(feature, value);
+        }
+
+        @Override
+        void reference(final Frame frame, final EReference feature,
+            final String value) throws SAXException {
+            final Long id = this.identifiers.ids.get(this.key(value));
+            if (id == null) {
+                throw new SAXException(
+                    String.format(
+                        "Feature '%s' references an element outside of the"
+                            + " model: %s",
+                        feature.getName(),
+                        value
+                    )
+                );
+            }
+            this.records.peek().reference(feature, id);
+        }
+
+        @Override
+        void end(final Frame frame) throws SAXException {
+            final long offset = Long.BYTES * frame.id;
+            this.index[(int) (offset >>> PagedStoreImporter.SEGMENT_BITS)]
+                .putLong(
+                    (int) (offset & PagedStoreImporter.SEGMENT_MASK),
+                    this.position
+                );
+            try {
+                this.position += this.records.pop().write(this.stream);
+            } catch (final IOException exception) {
+                throw new SAXException(exception);
+            }
+        }
+
+        /**
+         * Writes an int.
+         * @param value The int
+         * @throws IOException If the stream cannot be written
+         */
+        private void writeInt(final int value) throws IOException {
+            this.stream.writeInt(value);
+            this.position += Integer.BYTES;
+        }
+
+        /**
+         * Writes a long.
+         * @param value The long
+         * @throws IOException If the stream cannot be written
+         */
+        private void writeLong(final long value) throws IOException {
+            this.stream.writeLong(value);
+            this.position += Long.BYTES;
+        }
+
+        /**
+         * Writes a string as its length followed by its UTF-8 bytes.
+         * @param value The string
+         * @throws IOException If the stream cannot be written
+         */
+        private void writeString(final String value) throws IOException {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.writeInt(bytes.length);
+            this.stream.write(bytes);
+            this.position += bytes.length;
+        }
+    }
+
+    /**
+     * The record of an element being imported, with the encoded values of
+     * its persisted features.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private static final class Record {
+
+        /**
+         * The index of the element's class.
+         */
+        private final int eclass;
+
+        /**
+         * The identifier of the container, or -1.
+         */
+        private final long container;
+
+        /**
+         * The identifier of the containing feature within the container's
+         * class, or -1.
+         */
+        private final int feature;
+
+        /**
+         * The persisted features of the element's class.
+         */
+        private final List<EStructuralFeature> features;
+
+        /**
+         * The encoded values of each feature, or {@code null} if unset.
+         */
+        private final ByteArrayOutputStream[] values;
+
+        /**
+         * The number of values of each feature.
+         */
+        private final int[] counts;
+
+        /**
+         * Default constructor.
+         * @param eclass The index of the element's class
+         * @param container The identifier of the container, or -1
+         * @param feature The identifier of the containing feature, or -1
+         * @param features The persisted features of the element's class
+         */
+        Record(final int eclass, final long container, final int feature,
+            final List<EStructuralFeature> features) {
+            this.eclass = eclass;
+            this.container = container;
+            this.feature = feature;
+            this.features = features;
+            this.values = new ByteArrayOutputStream[features.size()];
+            this.counts = new int[features.size()];
+        }
+
+        /**
+         * Adds a value of an attribute. Null single values leave the
+         * attribute unset.
+         * @param attribute The attribute
+         * @param value The value, as a string
+         */
+        void attribute(final EAttribute attribute, final String value) {
+            if (value == null && !attribute.isMany()) {
+                return;
+            }
+            final DataOutputStream stream = this.stream(attribute);
+            if (stream == null) {
+                return;
+            }
+            try {
+                if (value == null) {
+                    stream.writeInt(-1);
+                } else {
+                    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    stream.writeInt(bytes.length);
+                    stream.write(bytes);
+                }
+            } catch (final IOException exception) {
+                // Byte array streams do not fail
+                throw new IllegalStateException(exception);
+            }
+        }
+
+        /**
+         * Adds a value of a reference.
+         * @param reference The reference
+         * @param id The identifier of the referenced element
+         */
+        void reference(final EStructuralFeature reference, final long id) {
+            final DataOutputStream stream = this.stream(reference);
+            if (stream == null) {
+                return;
+            }
+            try {
+                stream.writeLong(id);
+            } catch (final IOException exception) {
+                // Byte array streams do not fail
+                throw new IllegalStateException(exception);
+            }
+        }
+
+        /**
+         * Writes the record.
+         * @param stream The output stream
+         * @return The number of bytes written
+         * @throws IOException If the stream cannot be written
+         */
+        int write(final DataOutputStream stream) throws IOException {
+            int offset = PagedStoreWriter.RECORD_HEADER
+                + Integer.BYTES * this.values.length;
+            stream.writeInt(this.eclass);
+            stream.writeLong(this.container);
+            stream.writeInt(this.feature);
+            for (int slot = 0; slot < this.values.length; slot += 1) {
+                if (this.values[slot] == null) {
+                    stream.writeInt(-1);
+                } else {
+                    stream.writeInt(offset);
+                    offset += this.values[slot].size();
+                    if (this.features.get(slot).isMany()) {
+                        offset += Integer.BYTES;
+                    }
+                }
+            }
+            for (int slot = 0; slot < this.values.length; slot += 1) {
+                if (this.values[slot] != null) {
+                    if (this.features.get(slot).isMany()) {
+                        stream.writeInt(this.counts[slot]);
+                    }
+                    this.values[slot].writeTo(stream);
+                }
+            }
+            return offset;
+        }
+
+        /**
+         * The stream to add a value of a feature to. A single-valued
+         * feature keeps its last value only.
+         * @param feature The feature
+         * @return The stream, or {@code null} if the feature is not
+         *  persisted
+         */
+        private DataOutputStream stream(final EStructuralFeature feature) {
+            final int slot = this.features.indexOf(feature);
+            if (slot < 0) {
+                return null;
+            }
+            if (this.values[slot] == null) {
+                this.values[slot] = new ByteArrayOutputStream();
+            } else if (!feature.isMany()) {
+                this.values[slot].reset();
+            }
+            this.counts[slot] += 1;
+            return new DataOutputStream(this.values[slot]);
+        }
+    }
+
+}
@@ -0,0 +1,270 @@
+package com.rigiresearch.atl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.FeatureMapUtil;
+
+/**
+ * Writes a model in the paged format read by {@link PagedStore}.
+ * <p>
+ * The file starts with a header: a magic number, the format version, the
+ * classes of the model's elements (nsURI and name) and the identifiers of
+ * the root elements. Elements are numbered in containment pre-order, and
+ * each one is written as a record: its class, container and containing
+ * feature, the offset of each persisted feature's value within the record,
+ * and the values. Attribute values are written as strings, and references
+ * as element identifiers. An index with the position of each record and,
+ * finally, the position of the index follow the records.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class PagedStoreWriter {
+
+    /**
+     * The first bytes of a paged model file ("XMIP").
+     */
+    static final int MAGIC = 0x584D4950;
+
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The size of a record's class, container and containing feature, in
+     * bytes.
+     */
+    static final int RECORD_HEADER = Integer.BYTES + Long.BYTES
+        + Integer.BYTES;
+
+    /**
+     * The output stream.
+     */
+    private final DataOutputStream stream;
+
+    /**
+     * The number of bytes written so far.
+     */
+    private long position;
+
+    /**
+     * Default constructor.
+     * @param stream The output stream, which is not closed
+     */
+    PagedStoreWriter(final OutputStream stream) {
+        this.stream = new DataOutputStream(stream);
+    }
+
+    /**
+     * Writes the given root elements and their contents.
+     * @param roots The root elements
+     * @throws IOException If the stream cannot be written, or an element
+     *  references an element outside of the model
+     */
+    void write(final Collection<EObject> roots) throws IOException {
+        final Map<EObject, Long> ids = new IdentityHashMap<>();
+        final Map<EClass, Integer> classes = new LinkedHashMap<>();
+        final List<EObject> elements = new ArrayList<>();
+        final TreeIterator<EObject> iterator =
+            EcoreUtil.getAllContents(roots, true);
+        while (iterator.hasNext()) {
+            final EObject element = iterator.next();
+            ids.put(element, (long) elements.size());
+            elements.add(element);
+            classes.putIfAbsent(element.eClass(), classes.size());
+        }
+        this.writeInt(PagedStoreWriter.MAGIC);
+        this.writeInt(PagedStoreWriter.VERSION);
+        this.writeInt(classes.size());
+        for (final EClass eclass : classes.keySet()) {
+            this.writeString(eclass.getEPackage().getNsURI());
+            this.writeString(eclass.getName());
+        }
+        this.writeInt(roots.size());
+        for (final EObject root : roots) {
+            this.writeLong(ids.get(root));
+        }
+        final long[] offsets = new long[elements.size()];
+        for (int index = 0; index < offsets.length; index += 1) {
+            offsets[index] = this.position;
+            final EObject element = elements.get(index);
+            this.record(element, classes.get(element.eClass()), ids);
+        }
+        final long index = this.position;
+        this.writeLong(offsets.length);
+        for (final long offset : offsets) {
+            this.writeLong(offset);
+        }
+        this.writeLong(index);
+        this.stream.flush();
+    }
+
+    /**
+     * The features of a class whose values are written. Derived, transient
+     * and volatile features, feature maps and container references are
+     * left out.
+     * @param eclass The class
+     * @return The persisted features, in the order of the class's features
+     */
+    static List<EStructuralFeature> features(final EClass eclass) {
+        final List<EStructuralFeature> features = new ArrayList<>();
+        for (final EStructuralFeature feature
+            : eclass.getEAllStructuralFeatures()) {
+            if (feature.isDerived() || feature.isTransient()
+                || feature.isVolatile()
+                || FeatureMapUtil.isFeatureMap(feature)
+                || feature instanceof EReference
+                && ((EReference) feature).isContainer()) {
+                continue;
+            }
+            features.add(feature);
+        }
+        return features;
+    }
+
+    /**
+     * Writes the record of an element.
+     * @param element The element
+     * @param eclass The index of the element's class
+     * @param ids The identifier of each element
+     * @throws IOException If the stream cannot be written, or the element
+     *  references an element outside of the model
+     */
+    private void record(final EObject element, final int eclass,
+        final Map<EObject, Long> ids) throws IOException {
+        final List<EStructuralFeature> features =
+            PagedStoreWriter.features(element.eClass());
+        final int start = PagedStoreWriter.RECORD_HEADER
+            + Integer.BYTES * features.size();
+        final int[] slots = new int[features.size()];
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream values = new DataOutputStream(bytes);
+        for (int slot = 0; slot < slots.length; slot += 1) {
+            final EStructuralFeature feature = features.get(slot);
+            if (!element.eIsSet(feature)) {
+                slots[slot] = -1;
+                continue;
+            }
+            slots[slot] = start + values.size();
+            final Object value = element.eGet(feature);
+            if (feature.isMany()) {
+                final List<?> list = (List<?>) value;
+                values.writeInt(list.size());
+                for (final Object item : list) {
+                    PagedStoreWriter.value(values, feature, item, ids);
+                }
+            } else {
+                PagedStoreWriter.value(values, feature, value, ids);
+            }
+        }
+        final EObject container = element.eContainer();
+        this.writeInt(eclass);
+        if (container == null) {
+            this.writeLong(-1L);
+            this.writeInt(-1);
+        } else {
+            this.writeLong(ids.get(container));
+            this.writeInt(
+                container.eClass().getFeatureID(element.eContainingFeature())
+            );
+        }
+        for (final int slot : slots) {
+            this.writeInt(slot);
+        }
+        values.flush();
+        bytes.writeTo(this.stream);
+        this.position += bytes.size();
+    }
+
+    /**
+     * Writes a value of a feature.
+     * @param values The stream of the record's values
+     * @param feature The feature
+     * @param value The value
+     * @param ids The identifier of each element
+     * @throws IOException If the element references an element outside of
+     *  the model
+     */
+    private static void value(final DataOutputStream values,
+        final EStructuralFeature feature, final Object value,
+        final Map<EObject, Long> ids) throws IOException {
+        if (feature instanceof EAttribute) {
+            final String string = EcoreUtil.convertToString(
+                ((EAttribute) feature).getEAttributeType(),
+                value
+            );
+            if (string == null) {
+                values.writeInt(-1);
+            } else {
+                final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                values.writeInt(bytes.length);
+                values.write(bytes);
+            }
+        } else if (value == null) {
+            values.writeLong(-1L);
+        } else {
+            final Long id = ids.get(value);
+            if (id == null) {
+                throw new IOException(
+                    String.format(
+                        "Feature '%s' references an element outside of the"
+                            + " model: %s",
+                        feature.getName(),
+                        EcoreUtil.getURI((EObject) value)
+                    )
+                );
+            }
+            values.writeLong(id);
+        }
+    }
+
+    /**
+     * Writes an int.
+     * @param value The int
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeInt(final int value) throws IOException {
+        this.stream.writeInt(value);
+        this.position += Integer.BYTES;
+    }
+
+    /**
+     * Writes a long.
+     * @param value The long
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeLong(final long value) throws IOException {
+        this.stream.writeLong(value);
+        this.position += Long.BYTES;
+    }
+
+    /**
+     * Writes a string as its length followed by its UTF-8 bytes.
+     * @param value The string
+     * @throws IOException If the stream cannot be written
+     */
+    private void writeString(final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        this.writeInt(bytes.length);
+        this.stream.write(bytes);
+        this.position += bytes.length;
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.rigiresearch.atl;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Value;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.xmi.XMLParserPool;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.eclipse.emf.ecore.xmi.impl.XMLParserPoolImpl;
+
+/**
+ * EMF load and save options for models of a transformation.
+ * <p>
+ * The {@link #DEFAULT} profile uses EMF's defaults. The {@link #LARGE_MODELS}
+ * profile is tuned for inputs with millions of elements: it reuses XML
+ * parsers, resolves IDREFs at the end of the document, attaches elements
+ * once their subtree is complete, keeps intrinsic ID maps, caches XML name
+ * and feature lookups, and uses large I/O buffers. Individual options can be
+ * changed with {@code toBuilder()}.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@Value
+@Builder(toBuilder = true)
+public class PerformanceProfile {
+
+    /**
+     * EMF's default options.
+     */
+    public static final PerformanceProfile DEFAULT =
+        PerformanceProfile.builder().build();
+
+    /**
+     * Options for very large models.
+     */
+    public static final PerformanceProfile LARGE_MODELS =
+        PerformanceProfile.builder()
+            .parserPool(true)
+            .deferredResolution(true)
+            .intrinsicIds(true)
+            .lookupCaches(true)
+            .bufferSize(1 << 20)
+            .flushThreshold(1 << 24)
+            .build();
+
+    /**
+     * The XML parser pool shared by all profiles.
+     */
+    private static final XMLParserPool POOL = new XMLParserPoolImpl();
+
+    /**
+     * Whether to reuse XML parsers across loads.
+     */
+    private final boolean parserPool;
+
+    /**
+     * Whether to resolve IDREFs at the end of the document and attach new
+     * elements once their subtree is complete.
+     */
+    private final boolean deferredResolution;
+
+    /**
+     * Whether to keep a map from intrinsic IDs to elements in each resource.
+     */
+    private final boolean intrinsicIds;
+
+    /**
+     * Whether to cache XML name to feature lookups when loading and feature
+     * lookups when saving.
+     */
+    private final boolean lookupCaches;
+
+    /**
+     * The size of the input buffer when loading and of the binary format's
+     * buffers, in bytes, or zero for EMF's default.
+     */
+    private final int bufferSize;
+
+    /**
+     * The number of characters kept in memory before flushing when saving
+     * XML, or zero for EMF's default.
+     */
+    private final int flushThreshold;
+
+    /**
+     * Creates the options to load resources with. The options hold caches,
+     * so they should not be shared by resource sets used from different
+     * threads.
+     * @return A new map of load options
+     */
+    public Map<Object, Object> loadOptions() {
+        final Map<Object, Object> options = new HashMap<>();
+        if (this.parserPool) {
+            options.put(
+                XMLResource.OPTION_USE_PARSER_POOL,
+                PerformanceProfile.POOL
+            );
+        }
+        if (this.deferredResolution) {
+            options.put(XMLResource.OPTION_DEFER_IDREF_RESOLUTION, true);
+            options.put(XMLResource.OPTION_DEFER_ATTACHMENT, true);
+        }
+        if (this.lookupCaches) {
+            options.put(
+                XMLResource.OPTION_USE_XML_NAME_TO_FEATURE_MAP,
+                new HashMap<>()
+            );
+            options.put(XMLResource.OPTION_USE_DEPRECATED_METHODS, false);
+        }
+        if (this.bufferSize > 0) {
+            options.put(
+                BinaryResourceImpl.OPTION_BUFFER_CAPACITY,
+                this.bufferSize
+            );
+        }
+        return options;
+    }
+
+    /**
+     * Creates the options to save resources with.
+     * @return A new map of save options
+     */
+    public Map<Object, Object> saveOptions() {
+        final Map<Object, Object> options = new HashMap<>();
+        if (this.lookupCaches) {
+            options.put(
+                XMLResource.OPTION_USE_CACHED_LOOKUP_TABLE,
+                new ArrayList<>()
+            );
+            options.put(XMLResource.OPTION_CONFIGURATION_CACHE, true);
+        }
+        if (this.flushThreshold > 0) {
+            options.put(
+                XMLResource.OPTION_FLUSH_THRESHOLD,
+                this.flushThreshold
+            );
+        }
+        if (this.bufferSize > 0) {
+            options.put(
+                BinaryResourceImpl.OPTION_BUFFER_CAPACITY,
+                this.bufferSize
+            );
+        }
+        return options;
+    }
+
+    /**
+     * Loads a resource with this profile. The resource set's load options
+     * are used. If loading fails, the resource is removed from the set.
+     * @param set The resource set
+     * @param uri The resource URI
+     * @return The loaded resource
+     */
+    Resource load(final ResourceSet set, final URI uri) {
+        if (this.equals(PerformanceProfile.DEFAULT)) {
+            boolean loaded = false;
+            try {
+                final Resource resource = set.getResource(uri, true);
+                loaded = true;
+                return resource;
+            } finally {
+                if (!loaded) {
+                    // EMF keeps resources that failed to load in the set
+                    set.getResources().remove(set.getResource(uri, false));
+                }
+            }
+        }
+        try (InputStream stream = new BufferedInputStream(
+            set.getURIConverter().createInputStream(uri),
+            Math.max(this.bufferSize, 1 << 13)
+        )) {
+            return this.load(set, uri, stream);
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Loads a resource from a stream with this profile. The resource set's
+     * load options are used. If loading fails, the resource is removed from
+     * the set.
+     * @param set The resource set
+     * @param uri The resource URI, which gives the format of the stream
+     * @param stream The stream, which is not closed
+     * @return The loaded resource
+     * @throws IOException If the stream cannot be read or parsed
+     */
+    Resource load(final ResourceSet set, final URI uri,
+        final InputStream stream) throws IOException {
+        final Resource resource = set.createResource(uri);
+        if (this.intrinsicIds && resource instanceof ResourceImpl) {
+            ((ResourceImpl) resource).setIntrinsicIDToEObjectMap(
+                new HashMap<>()
+            );
+        }
+        boolean loaded = false;
+        try {
+            resource.load(stream, set.getLoadOptions());
+            loaded = true;
+        } finally {
+            if (!loaded) {
+                set.getResources().remove(resource);
+            }
+        }
+        return resource;
+    }
+
+}
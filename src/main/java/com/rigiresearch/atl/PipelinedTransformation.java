@@ -0,0 +1,292 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AllArgsConstructor;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Runs a prepared transformation on a sequence of input models as a
+ * three-stage pipeline: parse, transform and serialize. Each stage has its
+ * own threads, and stages are connected by bounded queues, so a stage
+ * blocks when the next one falls behind. This way, loading model N+1 and
+ * saving model N-1 overlap with the transformation of model N.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString
+public final class PipelinedTransformation {
+
+    /**
+     * Marks the end of the input models.
+     */
+    private static final Job END = new Job(null, null, null);
+
+    /**
+     * The prepared transformation.
+     */
+    private final PreparedTransformation transformation;
+
+    /**
+     * The name of the input variable in the ATL module (e.g., IN).
+     */
+    private final String input;
+
+    /**
+     * The name of the output variable in the ATL module (e.g., OUT).
+     */
+    private final String output;
+
+    /**
+     * The output file pattern (see {@link BatchTransformation}).
+     */
+    private final String pattern;
+
+    /**
+     * The number of transformation threads. Parsing and serialization use
+     * one thread each.
+     */
+    private final int workers;
+
+    /**
+     * The number of models that can wait between two stages.
+     */
+    private final int capacity;
+
+    /**
+     * Default constructor.
+     * @param transformation The prepared transformation
+     * @param input The name of the input variable in the ATL module
+     * @param output The name of the output variable in the ATL module
+     * @param pattern The output file pattern
+     * @param workers The number of transformation threads
+     * @param capacity The number of models that can wait between two
+     *  stages
+     * @throws IllegalArgumentException If the pattern is not valid (see
+     *  {@link BatchTransformation#valid(String)})
+     */
+    public PipelinedTransformation(
+        final PreparedTransformation transformation, final String input,
+        final String output, final String pattern, final int workers,
+        final int capacity) {
+        this.transformation = transformation;
+        this.input = input;
+        this.output = output;
+        this.pattern = BatchTransformation.checked(pattern);
+        this.workers = workers;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Transforms the given input models and saves the output models.
+     * @param files The input model files
+     * @return The batch result
+     * @throws InterruptedException If interrupted while waiting for the
+     *  stages
+     * @throws IllegalArgumentException If two input models have the same
+     *  output file
+     */
+    public BatchResult run(final List<File> files)
+        throws InterruptedException {
+        final Map<File, File> targets =
+            BatchTransformation.targets(this.pattern, files);
+        final BlockingQueue<Job> parsed =
+            new ArrayBlockingQueue<>(this.capacity);
+        final BlockingQueue<Job> transformed =
+            new ArrayBlockingQueue<>(this.capacity);
+        final List<File> outputs =
+            Collections.synchronizedList(new ArrayList<>(files.size()));
+        final Map<File, Throwable> failures =
+            Collections.synchronizedMap(new LinkedHashMap<>());
+        final AtomicInteger running = new AtomicInteger(this.workers);
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(this.workers + 2);
+        final long start = System.nanoTime();
+        try {
+            executor.execute(() -> this.parse(files, parsed, failures));
+            for (int index = 0; index < this.workers; index += 1) {
+                executor.execute(
+                    () -> this.transform(
+                        parsed,
+                        transformed,
+                        targets,
+                        running,
+                        failures
+                    )
+                );
+            }
+            executor.execute(() -> this.save(transformed, outputs, failures));
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        return new BatchResult(
+            new ArrayList<>(outputs),
+            new LinkedHashMap<>(failures),
+            System.nanoTime() - start
+        );
+    }
+
+    /**
+     * The parse stage: loads each input model in memory. A model that
+     * cannot be loaded is recorded as failed, and the end of the input
+     * models is always forwarded, so that the other stages finish.
+     * @param files The input model files
+     * @param next The queue of the transform stage
+     * @param failures The failed models
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void parse(final List<File> files, final BlockingQueue<Job> next,
+        final Map<File, Throwable> failures) {
+        try {
+            for (final File file : files) {
+                final Resource resource;
+                try {
+                    resource = this.transformation.load(file);
+                } catch (final Throwable exception) {
+                    failures.put(file, exception);
+                    continue;
+                }
+                next.put(new Job(file, resource, null));
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int index = 0; index < this.workers; index += 1) {
+                PipelinedTransformation.end(next);
+            }
+        }
+    }
+
+    /**
+     * The transform stage: runs the transformation on each input model. A
+     * model that cannot be transformed is recorded as failed, and the last
+     * transformation thread to finish always forwards the end of the input
+     * models.
+     * @param previous The queue of parsed models
+     * @param next The queue of the serialize stage
+     * @param targets The output model file of each input model file
+     * @param running The number of transformation threads still running
+     * @param failures The failed models
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void transform(final BlockingQueue<Job> previous,
+        final BlockingQueue<Job> next, final Map<File, File> targets,
+        final AtomicInteger running,
+        final Map<File, Throwable> failures) {
+        try {
+            for (Job job = previous.take(); job != PipelinedTransformation.END;
+                job = previous.take()) {
+                final File target = targets.get(job.file);
+                final Resource resource;
+                try {
+                    resource = ModelFormat.of(target.getName())
+                        .getFactory()
+                        .createResource(
+                            URI.createFileURI(target.getAbsolutePath())
+                        );
+                    final Map<ModelType, List<NamedModel>> models =
+                        AtlTransformation.Builder.emptyModels();
+                    models.get(ModelType.INPUT)
+                        .add(new NamedModel(this.input, job.resource));
+                    models.get(ModelType.OUTPUT)
+                        .add(new NamedModel(this.output, resource));
+                    this.transformation.run(models);
+                } catch (final Throwable exception) {
+                    failures.put(job.file, exception);
+                    continue;
+                }
+                next.put(new Job(job.file, resource, target));
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (running.decrementAndGet() == 0) {
+                PipelinedTransformation.end(next);
+            }
+        }
+    }
+
+    /**
+     * The serialize stage: saves each output model. A model that cannot be
+     * saved is recorded as failed.
+     * @param previous The queue of transformed models
+     * @param outputs The saved output models
+     * @param failures The failed models
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void save(final BlockingQueue<Job> previous,
+        final List<File> outputs, final Map<File, Throwable> failures) {
+        try {
+            for (Job job = previous.take(); job != PipelinedTransformation.END;
+                job = previous.take()) {
+                try {
+                    job.resource.save(this.transformation.saveOptions());
+                    outputs.add(job.target);
+                } catch (final Throwable exception) {
+                    failures.put(job.file, exception);
+                }
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forwards the end of the input models to the next stage. If the
+     * current thread is interrupted, the pipeline is being stopped and the
+     * next stage is interrupted as well, so the end is only offered.
+     * @param next The queue of the next stage
+     */
+    private static void end(final BlockingQueue<Job> next) {
+        try {
+            next.put(PipelinedTransformation.END);
+        } catch (final InterruptedException exception) {
+            next.offer(PipelinedTransformation.END);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A model moving through the pipeline.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @AllArgsConstructor
+    private static final class Job {
+
+        /**
+         * The input model file.
+         */
+        private final File file;
+
+        /**
+         * The input model after parsing, or the output model after
+         * transforming.
+         */
+        private final Resource resource;
+
+        /**
+         * The output model file.
+         */
+        private final File target;
+    }
+
+}
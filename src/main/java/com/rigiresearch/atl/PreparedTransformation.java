@@ -0,0 +1,212 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.m2m.atl.emftvm.Model;
+
+/**
+ * An ATL transformation whose metamodels and module are loaded once and then
+ * reused across runs.
+ * <p>
+ * Instances are thread-safe: each run borrows an execution environment from an
+ * internal pool, creating a new one only if all of them are busy. The pool is
+ * discarded as soon as a metamodel or the compiled module changes on disk.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = "transformation")
+public final class PreparedTransformation {
+
+    /**
+     * The transformation configuration.
+     */
+    private final AtlTransformation transformation;
+
+    /**
+     * Idle execution contexts.
+     */
+    private final Queue<ExecutionContext> contexts;
+
+    /**
+     * The state of the metamodel and module files of the pooled contexts.
+     */
+    private volatile Fingerprint fingerprint;
+
+    /**
+     * Default constructor.
+     * @param transformation The transformation configuration
+     */
+    PreparedTransformation(final AtlTransformation transformation) {
+        this.transformation = transformation;
+        this.contexts = new ConcurrentLinkedQueue<>();
+        final ExecutionContext context = transformation.context();
+        this.fingerprint = context.getFingerprint();
+        this.contexts.add(context);
+    }
+
+    /**
+     * Runs the transformation on the models given to the builder.
+     * @return The output models
+     */
+    public Map<String, Model> run() {
+        return this.run(this.transformation.models());
+    }
+
+    /**
+     * Runs the transformation on the given models.
+     * @param models The input, output and in-out models
+     * @return The output models
+     */
+    public Map<String, Model> run(
+        final Map<ModelType, List<NamedModel>> models) {
+        return this.run(models, null);
+    }
+
+    /**
+     * Runs the transformation on the given models, stopping when the given
+     * monitor is terminated.
+     * @param models The input, output and in-out models
+     * @param monitor The monitor, or {@code null} if the run cannot be
+     *  stopped
+     * @return The output models
+     */
+    Map<String, Model> run(final Map<ModelType, List<NamedModel>> models,
+        final TerminableMonitor monitor) {
+        final ExecutionContext context = this.acquire();
+        boolean failed = true;
+        try {
+            final Map<String, Model> result =
+                this.transformation.run(context, models, monitor);
+            failed = false;
+            return result;
+        } finally {
+            this.release(context, failed);
+        }
+    }
+
+    /**
+     * The models given to the builder.
+     * @return The input, output and in-out models
+     */
+    Map<ModelType, List<NamedModel>> models() {
+        return this.transformation.models();
+    }
+
+    /**
+     * The files a run on the given models depends on.
+     * @param models The input, output and in-out models
+     * @return The metamodel, module, input and in-out model files
+     */
+    List<File> dependencies(final Map<ModelType, List<NamedModel>> models) {
+        return this.transformation.dependencies(models);
+    }
+
+    /**
+     * The files a run on the given models writes.
+     * @param models The input, output and in-out models
+     * @return The output and in-out model files, if outputs are saved
+     */
+    List<File> outputs(final Map<ModelType, List<NamedModel>> models) {
+        return this.transformation.outputs(models);
+    }
+
+    /**
+     * Creates a resource set to load models of this transformation's
+     * metamodels outside of a run.
+     * @return A new resource set
+     */
+    ResourceSet resourceSet() {
+        return this.transformation.resourceSet();
+    }
+
+    /**
+     * Loads a model of this transformation's metamodels outside of a run,
+     * in a new resource set.
+     * @param file The model file
+     * @return The loaded resource
+     */
+    Resource load(final File file) {
+        return this.transformation.profile().load(
+            this.resourceSet(),
+            URI.createFileURI(file.getAbsolutePath())
+        );
+    }
+
+    /**
+     * Loads a model of this transformation's metamodels from a stream
+     * outside of a run, in a new resource set.
+     * @param uri The resource URI, which gives the format of the stream
+     * @param stream The stream, which is not closed
+     * @return The loaded resource
+     * @throws IOException If the stream cannot be read or parsed
+     */
+    Resource load(final URI uri, final InputStream stream)
+        throws IOException {
+        return this.transformation.profile().load(
+            this.resourceSet(),
+            uri,
+            stream
+        );
+    }
+
+    /**
+     * Creates the options to save output models with.
+     * @return A new map of save options
+     */
+    Map<Object, Object> saveOptions() {
+        return this.transformation.profile().saveOptions();
+    }
+
+    /**
+     * Takes an idle context from the pool, or creates a new one.
+     * @return An execution context
+     */
+    private ExecutionContext acquire() {
+        this.refresh();
+        final ExecutionContext context = this.contexts.poll();
+        if (context == null) {
+            return this.transformation.context();
+        }
+        return context;
+    }
+
+    /**
+     * Unregisters the models of a run and returns its context to the pool,
+     * unless the run failed or the context became stale during the run. A
+     * failed run may leave the environment in an unknown state.
+     * @param context The execution context
+     * @param failed Whether the run failed
+     */
+    private void release(final ExecutionContext context,
+        final boolean failed) {
+        context.reset();
+        if (!failed && context.getFingerprint().equals(this.fingerprint)) {
+            this.contexts.offer(context);
+        }
+    }
+
+    /**
+     * Discards the pooled contexts if the metamodel or module files changed.
+     */
+    private synchronized void refresh() {
+        if (!this.fingerprint.update().equals(this.fingerprint)) {
+            this.contexts.clear();
+            this.transformation.reloadMetamodels();
+            // The changed module may import other libraries
+            this.fingerprint = this.transformation.fingerprint();
+        }
+    }
+
+}
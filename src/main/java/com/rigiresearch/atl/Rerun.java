@@ -0,0 +1,65 @@
+package com.rigiresearch.atl;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+
+/**
+ * The outcome of a run triggered by a watching transformation.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@Data
+public final class Rerun {
+
+    /**
+     * The name of the transformation that was run.
+     */
+    private final String name;
+
+    /**
+     * The changed files that triggered the run, or an empty set for the
+     * initial run.
+     */
+    private final Set<Path> changes;
+
+    /**
+     * The time from the first change of the burst to the end of the run, in
+     * nanoseconds. It includes the debounce delay.
+     */
+    private final long latency;
+
+    /**
+     * The time spent running the transformation, in nanoseconds.
+     */
+    private final long duration;
+
+    /**
+     * The error that made the run fail, or {@code null} if it succeeded.
+     */
+    private final Throwable failure;
+
+    /**
+     * Describes the run in one line.
+     * @return A human-readable summary
+     */
+    public String summary() {
+        final StringBuilder builder = new StringBuilder(
+            String.format(
+                "%s: %s in %d ms (latency %d ms, %d changed files)",
+                this.name,
+                this.failure == null ? "ran" : "failed",
+                TimeUnit.NANOSECONDS.toMillis(this.duration),
+                TimeUnit.NANOSECONDS.toMillis(this.latency),
+                this.changes.size()
+            )
+        );
+        if (this.failure != null) {
+            builder.append(": ").append(this.failure);
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.rigiresearch.atl;
+
+/**
+ * A callback notified at the end of each run of a watching transformation.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+public interface RerunListener {
+
+    /**
+     * Receives the outcome of a finished run.
+     * @param rerun The run
+     */
+    void finished(Rerun rerun);
+
+}
@@ -0,0 +1,235 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.ToString;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * An on-disk cache of transformation results, keyed by the hashes of the
+ * module, the metamodels and the input models of a run. When the key of a run
+ * matches an earlier one, the cached output models are returned instead of
+ * executing the module.
+ * <p>
+ * Each entry is stored as {@code <directory>/<key>/<model>}. When the total
+ * size of the entries exceeds the capacity, the least recently used entries
+ * are deleted. Instances are thread-safe, and several processes can share
+ * the same directory. The cache never fails a run: results that cannot be
+ * stored are not cached, and entries that cannot be read are misses.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = {"directory", "capacity", "hits", "misses"})
+public final class ResultCache {
+
+    /**
+     * The prefix of entries that are still being written.
+     */
+    private static final String TEMPORARY = ".tmp-";
+
+    /**
+     * The cache directory.
+     */
+    private final File directory;
+
+    /**
+     * The maximum total size of the entries, in bytes.
+     */
+    private final long capacity;
+
+    /**
+     * The number of runs answered from the cache.
+     */
+    private final AtomicLong hits;
+
+    /**
+     * The number of runs that were not in the cache.
+     */
+    private final AtomicLong misses;
+
+    /**
+     * Default constructor.
+     * @param directory The cache directory
+     * @param capacity The maximum total size of the entries, in bytes
+     */
+    public ResultCache(final File directory, final long capacity) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * The number of runs answered from the cache.
+     * @return A number of runs
+     */
+    public long hits() {
+        return this.hits.get();
+    }
+
+    /**
+     * The number of runs that were not in the cache.
+     * @return A number of runs
+     */
+    public long misses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Finds the entry of a key, and marks it as recently used. The caller
+     * reports whether the entry could be used with {@link #hit()} or
+     * {@link #miss()}, since it can be evicted before it is read.
+     * @param key The key
+     * @return The entry directory, or {@code null} if there is none
+     */
+    File lookup(final String key) {
+        final File entry = new File(this.directory, key);
+        if (entry.isDirectory()) {
+            entry.setLastModified(System.currentTimeMillis());
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Counts a run answered from the cache.
+     */
+    void hit() {
+        this.hits.incrementAndGet();
+    }
+
+    /**
+     * Counts a run that was not in the cache.
+     */
+    void miss() {
+        this.misses.incrementAndGet();
+    }
+
+    /**
+     * Stores the output models of a run, then evicts old entries if the
+     * cache is over capacity. If a model cannot be saved (e.g., a plain
+     * {@code ResourceImpl} output, which does not support saving) or the
+     * directory cannot be written, the result is not cached.
+     * @param key The key
+     * @param outputs The output models, by name
+     * @param options The save options
+     * @return Whether the result was stored
+     */
+    boolean store(final String key, final Map<String, Resource> outputs,
+        final Map<Object, Object> options) {
+        boolean stored = false;
+        try {
+            Files.createDirectories(this.directory.toPath());
+            final Path temporary = Files.createTempDirectory(
+                this.directory.toPath(),
+                ResultCache.TEMPORARY
+            );
+            try {
+                for (final Map.Entry<String, Resource> entry
+                    : outputs.entrySet()) {
+                    try (OutputStream stream = Files.newOutputStream(
+                        temporary.resolve(entry.getKey()))) {
+                        entry.getValue().save(stream, options);
+                    }
+                }
+                Files.move(
+                    temporary,
+                    this.directory.toPath().resolve(key),
+                    StandardCopyOption.ATOMIC_MOVE
+                );
+                stored = true;
+            } catch (final FileAlreadyExistsException
+                | DirectoryNotEmptyException exception) {
+                // Another run stored the same result first
+            } catch (final RuntimeException exception) {
+                // The output cannot be saved; do not cache it
+            } finally {
+                ResultCache.delete(temporary);
+            }
+            this.evict();
+        } catch (final IOException exception) {
+            // Caching is an optimization; the run's outputs are still valid
+        }
+        return stored;
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits its
+     * capacity.
+     * @throws IOException If the entries cannot be listed or deleted
+     */
+    private synchronized void evict() throws IOException {
+        final List<Path> entries;
+        try (Stream<Path> stream = Files.list(this.directory.toPath())) {
+            entries = stream
+                .filter(
+                    path -> !path.getFileName().toString()
+                        .startsWith(ResultCache.TEMPORARY)
+                )
+                .sorted(
+                    Comparator.comparingLong(
+                        path -> path.toFile().lastModified()
+                    )
+                )
+                .collect(Collectors.toCollection(ArrayList::new));
+        }
+        long total = 0L;
+        for (final Path entry : entries) {
+            total += ResultCache.size(entry);
+        }
+        for (int index = 0; total > this.capacity && index < entries.size();
+            index += 1) {
+            final Path entry = entries.get(index);
+            total -= ResultCache.size(entry);
+            ResultCache.delete(entry);
+        }
+    }
+
+    /**
+     * Computes the size of an entry.
+     * @param entry The entry directory
+     * @return The size in bytes
+     * @throws IOException If the entry cannot be listed
+     */
+    private static long size(final Path entry) throws IOException {
+        long size = 0L;
+        try (Stream<Path> files = Files.list(entry)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes an entry, if it exists.
+     * @param entry The entry directory
+     * @throws IOException If the entry cannot be deleted
+     */
+    private static void delete(final Path entry) throws IOException {
+        if (!Files.isDirectory(entry)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(entry)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(entry);
+    }
+
+}
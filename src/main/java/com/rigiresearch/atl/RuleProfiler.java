@@ -0,0 +1,528 @@
+package com.rigiresearch.atl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.m2m.atl.emftvm.CodeBlock;
+import org.eclipse.m2m.atl.emftvm.NamedElement;
+import org.eclipse.m2m.atl.emftvm.util.StackFrame;
+import org.eclipse.m2m.atl.emftvm.util.VMMonitor;
+
+/**
+ * Profiles EMFTVM executions by code block: how many times each rule is
+ * matched and applied, how many times each helper, field initialiser and
+ * binding is evaluated, the time spent in each of them, and the bytes
+ * allocated by each rule. Navigations such as
+ * {@code s.supervisor.affiliation.name} are attributed to the binding or
+ * helper that evaluates them.
+ * <p>
+ * Match attempts are counted from the calls to a rule's matcher code block.
+ * EMFTVM only creates one for rules with a guard (a filter on their input
+ * elements), so rules without a guard have no match row; their
+ * applications are still counted.
+ * <p>
+ * A profiler accumulates the statistics of every run it is attached to, and
+ * can be shared by concurrent runs. Profiling slows down execution, since
+ * the engine notifies it of every call. To keep the overhead low, labels are
+ * computed once per code block, and allocations are only sampled when rule
+ * code blocks are entered and left, not for every helper or binding.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = "entries")
+public final class RuleProfiler implements VMMonitor {
+
+    /**
+     * The statistics of each code block, by label.
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * The statistics of each code block, by code block. Code blocks are
+     * compared by identity.
+     */
+    private final Map<CodeBlock, Entry> blocks;
+
+    /**
+     * The call stacks that start at each code block, by label.
+     */
+    private final Map<String, Node> stacks;
+
+    /**
+     * The code blocks being executed by each thread.
+     */
+    private final ThreadLocal<Deque<Call>> calls;
+
+    /**
+     * Default constructor.
+     */
+    public RuleProfiler() {
+        this.entries = new ConcurrentHashMap<>();
+        this.blocks = new ConcurrentHashMap<>();
+        this.stacks = new ConcurrentHashMap<>();
+        this.calls = ThreadLocal.withInitial(ArrayDeque::new);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return false;
+    }
+
+    @Override
+    public void terminate() {
+        // Profiling never stops a run
+    }
+
+    @Override
+    public void enter(final StackFrame frame) {
+        final Deque<Call> stack = this.calls.get();
+        final Call parent = stack.peek();
+        final Entry entry = this.entry(frame.getCodeBlock());
+        final Node node;
+        if (parent == null) {
+            node = this.stacks.computeIfAbsent(
+                entry.label,
+                key -> new Node(key, null)
+            );
+        } else {
+            node = parent.node.child(entry.label);
+        }
+        final long allocated;
+        if (entry.sampled) {
+            allocated = RunMetrics.allocatedBytes();
+        } else {
+            allocated = 0L;
+        }
+        stack.push(new Call(entry, node, System.nanoTime(), allocated));
+    }
+
+    @Override
+    public void leave(final StackFrame frame) {
+        final Deque<Call> stack = this.calls.get();
+        final Call call = stack.poll();
+        if (call == null) {
+            return;
+        }
+        final long elapsed = System.nanoTime() - call.start;
+        final Entry entry = call.entry;
+        entry.calls.increment();
+        entry.time.add(elapsed);
+        if (entry.sampled) {
+            entry.allocated.add(RunMetrics.allocatedBytes() - call.allocated);
+        }
+        call.node.time.add(elapsed - call.children);
+        final Call parent = stack.peek();
+        if (parent != null) {
+            parent.children += elapsed;
+        }
+    }
+
+    @Override
+    public void step(final StackFrame frame) {
+        // Instructions are not profiled individually
+    }
+
+    @Override
+    public void error(final StackFrame frame, final String msg,
+        final Exception exception) {
+        this.calls.remove();
+    }
+
+    /**
+     * Forgets the calls left open on the current thread by a failed run.
+     */
+    void started() {
+        this.calls.remove();
+    }
+
+    /**
+     * Formats the statistics as a table sorted by cumulative time, with
+     * the most expensive code block first. Each rule has a row for its
+     * matcher (e.g., {@code match Student2StudentSimple}), whose calls are
+     * the match attempts, and one for its applier, whose calls are the
+     * applications. Cumulative times include the code blocks called from
+     * each one. Allocations are only reported for rules, and include the
+     * code blocks they call.
+     * @return A human-readable report
+     */
+    public String report() {
+        final List<Map.Entry<String, Entry>> sorted =
+            new ArrayList<>(this.entries.entrySet());
+        sorted.sort(
+            (first, second) -> Long.compare(
+                second.getValue().time.sum(),
+                first.getValue().time.sum()
+            )
+        );
+        final StringBuilder report = new StringBuilder(
+            String.format(
+                "%-48s %10s %12s %12s%n",
+                "code block",
+                "calls",
+                "time (ms)",
+                "alloc (KiB)"
+            )
+        );
+        for (final Map.Entry<String, Entry> entry : sorted) {
+            final Entry value = entry.getValue();
+            final String allocated;
+            if (value.sampled) {
+                allocated = Long.toString(value.allocated.sum() / 1024L);
+            } else {
+                allocated = "-";
+            }
+            report.append(
+                String.format(
+                    "%-48s %10d %12.3f %12s%n",
+                    entry.getKey(),
+                    value.calls.sum(),
+                    value.time.sum() / 1.0e6,
+                    allocated
+                )
+            );
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes the exclusive time of each call stack in the folded format of
+     * flame graph tools (one {@code frame;frame;frame microseconds} line
+     * per stack).
+     * @param path The output file
+     * @throws IOException If the file cannot be written
+     */
+    public void writeFolded(final Path path) throws IOException {
+        try (Writer writer =
+            Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            final Deque<Node> pending = new ArrayDeque<>(this.stacks.values());
+            while (!pending.isEmpty()) {
+                final Node node = pending.pop();
+                writer.write(
+                    String.format(
+                        "%s %d%n",
+                        node.path(),
+                        TimeUnit.NANOSECONDS.toMicros(node.time.sum())
+                    )
+                );
+                pending.addAll(node.children.values());
+            }
+        }
+    }
+
+    /**
+     * Finds the statistics of a code block, labelling it on first use.
+     * @param block The code block
+     * @return The statistics shared by the code blocks with the same label
+     */
+    private Entry entry(final CodeBlock block) {
+        if (block == null) {
+            return this.entries.computeIfAbsent(
+                RuleProfiler.label(null),
+                key -> new Entry(key, false)
+            );
+        }
+        return this.blocks.computeIfAbsent(
+            block,
+            key -> {
+                final Kind kind = Kind.of(key);
+                return this.entries.computeIfAbsent(
+                    RuleProfiler.label(key),
+                    label -> new Entry(label, kind.rule())
+                );
+            }
+        );
+    }
+
+    /**
+     * Labels a code block with its kind and name (e.g.,
+     * {@code match Student2StudentSimple}).
+     * @param block The code block
+     * @return A label
+     */
+    private static String label(final CodeBlock block) {
+        return String.format(
+            "%s %s",
+            Kind.of(block).name().toLowerCase(Locale.ENGLISH),
+            RuleProfiler.name(block)
+        );
+    }
+
+    /**
+     * Finds the name of the rule, helper or field a code block belongs to.
+     * @param block The code block
+     * @return A name
+     */
+    private static String name(final CodeBlock block) {
+        String name = "?";
+        if (block == null) {
+            return name;
+        }
+        final EObject owner = Kind.of(block).owner(block);
+        if (owner instanceof NamedElement) {
+            name = ((NamedElement) owner).getName();
+        } else if (owner != null) {
+            final EStructuralFeature feature =
+                owner.eClass().getEStructuralFeature("name");
+            if (feature != null) {
+                name = String.valueOf(owner.eGet(feature));
+            }
+        }
+        if (block.getNestedFor() != null) {
+            final String outer = RuleProfiler.name(block.getNestedFor());
+            if (owner == null) {
+                name = outer;
+            } else {
+                name = String.format("%s.%s", outer, name);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * The kinds of code blocks.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private enum Kind {
+        /**
+         * A rule matcher.
+         */
+        MATCH,
+
+        /**
+         * A rule applier.
+         */
+        APPLY,
+
+        /**
+         * A rule's post-apply block.
+         */
+        POST,
+
+        /**
+         * A helper or operation body.
+         */
+        HELPER,
+
+        /**
+         * A field initialiser.
+         */
+        FIELD,
+
+        /**
+         * An input element binding.
+         */
+        BINDING,
+
+        /**
+         * A nested code block (e.g., a lambda).
+         */
+        BLOCK;
+
+        /**
+         * Whether code blocks of this kind belong to a rule.
+         * @return True for matchers, appliers and post-apply blocks
+         */
+        boolean rule() {
+            return this == Kind.MATCH || this == Kind.APPLY
+                || this == Kind.POST;
+        }
+
+        /**
+         * Classifies a code block.
+         * @param block The code block
+         * @return Its kind
+         */
+        static Kind of(final CodeBlock block) {
+            Kind kind = Kind.BLOCK;
+            if (block == null) {
+                return kind;
+            }
+            for (final Kind value : Kind.values()) {
+                if (value.owner(block) != null) {
+                    kind = value;
+                    break;
+                }
+            }
+            return kind;
+        }
+
+        /**
+         * The element a code block belongs to, for this kind.
+         * @param block The code block
+         * @return The rule, operation, field or binding, or {@code null}
+         */
+        EObject owner(final CodeBlock block) {
+            final EObject owner;
+            switch (this) {
+                case MATCH:
+                    owner = block.getMatcherFor();
+                    break;
+                case APPLY:
+                    owner = block.getApplierFor();
+                    break;
+                case POST:
+                    owner = block.getPostApplyFor();
+                    break;
+                case HELPER:
+                    owner = block.getBodyFor();
+                    break;
+                case FIELD:
+                    owner = block.getInitialiserFor();
+                    break;
+                case BINDING:
+                    owner = block.getBindingFor();
+                    break;
+                default:
+                    owner = null;
+                    break;
+            }
+            return owner;
+        }
+    }
+
+    /**
+     * The statistics of a code block.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @RequiredArgsConstructor
+    @ToString(of = "label")
+    private static final class Entry {
+
+        /**
+         * The code block's label.
+         */
+        private final String label;
+
+        /**
+         * Whether allocations are sampled for this code block.
+         */
+        private final boolean sampled;
+
+        /**
+         * The number of calls.
+         */
+        private final LongAdder calls = new LongAdder();
+
+        /**
+         * The cumulative time, in nanoseconds.
+         */
+        private final LongAdder time = new LongAdder();
+
+        /**
+         * The bytes allocated, including by callees, if sampled.
+         */
+        private final LongAdder allocated = new LongAdder();
+    }
+
+    /**
+     * A call stack, as the path of code block labels from its first call.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @RequiredArgsConstructor
+    @ToString(of = "label")
+    private static final class Node {
+
+        /**
+         * The label of the last code block of the stack.
+         */
+        private final String label;
+
+        /**
+         * The stack without its last code block, or {@code null}.
+         */
+        private final Node parent;
+
+        /**
+         * The stacks that extend this one, by label.
+         */
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+
+        /**
+         * The exclusive time of this stack, in nanoseconds.
+         */
+        private final LongAdder time = new LongAdder();
+
+        /**
+         * Finds the stack that extends this one with a code block.
+         * @param next The label of the code block
+         * @return The longer stack
+         */
+        Node child(final String next) {
+            return this.children.computeIfAbsent(
+                next,
+                key -> new Node(key, this)
+            );
+        }
+
+        /**
+         * Formats this stack as flame graph tools expect it.
+         * @return The labels, separated by semicolons, without spaces
+         */
+        String path() {
+            final Deque<String> labels = new ArrayDeque<>();
+            for (Node node = this; node != null; node = node.parent) {
+                labels.push(node.label.replace(' ', '_'));
+            }
+            return String.join(";", labels);
+        }
+    }
+
+    /**
+     * A code block being executed.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @RequiredArgsConstructor
+    private static final class Call {
+
+        /**
+         * The statistics of the code block.
+         */
+        private final Entry entry;
+
+        /**
+         * The call stack, ending with this call.
+         */
+        private final Node node;
+
+        /**
+         * When the call started, in nanoseconds.
+         */
+        private final long start;
+
+        /**
+         * The bytes allocated by the thread when the call started, if
+         * sampled.
+         */
+        private final long allocated;
+
+        /**
+         * The time spent in callees, in nanoseconds.
+         */
+        private long children;
+    }
+
+}
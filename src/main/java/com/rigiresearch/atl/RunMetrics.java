@@ -0,0 +1,164 @@
+package com.rigiresearch.atl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Data;
+import org.eclipse.m2m.atl.emftvm.Model;
+
+/**
+ * Measurements of a single transformation run.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@Data
+public final class RunMetrics {
+
+    /**
+     * The duration of each phase, in nanoseconds. Phases that did not take
+     * place in the run (e.g., loading the metamodels in a warm run) are
+     * absent.
+     */
+    private final Map<Phase, Long> durations;
+
+    /**
+     * Pairs of model name and number of elements, after the run.
+     */
+    private final Map<String, Integer> elements;
+
+    /**
+     * The bytes allocated during the run by the calling thread and by the
+     * loader threads that loaded its models, or -1 if the JVM cannot measure
+     * it.
+     */
+    private final long allocated;
+
+    /**
+     * The timing report of the EMFTVM engine.
+     */
+    private final String engine;
+
+    /**
+     * Exports these metrics as a JSON object.
+     * @return A JSON-formatted string
+     */
+    public String toJson() {
+        final StringBuilder json = new StringBuilder("{\"durations\":{");
+        RunMetrics.append(json, this.durations);
+        json.append("},\"elements\":{");
+        RunMetrics.append(json, this.elements);
+        return json.append("},\"allocated\":")
+            .append(this.allocated)
+            .append(",\"engine\":")
+            .append(RunMetrics.quote(this.engine))
+            .append('}')
+            .toString();
+    }
+
+    /**
+     * Counts the elements of the given models.
+     * @param models The models
+     * @return Pairs of model name and number of elements
+     */
+    static Map<String, Integer> count(final Map<String, Model> models) {
+        final Map<String, Integer> counts = new TreeMap<>();
+        for (final Map.Entry<String, Model> entry : models.entrySet()) {
+            int count = 0;
+            final Iterator<?> iterator =
+                entry.getValue().getResource().getAllContents();
+            while (iterator.hasNext()) {
+                iterator.next();
+                count += 1;
+            }
+            counts.put(entry.getKey(), count);
+        }
+        return counts;
+    }
+
+    /**
+     * The bytes allocated so far by the calling thread.
+     * @return A number of bytes, or -1 if the JVM cannot measure it
+     */
+    static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long bytes = -1L;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            bytes = ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends the entries of a map as JSON members.
+     * @param json The JSON string being built
+     * @param map The map
+     */
+    private static void append(final StringBuilder json,
+        final Map<?, ? extends Number> map) {
+        String separator = "";
+        for (final Map.Entry<?, ? extends Number> entry : map.entrySet()) {
+            json.append(separator)
+                .append(RunMetrics.quote(entry.getKey().toString()))
+                .append(':')
+                .append(entry.getValue());
+            separator = ",";
+        }
+    }
+
+    /**
+     * Quotes and escapes a JSON string.
+     * @param value The string value
+     * @return The JSON string
+     */
+    static String quote(final String value) {
+        final StringBuilder quoted = new StringBuilder("\"");
+        for (final char character : value.toCharArray()) {
+            if (character == '"' || character == '\\') {
+                quoted.append('\\').append(character);
+            } else if (character < ' ') {
+                quoted.append(String.format("\\u%04x", (int) character));
+            } else {
+                quoted.append(character);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Phases of a transformation run.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    public enum Phase {
+        /**
+         * Loading and registering the metamodels.
+         */
+        METAMODEL_LOAD,
+
+        /**
+         * Loading the transformation module.
+         */
+        MODULE_LOAD,
+
+        /**
+         * Loading the input and in-out models.
+         */
+        MODEL_LOAD,
+
+        /**
+         * Matching and applying the transformation rules.
+         */
+        EXECUTION,
+
+        /**
+         * Saving the output and in-out models.
+         */
+        SAVE
+    }
+
+}
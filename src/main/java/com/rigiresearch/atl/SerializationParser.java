@@ -1,14 +1,22 @@
 package com.rigiresearch.atl;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -17,16 +25,17 @@ import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.resource.Resource;
-import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.resource.URIConverter;
-import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
-import org.eclipse.emf.ecore.xmi.XMIResource;
-import org.eclipse.emf.ecore.xmi.impl.XMIResourceFactoryImpl;
-import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
 
 /**
  * An parser to serialize and deserialize Ecore models.
  * Users of this class must register the model first (see static block).
+ * <p>
+ * Besides the String-based methods, this parser streams models from and to
+ * files, streams and channels without building intermediate Strings, so
+ * large models only take the memory of their objects. Files are read and
+ * written in the format given by their extension (see {@link ModelFormat});
+ * streams and channels use the format given to the constructor.
  * @author Miguel Jimenez (miguel@uvic.ca)
  * @version $Id$
  * @since 0.1.0
@@ -37,16 +46,54 @@ public final class SerializationParser {
         EcorePackage.eINSTANCE.eClass();
     }
 
+    /**
+     * The size of the I/O buffers.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
     /**
      * A params map.
      */
     private final Map<?, ?> params;
 
+    /**
+     * The format of streams and channels.
+     */
+    private final ModelFormat format;
+
+    /**
+     * Whether loaded models are compacted for read-only use.
+     */
+    private final boolean compact;
+
     /**
      * Default constructor.
      */
     public SerializationParser() {
+        this(ModelFormat.XMI);
+    }
+
+    /**
+     * Secondary constructor.
+     * @param format The format of streams and channels
+     */
+    public SerializationParser(final ModelFormat format) {
+        this(format, false);
+    }
+
+    /**
+     * Secondary constructor.
+     * @param format The format of streams and channels
+     * @param compact Whether loaded models use less memory. Equal string
+     *  values are shared within each model, the lists of many-valued
+     *  features are trimmed and notifications are turned off, so the loaded
+     *  objects must not be modified
+     */
+    public SerializationParser(final ModelFormat format,
+        final boolean compact) {
         this.params = Collections.EMPTY_MAP;
+        this.format = format;
+        this.compact = compact;
     }
 
     /**
@@ -70,24 +117,83 @@ public final class SerializationParser {
      * @throws IOException @see Resource#save(OutputStream, Map)
      */
     public String asXml(final List<EObject> eobjects) throws IOException {
-        final ResourceSet set = new ResourceSetImpl();
         final ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        set.getResourceFactoryRegistry()
-            .getExtensionToFactoryMap()
-            .put("xmi", new XMIResourceFactoryImpl());
-        // Since we are creating a String, not actually persisting to a file,
-        // we will use a "dummy" URI to make sure it uses the correct extension
-        final Resource resource = set.createResource(
-            URI.createURI("resource.xmi")
-        );
-        eobjects.stream().forEach(
-            object -> resource.getContents().add(object)
+        this.save(stream, eobjects, ModelFormat.XMI);
+        return stream.toString(StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Serializes the given objects to a stream. The stream is not closed.
+     * @param stream The output stream
+     * @param eobjects The objects to serialize
+     * @throws IOException @see Resource#save(OutputStream, Map)
+     */
+    public void save(final OutputStream stream, final List<EObject> eobjects)
+        throws IOException {
+        this.save(stream, eobjects, this.format);
+    }
+
+    /**
+     * Serializes a resource to a stream, in the resource's own format. The
+     * objects stay in the resource, so it can be saved repeatedly without
+     * moving them. The stream is not closed.
+     * @param stream The output stream
+     * @param resource The resource to serialize
+     * @throws IOException @see Resource#save(OutputStream, Map)
+     */
+    public void save(final OutputStream stream, final Resource resource)
+        throws IOException {
+        resource.save(stream, this.params);
+    }
+
+    /**
+     * Serializes the given objects to a stream in the given format.
+     * @param stream The output stream
+     * @param eobjects The objects to serialize
+     * @param target The format
+     * @throws IOException @see Resource#save(OutputStream, Map)
+     */
+    private void save(final OutputStream stream, final List<EObject> eobjects,
+        final ModelFormat target) throws IOException {
+        // Since we are not actually persisting to a file, we will use a
+        // "dummy" URI to make sure it uses the correct extension
+        final Resource resource = target.getFactory().createResource(
+            URI.createURI(String.format("resource.%s", target.getExtension()))
         );
+        resource.getContents().addAll(eobjects);
         resource.save(stream, this.params);
-        return new String(
-            stream.toByteArray(),
-            StandardCharsets.UTF_8
+    }
+
+    /**
+     * Serializes the given objects to a file.
+     * @param path The output file
+     * @param eobjects The objects to serialize
+     * @throws IOException If something fails while writing the file
+     */
+    public void save(final Path path, final List<EObject> eobjects)
+        throws IOException {
+        try (OutputStream stream = new BufferedOutputStream(
+            Files.newOutputStream(path),
+            SerializationParser.BUFFER_SIZE
+        )) {
+            this.save(stream, eobjects, ModelFormat.of(path.toString()));
+        }
+    }
+
+    /**
+     * Serializes the given objects to a channel. The channel is not closed.
+     * @param channel The output channel
+     * @param eobjects The objects to serialize
+     * @throws IOException If something fails while writing to the channel
+     */
+    public void save(final WritableByteChannel channel,
+        final List<EObject> eobjects) throws IOException {
+        final OutputStream stream = new BufferedOutputStream(
+            Channels.newOutputStream(channel),
+            SerializationParser.BUFFER_SIZE
         );
+        this.save(stream, eobjects);
+        stream.flush();
     }
 
     /**
@@ -97,13 +203,85 @@ public final class SerializationParser {
      * @throws IOException If something fails while loading the file
      */
     public EList<EObject> asEObjects(final File file) throws IOException {
+        return this.asEObjects(file.toPath());
+    }
+
+    /**
+     * Loads an {@link EObject} from the given file.
+     * @param path The file containing the serialized objects
+     * @return The corresponding list of eObjects
+     * @throws IOException If something fails while loading the file
+     */
+    public EList<EObject> asEObjects(final Path path) throws IOException {
+        final Resource resource = ModelFormat.of(path.toString())
+            .getFactory()
+            .createResource(
+                URI.createFileURI(path.toAbsolutePath().toString())
+            );
+        try (InputStream stream = new BufferedInputStream(
+            Files.newInputStream(path),
+            SerializationParser.BUFFER_SIZE
+        )) {
+            resource.load(stream, this.params);
+        }
+        return this.contents(resource);
+    }
+
+    /**
+     * Loads an {@link EObject} from the given channel. The channel is not
+     * closed.
+     * @param channel The channel containing the serialized objects
+     * @return The corresponding list of eObjects
+     * @throws IOException If something fails while reading the channel
+     */
+    public EList<EObject> asEObjects(final ReadableByteChannel channel)
+        throws IOException {
         return this.asEObjects(
-            Files.readAllLines(Paths.get(file.toURI()))
-                .stream()
-                .collect(Collectors.joining("\n"))
+            new BufferedInputStream(
+                Channels.newInputStream(channel),
+                SerializationParser.BUFFER_SIZE
+            )
         );
     }
 
+    /**
+     * Loads an {@link EObject} from the given stream. The stream is not
+     * closed.
+     * @param stream The stream containing the serialized objects
+     * @return The corresponding list of eObjects
+     * @throws IOException If something fails while reading the stream
+     */
+    public EList<EObject> asEObjects(final InputStream stream)
+        throws IOException {
+        return this.asEObjects(stream, this.format);
+    }
+
+    /**
+     * Loads an {@link EObject} from the given stream in the given format.
+     * @param stream The stream containing the serialized objects
+     * @param source The format
+     * @return The corresponding list of eObjects
+     * @throws IOException If something fails while reading the stream
+     */
+    private EList<EObject> asEObjects(final InputStream stream,
+        final ModelFormat source) throws IOException {
+        final Resource resource = source.getFactory().createResource(null);
+        resource.load(stream, this.params);
+        return this.contents(resource);
+    }
+
+    /**
+     * The contents of a loaded resource, compacted if required.
+     * @param resource The loaded resource
+     * @return The corresponding list of eObjects
+     */
+    private EList<EObject> contents(final Resource resource) {
+        if (this.compact) {
+            ModelCompaction.compact(resource, new HashMap<>());
+        }
+        return resource.getContents();
+    }
+
     /**
      * Loads an {@link EObject} from the given XML representation.
      * @param xml The  XML-formatted string
@@ -112,11 +290,10 @@ public final class SerializationParser {
      */
     public EList<EObject> asEObjects(final String xml)
         throws IOException {
-        final XMIResource resource = new XMIResourceImpl();
-        final URIConverter.ReadableInputStream stream =
-            new URIConverter.ReadableInputStream(new StringReader(xml));
-        resource.load(stream, this.params);
-        return resource.getContents();
+        return this.asEObjects(
+            new URIConverter.ReadableInputStream(new StringReader(xml)),
+            ModelFormat.XMI
+        );
     }
 
 }
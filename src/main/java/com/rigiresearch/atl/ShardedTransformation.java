@@ -0,0 +1,298 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+
+/**
+ * Runs a prepared transformation on a single, very large input model by
+ * splitting its root elements into shards that are transformed in parallel,
+ * each by its own execution environment. The outputs of the shards are then
+ * merged in the order of the input roots, so the result does not depend on
+ * scheduling.
+ * <p>
+ * This is only correct for modules in which each rule application depends
+ * on the containment subtree of its own root (e.g., Composed2Simple): rules
+ * cannot match elements, or resolve target elements, of other shards.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@RequiredArgsConstructor
+@ToString
+public final class ShardedTransformation {
+
+    /**
+     * A rough estimate of the heap used by an input element and the output
+     * elements created from it, in bytes.
+     */
+    private static final long ELEMENT_BYTES = 1024L;
+
+    /**
+     * The prepared transformation.
+     */
+    private final PreparedTransformation transformation;
+
+    /**
+     * The name of the input variable in the ATL module (e.g., IN).
+     */
+    private final String input;
+
+    /**
+     * The name of the output variable in the ATL module (e.g., OUT).
+     */
+    private final String output;
+
+    /**
+     * The number of root elements per shard.
+     */
+    private final int roots;
+
+    /**
+     * The number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * The heap that shards being transformed may use at the same time, in
+     * bytes, or zero for no limit. A shard counts against the budget until
+     * its output has been merged or written, and shards are not started
+     * while the budget is exhausted.
+     */
+    private final long budget;
+
+    /**
+     * Loads an input model, transforms it and saves the output model.
+     * @param source The input model file
+     * @param target The output model file
+     * @throws IOException If the output model cannot be saved
+     * @throws InterruptedException If interrupted while waiting for the
+     *  workers
+     */
+    public void run(final File source, final File target)
+        throws IOException, InterruptedException {
+        final Resource resource = this.transformation.load(source);
+        final Resource result = resource.getResourceSet().createResource(
+            URI.createFileURI(target.getAbsolutePath())
+        );
+        this.run(resource, result);
+        result.save(this.transformation.saveOptions());
+    }
+
+    /**
+     * Loads an input model, transforms it and writes the output model as
+     * each shard completes, so that at most the shards allowed by the memory
+     * budget are held in memory. The output roots cannot reference elements
+     * outside of their own subtree.
+     * @param source The input model file
+     * @param target The output model file, in XMI format
+     * @throws IOException If the output model cannot be written
+     * @throws InterruptedException If interrupted while waiting for the
+     *  workers
+     */
+    public void stream(final File source, final File target)
+        throws IOException, InterruptedException {
+        final Resource resource = this.transformation.load(source);
+        try (StreamingOutputWriter writer = new StreamingOutputWriter(
+            target,
+            this.transformation.saveOptions()
+        )) {
+            boolean done = false;
+            try {
+                this.run(
+                    resource,
+                    shard -> {
+                        try {
+                            writer.drain(shard);
+                        } catch (final IOException exception) {
+                            throw new UncheckedIOException(exception);
+                        }
+                    }
+                );
+                done = true;
+            } catch (final UncheckedIOException exception) {
+                throw exception.getCause();
+            } finally {
+                if (!done) {
+                    // Do not leave a truncated, but well-formed, output
+                    writer.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms an input model into an output model. The roots of the input
+     * model are moved to the shards during the run and moved back afterwards.
+     * @param source The input model
+     * @param target The resource to add the output roots to
+     * @throws InterruptedException If interrupted while waiting for the
+     *  workers
+     */
+    public void run(final Resource source, final Resource target)
+        throws InterruptedException {
+        this.run(
+            source,
+            shard -> {
+                final List<EObject> roots =
+                    new ArrayList<>(shard.getContents());
+                shard.getContents().clear();
+                target.getContents().addAll(roots);
+            }
+        );
+    }
+
+    /**
+     * Transforms an input model, passing the output of each shard to a
+     * consumer in the order of the input roots.
+     * @param source The input model
+     * @param consumer The consumer of output shards
+     * @throws InterruptedException If interrupted while waiting for the
+     *  workers
+     */
+    private void run(final Resource source,
+        final Consumer<Resource> consumer) throws InterruptedException {
+        // Detach the roots at once: moving them one by one to the shards
+        // would remove each from the head of the list, in quadratic time
+        final List<EObject> elements = new ArrayList<>(source.getContents());
+        source.getContents().clear();
+        final int size = Math.max(1, this.roots);
+        final int count = (elements.size() + size - 1) / size;
+        final int capacity = this.capacity();
+        final Semaphore permits = new Semaphore(capacity);
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(this.threads, count))
+        );
+        final Queue<Future<Resource>> pending = new ArrayDeque<>();
+        final Queue<Integer> weights = new ArrayDeque<>();
+        final List<Resource> shards = new ArrayList<>(count);
+        try {
+            for (int index = 0; index < count; index += 1) {
+                final Resource shard = new XMIResourceImpl(
+                    URI.createURI(String.format("shard:/%d.xmi", index))
+                );
+                shards.add(shard);
+                shard.getContents().addAll(
+                    elements.subList(
+                        index * size,
+                        Math.min(elements.size(), (index + 1) * size)
+                    )
+                );
+                final int weight = (int) Math.min(
+                    ShardedTransformation.elements(shard),
+                    capacity
+                );
+                // A shard's memory is only released once its output has
+                // been consumed, so consume in order until it fits
+                while (!permits.tryAcquire(weight)) {
+                    consumer.accept(pending.remove().get());
+                    permits.release(weights.remove());
+                }
+                pending.add(executor.submit(() -> this.transform(shard)));
+                weights.add(weight);
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(pending.remove().get());
+                permits.release(weights.remove());
+            }
+        } catch (final ExecutionException exception) {
+            throw new IllegalStateException(exception.getCause());
+        } finally {
+            // Shards still running ignore interrupts, and they use the
+            // roots being restored, so wait for them to finish
+            executor.shutdownNow();
+            ShardedTransformation.await(executor);
+            for (final Resource shard : shards) {
+                shard.getContents().clear();
+            }
+            source.getContents().addAll(elements);
+        }
+    }
+
+    /**
+     * Waits for the workers to finish, even if the current thread is
+     * interrupted.
+     * @param executor The stopped workers
+     */
+    private static void await(final ExecutorService executor) {
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Transforms one shard.
+     * @param shard The input shard
+     * @return The output shard
+     */
+    private Resource transform(final Resource shard) {
+        final Map<ModelType, List<NamedModel>> models =
+            AtlTransformation.Builder.emptyModels();
+        final Resource result = new XMIResourceImpl();
+        models.get(ModelType.INPUT).add(new NamedModel(this.input, shard));
+        models.get(ModelType.OUTPUT).add(new NamedModel(this.output, result));
+        this.transformation.run(models);
+        return result;
+    }
+
+    /**
+     * The number of elements that fit in the memory budget.
+     * @return A number of elements
+     */
+    private int capacity() {
+        if (this.budget <= 0L) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.max(
+            1L,
+            Math.min(
+                Integer.MAX_VALUE,
+                this.budget / ShardedTransformation.ELEMENT_BYTES
+            )
+        );
+    }
+
+    /**
+     * Counts the elements of a resource.
+     * @param resource The resource
+     * @return The number of elements
+     */
+    private static long elements(final Resource resource) {
+        long count = 0L;
+        for (final Iterator<EObject> iterator = resource.getAllContents();
+            iterator.hasNext(); iterator.next()) {
+            count += 1L;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,414 @@
+package com.rigiresearch.atl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMIResource;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+
+/**
+ * Writes an XMI model incrementally, one root element at a time, so that
+ * written elements can be released while the rest of the model is still
+ * being created. The file is only complete once the writer is closed. If
+ * writing fails, or the writer is aborted, closing it deletes the file
+ * instead, so that a truncated model is never left behind.
+ * <p>
+ * Each root is serialized on its own, so roots cannot reference elements
+ * outside of their containment subtree. The elements referenced within a
+ * subtree are given XMI identifiers, since fragment paths would be relative
+ * to a single-root document. The namespaces of the first roots written are
+ * declared once, on the XMI element.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = "file")
+public final class StreamingOutputWriter implements Closeable {
+
+    /**
+     * The beginning of the file, up to the namespace declarations.
+     */
+    private static final String HEADER =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<xmi:XMI";
+
+    /**
+     * The declarations of the XMI element.
+     */
+    private static final List<String> DECLARATIONS = Arrays.asList(
+        String.format("xmi:version=\"%s\"", XMIResource.VERSION_VALUE),
+        String.format("xmlns:xmi=\"%s\"", XMIResource.XMI_URI),
+        String.format("xmlns:xsi=\"%s\"", XMLResource.XSI_URI)
+    );
+
+    /**
+     * The attributes of a start tag.
+     */
+    private static final Pattern ATTRIBUTE =
+        Pattern.compile("\\s+([^\\s=]+)=\"([^\"]*)\"");
+
+    /**
+     * The end of the file.
+     */
+    private static final String FOOTER = "</xmi:XMI>\n";
+
+    /**
+     * The output file.
+     */
+    private final File file;
+
+    /**
+     * The output stream.
+     */
+    private final OutputStream stream;
+
+    /**
+     * The options to serialize each root with.
+     */
+    private final Map<Object, Object> options;
+
+    /**
+     * The declarations of the XMI element, which the roots do not repeat.
+     */
+    private final Set<String> declared;
+
+    /**
+     * The number of roots written so far.
+     */
+    private long written;
+
+    /**
+     * Whether the beginning of the file was written.
+     */
+    private boolean started;
+
+    /**
+     * Whether writing failed or was aborted.
+     */
+    private boolean failed;
+
+    /**
+     * Default constructor.
+     * @param file The output file, in XMI format
+     * @param options The save options
+     * @throws IOException If the file cannot be created
+     */
+    public StreamingOutputWriter(final File file,
+        final Map<Object, Object> options) throws IOException {
+        if (ModelFormat.of(file.getName()) != ModelFormat.XMI) {
+            throw new IllegalArgumentException(
+                String.format("Only XMI outputs can be streamed: %s", file)
+            );
+        }
+        this.file = file;
+        this.options = new HashMap<>(options);
+        this.options.put(XMLResource.OPTION_DECLARE_XML, false);
+        this.options.put(XMLResource.OPTION_ENCODING, "UTF-8");
+        this.declared = new LinkedHashSet<>(
+            StreamingOutputWriter.DECLARATIONS
+        );
+        this.stream = new BufferedOutputStream(
+            Files.newOutputStream(file.toPath()),
+            1 << 16
+        );
+    }
+
+    /**
+     * Writes the roots of a resource, leaving it empty.
+     * @param resource The resource
+     * @throws IOException If the roots cannot be written
+     */
+    public void drain(final Resource resource) throws IOException {
+        final List<EObject> roots = new ArrayList<>(resource.getContents());
+        // Detach the roots at once: moving them one by one would remove
+        // each from the head of the list, in quadratic time
+        resource.getContents().clear();
+        this.write(roots);
+    }
+
+    /**
+     * Writes root elements. The elements are detached from their resource.
+     * All of them are checked before any is written.
+     * @param roots The root elements
+     * @throws IOException If the roots cannot be written
+     */
+    public void write(final Collection<EObject> roots) throws IOException {
+        boolean done = false;
+        try {
+            for (final EObject root : roots) {
+                StreamingOutputWriter.check(root);
+            }
+            this.start(roots);
+            final XMLResource resource = new XMIResourceImpl(
+                URI.createFileURI(this.file.getAbsolutePath())
+            );
+            for (final EObject root : roots) {
+                resource.getContents().add(root);
+                StreamingOutputWriter.identify(resource, root);
+                resource.save(
+                    new StartTag(this.stream, this.declared),
+                    this.options
+                );
+                this.stream.write('\n');
+                resource.getContents().clear();
+                resource.getEObjectToIDMap().clear();
+                resource.getIDToEObjectMap().clear();
+                this.written += 1L;
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                this.failed = true;
+            }
+        }
+    }
+
+    /**
+     * Marks the output as incomplete, so that closing the writer deletes
+     * the file instead of completing it.
+     */
+    public void abort() {
+        this.failed = true;
+    }
+
+    /**
+     * The number of roots written so far.
+     * @return A number of root elements
+     */
+    public long written() {
+        return this.written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.failed) {
+            try {
+                this.stream.close();
+            } finally {
+                Files.deleteIfExists(this.file.toPath());
+            }
+            return;
+        }
+        try {
+            this.start(Collections.emptyList());
+            this.stream.write(
+                StreamingOutputWriter.FOOTER.getBytes(StandardCharsets.UTF_8)
+            );
+        } finally {
+            this.stream.close();
+        }
+    }
+
+    /**
+     * Writes the beginning of the file, unless it was already written,
+     * declaring the namespaces of the given roots.
+     * @param roots The first root elements
+     * @throws IOException If the beginning cannot be written
+     */
+    private void start(final Collection<EObject> roots) throws IOException {
+        if (this.started) {
+            return;
+        }
+        final Map<String, String> namespaces = new LinkedHashMap<>();
+        final Iterator<EObject> iterator = EcoreUtil.getAllContents(roots);
+        while (iterator.hasNext()) {
+            final EPackage epackage = iterator.next().eClass().getEPackage();
+            final String prefix = epackage.getNsPrefix();
+            // Reserved or missing prefixes are left to each root
+            if (prefix != null && !prefix.isEmpty()
+                && !prefix.startsWith("xml") && !"xmi".equals(prefix)
+                && !"xsi".equals(prefix)) {
+                namespaces.putIfAbsent(prefix, epackage.getNsURI());
+            }
+        }
+        for (final Map.Entry<String, String> entry : namespaces.entrySet()) {
+            this.declared.add(
+                String.format(
+                    "xmlns:%s=\"%s\"",
+                    entry.getKey(),
+                    entry.getValue()
+                )
+            );
+        }
+        final StringBuilder header =
+            new StringBuilder(StreamingOutputWriter.HEADER);
+        for (final String declaration : this.declared) {
+            header.append(' ').append(declaration);
+        }
+        header.append(">\n");
+        this.stream.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        this.started = true;
+    }
+
+    /**
+     * Gives an XMI identifier to the elements referenced within a root's
+     * subtree, so that references resolve to them once the root is written
+     * next to other roots.
+     * @param resource The resource that contains the root
+     * @param root The root element
+     */
+    private static void identify(final XMLResource resource,
+        final EObject root) {
+        final Iterator<EObject> iterator = EcoreUtil.getAllContents(
+            Collections.singleton(root)
+        );
+        while (iterator.hasNext()) {
+            for (final EObject target : iterator.next().eCrossReferences()) {
+                if (resource.getID(target) == null) {
+                    resource.setID(target, EcoreUtil.generateUUID());
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure a root element only references elements of its own
+     * subtree.
+     * @param root The root element
+     */
+    private static void check(final EObject root) {
+        final Iterator<EObject> iterator = EcoreUtil.getAllContents(
+            Collections.singleton(root)
+        );
+        while (iterator.hasNext()) {
+            for (final EObject target : iterator.next().eCrossReferences()) {
+                if (!EcoreUtil.isAncestor(root, target)) {
+                    throw new IllegalArgumentException(
+                        String.format(
+                            "%s references an element outside of its subtree",
+                            root
+                        )
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * A stream that removes the declarations of the XMI element from the
+     * start tag of a root, and passes the rest of the root through.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    private static final class StartTag extends FilterOutputStream {
+
+        /**
+         * The start tag, until it is complete.
+         */
+        private final ByteArrayOutputStream tag;
+
+        /**
+         * The declarations to remove.
+         */
+        private final Set<String> declared;
+
+        /**
+         * Whether the current byte is within an attribute value.
+         */
+        private boolean quoted;
+
+        /**
+         * Whether the start tag was written.
+         */
+        private boolean done;
+
+        /**
+         * Default constructor.
+         * @param stream The output stream
+         * @param declared The declarations to remove
+         */
+        StartTag(final OutputStream stream, final Set<String> declared) {
+            super(stream);
+            this.tag = new ByteArrayOutputStream();
+            this.declared = declared;
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            if (this.done) {
+                this.out.write(value);
+                return;
+            }
+            this.tag.write(value);
+            if (value == '"') {
+                this.quoted = !this.quoted;
+            } else if (value == '>' && !this.quoted) {
+                this.out.write(this.strip().getBytes(StandardCharsets.UTF_8));
+                this.done = true;
+            }
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset,
+            final int length) throws IOException {
+            if (this.done) {
+                this.out.write(bytes, offset, length);
+                return;
+            }
+            for (int index = offset; index < offset + length; index += 1) {
+                this.write(bytes[index]);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The underlying stream receives more roots
+            this.flush();
+        }
+
+        /**
+         * Removes the declarations from the start tag.
+         * @return The start tag
+         */
+        private String strip() {
+            final Matcher matcher = StreamingOutputWriter.ATTRIBUTE.matcher(
+                new String(this.tag.toByteArray(), StandardCharsets.UTF_8)
+            );
+            final StringBuffer buffer = new StringBuffer();
+            while (matcher.find()) {
+                final String attribute = String.format(
+                    "%s=\"%s\"",
+                    matcher.group(1),
+                    matcher.group(2)
+                );
+                if (this.declared.contains(attribute)) {
+                    matcher.appendReplacement(buffer, "");
+                } else {
+                    matcher.appendReplacement(
+                        buffer,
+                        Matcher.quoteReplacement(matcher.group())
+                    );
+                }
+            }
+            matcher.appendTail(buffer);
+            return buffer.toString();
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.rigiresearch.atl;
+
+import lombok.Setter;
+import lombok.ToString;
+import org.eclipse.m2m.atl.emftvm.ExecEnv;
+import org.eclipse.m2m.atl.emftvm.util.StackFrame;
+import org.eclipse.m2m.atl.emftvm.util.VMMonitor;
+
+/**
+ * A VM monitor that stops a run when it is terminated, possibly from another
+ * thread. The engine checks it before each instruction. Other events are
+ * forwarded to a delegate monitor, if any (e.g., a {@link RuleProfiler}).
+ * <p>
+ * The engine only runs compiled code while no monitor is installed, so this
+ * monitor is not installed when the run starts: it is attached to the run's
+ * environment, and installed on it once terminated. The engine then picks it
+ * up at its next code block.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = {"terminated", "delegate"})
+final class TerminableMonitor implements VMMonitor {
+
+    /**
+     * Whether the run must stop.
+     */
+    private volatile boolean terminated;
+
+    /**
+     * The monitor to forward events to, or {@code null}.
+     */
+    @Setter
+    private VMMonitor delegate;
+
+    /**
+     * The environment of the run, or {@code null} if it is not running,
+     * guarded by this object.
+     */
+    private ExecEnv environment;
+
+    /**
+     * Attaches this monitor to the environment of a run that is about to
+     * start. It is installed right away if already terminated.
+     * @param env The environment
+     */
+    synchronized void attach(final ExecEnv env) {
+        this.environment = env;
+        if (this.terminated) {
+            env.setMonitor(this);
+        }
+    }
+
+    /**
+     * Detaches this monitor from the environment of a finished run, which
+     * must uninstall it.
+     */
+    synchronized void detach() {
+        this.environment = null;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.terminated
+            || this.delegate != null && this.delegate.isTerminated();
+    }
+
+    @Override
+    public synchronized void terminate() {
+        this.terminated = true;
+        if (this.environment != null) {
+            this.environment.setMonitor(this);
+        }
+    }
+
+    @Override
+    public void enter(final StackFrame frame) {
+        if (this.delegate != null) {
+            this.delegate.enter(frame);
+        }
+    }
+
+    @Override
+    public void leave(final StackFrame frame) {
+        if (this.delegate != null) {
+            this.delegate.leave(frame);
+        }
+    }
+
+    @Override
+    public void step(final StackFrame frame) {
+        if (this.delegate != null) {
+            this.delegate.step(frame);
+        }
+    }
+
+    @Override
+    public void error(final StackFrame frame, final String msg,
+        final Exception exception) {
+        if (this.delegate != null) {
+            this.delegate.error(frame, msg, exception);
+        }
+    }
+
+}
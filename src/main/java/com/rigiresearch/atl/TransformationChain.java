@@ -0,0 +1,485 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.eclipse.m2m.atl.emftvm.EmftvmFactory;
+import org.eclipse.m2m.atl.emftvm.Model;
+
+/**
+ * A sequence of ATL transformations in which the output models of a step are
+ * passed in memory to the following steps, as input or in-out models.
+ * <p>
+ * Models are identified by a name within the chain, and each step binds the
+ * variables of its module to these names. Intermediate models are only saved
+ * if requested with {@link Builder#withSaving(String, String)}. Each model
+ * is created by a single step. The metamodels are shared by all steps, and
+ * each step is prepared once, so a chain can be run many times, even
+ * concurrently. In-memory models given to the builder and bound to in-out
+ * variables are copied at the beginning of each run, so the given models
+ * are never modified and runs do not see each other's changes. In-memory
+ * models that are only read are shared by the runs, so they must not be
+ * modified while the chain runs.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString(of = "steps")
+public final class TransformationChain {
+
+    /**
+     * The steps, in order.
+     */
+    private final List<Step> steps;
+
+    /**
+     * The prepared transformation of each step.
+     */
+    private final List<PreparedTransformation> transformations;
+
+    /**
+     * The models loaded from files at the beginning of each run, by name.
+     */
+    private final Map<String, File> files;
+
+    /**
+     * The models given in memory, by name.
+     */
+    private final Map<String, Resource> resources;
+
+    /**
+     * The names of the models bound to in-out variables.
+     */
+    private final Set<String> modified;
+
+    /**
+     * The files where models are saved at the end of each run, by name.
+     */
+    private final Map<String, File> saved;
+
+    /**
+     * Runs every step.
+     * @return All the models of the chain, by name. In-memory models bound
+     *  to in-out variables are copies of the models given to the builder
+     */
+    public Map<String, Model> run() {
+        final PreparedTransformation first = this.transformations.get(0);
+        final Map<String, Resource> models = new LinkedHashMap<>();
+        for (final Map.Entry<String, File> entry : this.files.entrySet()) {
+            models.put(entry.getKey(), first.load(entry.getValue()));
+        }
+        for (final Map.Entry<String, Resource> entry
+            : this.resources.entrySet()) {
+            if (this.modified.contains(entry.getKey())) {
+                models.put(
+                    entry.getKey(),
+                    TransformationChain.copy(entry.getKey(), entry.getValue())
+                );
+            } else {
+                models.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (int index = 0; index < this.steps.size(); index += 1) {
+            final Step step = this.steps.get(index);
+            final Map<ModelType, List<NamedModel>> config =
+                AtlTransformation.Builder.emptyModels();
+            for (final Map.Entry<String, String> entry
+                : step.inputs.entrySet()) {
+                config.get(ModelType.INPUT).add(
+                    new NamedModel(entry.getKey(), models.get(entry.getValue()))
+                );
+            }
+            for (final Map.Entry<String, String> entry
+                : step.inOuts.entrySet()) {
+                config.get(ModelType.IN_OUT).add(
+                    new NamedModel(entry.getKey(), models.get(entry.getValue()))
+                );
+            }
+            for (final Map.Entry<String, String> entry
+                : step.outputs.entrySet()) {
+                final Resource resource = this.resource(entry.getValue());
+                models.put(entry.getValue(), resource);
+                config.get(ModelType.OUTPUT).add(
+                    new NamedModel(entry.getKey(), resource)
+                );
+            }
+            this.transformations.get(index).run(config);
+        }
+        for (final Map.Entry<String, File> entry : this.saved.entrySet()) {
+            try (OutputStream stream =
+                Files.newOutputStream(entry.getValue().toPath())) {
+                models.get(entry.getKey()).save(stream, first.saveOptions());
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        final Map<String, Model> result = new LinkedHashMap<>();
+        for (final Map.Entry<String, Resource> entry : models.entrySet()) {
+            final Model model = EmftvmFactory.eINSTANCE.createModel();
+            model.setResource(entry.getValue());
+            result.put(entry.getKey(), model);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the resource of an output model, in the format of its file
+     * if it is saved.
+     * @param name The model name
+     * @return An empty resource
+     */
+    private Resource resource(final String name) {
+        final File file = this.saved.get(name);
+        final Resource resource;
+        if (file == null) {
+            resource = new XMIResourceImpl(
+                URI.createURI(String.format("chain:/%s.xmi", name))
+            );
+        } else {
+            resource = ModelFormat.of(file.getName())
+                .getFactory()
+                .createResource(URI.createFileURI(file.getAbsolutePath()));
+        }
+        return resource;
+    }
+
+    /**
+     * Copies an in-memory model, so that a run can modify it in place.
+     * @param name The model name
+     * @param original The model given to the builder
+     * @return A new resource of the same format, with copies of the roots
+     */
+    private static Resource copy(final String name, final Resource original) {
+        final ModelFormat format;
+        if (original instanceof BinaryResourceImpl) {
+            format = ModelFormat.BINARY;
+        } else {
+            format = ModelFormat.XMI;
+        }
+        final Resource copy = format.getFactory().createResource(
+            URI.createURI(
+                String.format("chain:/%s.%s", name, format.getExtension())
+            )
+        );
+        copy.getContents().addAll(EcoreUtil.copyAll(original.getContents()));
+        return copy;
+    }
+
+    /**
+     * A step of a chain: an ATL module and the chain models bound to its
+     * variables.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @ToString
+    public static final class Step {
+
+        /**
+         * The path to the .atl file.
+         */
+        private final String transformation;
+
+        /**
+         * The chain models bound to the module's input variables.
+         */
+        private final Map<String, String> inputs;
+
+        /**
+         * The chain models bound to the module's in-out variables.
+         */
+        private final Map<String, String> inOuts;
+
+        /**
+         * The chain models bound to the module's output variables.
+         */
+        private final Map<String, String> outputs;
+
+        /**
+         * Default constructor.
+         * @param transformation The path to the .atl file
+         */
+        public Step(final String transformation) {
+            this.transformation = transformation;
+            this.inputs = new LinkedHashMap<>();
+            this.inOuts = new LinkedHashMap<>();
+            this.outputs = new LinkedHashMap<>();
+        }
+
+        /**
+         * Binds a chain model to an input variable of the module.
+         * @param variable The name of the ATL variable (e.g., IN)
+         * @param model The name of the chain model
+         * @return This step
+         */
+        public Step withInput(final String variable, final String model) {
+            this.inputs.put(variable, model);
+            return this;
+        }
+
+        /**
+         * Binds a chain model to an in-out variable of the module. The model
+         * is modified in place, except for in-memory models given to the
+         * builder, which are copied at the beginning of each run.
+         * @param variable The name of the ATL variable
+         * @param model The name of the chain model
+         * @return This step
+         */
+        public Step withInOut(final String variable, final String model) {
+            this.inOuts.put(variable, model);
+            return this;
+        }
+
+        /**
+         * Binds an output variable of the module to a new chain model.
+         * @param variable The name of the ATL variable (e.g., OUT)
+         * @param model The name of the chain model
+         * @return This step
+         */
+        public Step withOutput(final String variable, final String model) {
+            this.outputs.put(variable, model);
+            return this;
+        }
+    }
+
+    /**
+     * A builder of transformation chains.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    public static final class Builder {
+
+        /**
+         * The packages of the metamodels, shared by every step.
+         */
+        private final EPackage.Registry registry;
+
+        /**
+         * Pairs of metamodel name and path.
+         */
+        private final Map<String, String> metamodels;
+
+        /**
+         * The models loaded from files, by name.
+         */
+        private final Map<String, File> files;
+
+        /**
+         * The models given in memory, by name.
+         */
+        private final Map<String, Resource> resources;
+
+        /**
+         * The files where models are saved, by name.
+         */
+        private final Map<String, File> saved;
+
+        /**
+         * The steps, in order.
+         */
+        private final List<Step> steps;
+
+        /**
+         * Default constructor.
+         */
+        public Builder() {
+            this.registry =
+                new ConcurrentPackageRegistry(EPackage.Registry.INSTANCE);
+            this.metamodels = new LinkedHashMap<>();
+            this.files = new LinkedHashMap<>();
+            this.resources = new LinkedHashMap<>();
+            this.saved = new LinkedHashMap<>();
+            this.steps = new ArrayList<>();
+        }
+
+        /**
+         * Adds a metamodel, available to every step.
+         * @param name The name of the metamodel (e.g., Simple)
+         * @param path The path to the .ecore file
+         * @return This builder
+         */
+        public Builder withMetamodel(final String name, final String path) {
+            this.metamodels.put(name, path);
+            return this;
+        }
+
+        /**
+         * Adds a model that is loaded from a file at the beginning of each
+         * run.
+         * @param name The name of the chain model
+         * @param path The path to the model file
+         * @return This builder
+         */
+        public Builder withModel(final String name, final String path) {
+            this.files.put(name, new File(path));
+            return this;
+        }
+
+        /**
+         * Adds an in-memory model. If a step binds it to an in-out variable,
+         * each run modifies a copy of it.
+         * @param name The name of the chain model
+         * @param resource The model resource
+         * @return This builder
+         */
+        public Builder withModel(final String name, final Resource resource) {
+            this.resources.put(name, resource);
+            return this;
+        }
+
+        /**
+         * Adds a step, run after the steps added before it.
+         * @param step The step
+         * @return This builder
+         */
+        public Builder withStep(final Step step) {
+            this.steps.add(step);
+            return this;
+        }
+
+        /**
+         * Saves a chain model at the end of each run. Output models are
+         * saved in the format given by the file extension; other models keep
+         * the format they were loaded in.
+         * @param name The name of the chain model
+         * @param path The path to the model file
+         * @return This builder
+         */
+        public Builder withSaving(final String name, final String path) {
+            this.saved.put(name, new File(path));
+            return this;
+        }
+
+        /**
+         * Validates the chain and prepares every step.
+         * @return A new chain
+         */
+        public TransformationChain build() {
+            if (this.steps.isEmpty()) {
+                throw new IllegalArgumentException(
+                    "At least one step is required");
+            }
+            final Set<String> available = new HashSet<>(this.files.keySet());
+            for (final String model : this.resources.keySet()) {
+                if (!available.add(model)) {
+                    throw new IllegalArgumentException(
+                        String.format(
+                            "Model %s is given both as a file and in memory",
+                            model
+                        )
+                    );
+                }
+            }
+            final List<PreparedTransformation> prepared =
+                new ArrayList<>(this.steps.size());
+            for (final Step step : this.steps) {
+                final List<String> consumed =
+                    new ArrayList<>(step.inputs.values());
+                consumed.addAll(step.inOuts.values());
+                for (final String model : consumed) {
+                    if (!available.contains(model)) {
+                        throw new IllegalArgumentException(
+                            String.format(
+                                "Model %s is used by %s before it is created",
+                                model,
+                                step.transformation
+                            )
+                        );
+                    }
+                }
+                for (final String model : step.outputs.values()) {
+                    if (!available.add(model)) {
+                        throw new IllegalArgumentException(
+                            String.format(
+                                "Model %s is created by %s, but it was "
+                                    + "already given or created",
+                                model,
+                                step.transformation
+                            )
+                        );
+                    }
+                }
+                prepared.add(this.prepare(step));
+            }
+            for (final String model : this.saved.keySet()) {
+                if (!available.contains(model)) {
+                    throw new IllegalArgumentException(
+                        String.format("Model %s is never created", model)
+                    );
+                }
+            }
+            final Set<String> modified = new HashSet<>();
+            for (final Step step : this.steps) {
+                modified.addAll(step.inOuts.values());
+            }
+            return new TransformationChain(
+                new ArrayList<>(this.steps),
+                prepared,
+                new LinkedHashMap<>(this.files),
+                new LinkedHashMap<>(this.resources),
+                modified,
+                new LinkedHashMap<>(this.saved)
+            );
+        }
+
+        /**
+         * Prepares the transformation of a step. The models given to its
+         * builder are placeholders, replaced by the chain models on each run.
+         * @param step The step
+         * @return The prepared transformation
+         */
+        private PreparedTransformation prepare(final Step step) {
+            final AtlTransformation.Builder builder =
+                new AtlTransformation.Builder(this.registry)
+                    .withTransformation(step.transformation);
+            for (final Map.Entry<String, String> entry
+                : this.metamodels.entrySet()) {
+                builder.withMetamodel(entry.getKey(), entry.getValue());
+            }
+            for (final String variable : step.inputs.keySet()) {
+                builder.withModel(
+                    ModelType.INPUT,
+                    variable,
+                    new XMIResourceImpl()
+                );
+            }
+            for (final String variable : step.inOuts.keySet()) {
+                builder.withModel(
+                    ModelType.IN_OUT,
+                    variable,
+                    new XMIResourceImpl()
+                );
+            }
+            for (final String variable : step.outputs.keySet()) {
+                builder.withModel(
+                    ModelType.OUTPUT,
+                    variable,
+                    new XMIResourceImpl()
+                );
+            }
+            return builder.build().prepare();
+        }
+    }
+
+}
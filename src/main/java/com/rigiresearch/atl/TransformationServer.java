@@ -0,0 +1,617 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.ToString;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.eclipse.m2m.atl.emftvm.Model;
+
+/**
+ * A long-lived HTTP server that keeps prepared transformations resident and
+ * runs jobs concurrently, so callers do not pay for JVM startup and class
+ * loading on every transformation. It listens on the loopback interface
+ * only.
+ * <p>
+ * Jobs must send the server's token in the {@value #TOKEN} header, and
+ * requests from browsers must come from the server's own origin, so that
+ * web pages cannot submit jobs (cross-site request forgery). Model paths are
+ * resolved against the server's root directory, and paths outside of it are
+ * rejected.
+ * <p>
+ * Endpoints:
+ * <ul>
+ *  <li>{@code POST /transform?module=<name>&in.<VAR>=<path>&out.<VAR>=<path>}
+ *  runs a job. Input and output models are given by their ATL variable
+ *  names. Use {@code -} as the path of one input model to read it as XMI
+ *  from the request body, and as the path of one output model to get it as
+ *  XMI in the response body. Otherwise, output models are saved to their
+ *  paths and the response describes the job in JSON.</li>
+ *  <li>{@code GET /health} reports the server status and its modules.</li>
+ *  <li>{@code GET /stats} reports job counts, throughput and latency.</li>
+ * </ul>
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = "modules")
+public final class TransformationServer {
+
+    /**
+     * The path used to read an input from, or write an output to, the HTTP
+     * body.
+     */
+    private static final String BODY = "-";
+
+    /**
+     * The prefix of input model parameters.
+     */
+    private static final String INPUT = "in.";
+
+    /**
+     * The prefix of output model parameters.
+     */
+    private static final String OUTPUT = "out.";
+
+    /**
+     * The header that carries the server's token.
+     */
+    private static final String TOKEN = "X-Auth-Token";
+
+    /**
+     * The number of random bytes of generated tokens.
+     */
+    private static final int TOKEN_BYTES = 16;
+
+    /**
+     * HTTP status for successful requests.
+     */
+    private static final int OK = 200;
+
+    /**
+     * HTTP status for malformed requests.
+     */
+    private static final int BAD_REQUEST = 400;
+
+    /**
+     * HTTP status for unauthorized requests and paths outside of the root.
+     */
+    private static final int FORBIDDEN = 403;
+
+    /**
+     * HTTP status for unsupported methods.
+     */
+    private static final int NOT_ALLOWED = 405;
+
+    /**
+     * HTTP status for failed jobs.
+     */
+    private static final int ERROR = 500;
+
+    /**
+     * Pairs of module name and prepared transformation.
+     */
+    private final Map<String, PreparedTransformation> modules;
+
+    /**
+     * The real path of the directory model paths are resolved against.
+     */
+    private final Path root;
+
+    /**
+     * The token jobs must send.
+     */
+    private final String token;
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The job executor.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The time the server started, in nanoseconds.
+     */
+    private final long started;
+
+    /**
+     * The number of jobs that completed successfully.
+     */
+    private final AtomicLong completed;
+
+    /**
+     * The number of jobs that failed.
+     */
+    private final AtomicLong failed;
+
+    /**
+     * The number of jobs being executed.
+     */
+    private final AtomicInteger running;
+
+    /**
+     * The cumulative duration of finished jobs, in nanoseconds.
+     */
+    private final AtomicLong busy;
+
+    /**
+     * Secondary constructor. Model paths are resolved against the working
+     * directory, and a random token is generated (see {@link #token()}).
+     * @param modules Pairs of module name and prepared transformation
+     * @param port The local port to listen on
+     * @param threads The maximum number of concurrent jobs
+     * @throws IOException If the server cannot bind to the port
+     */
+    public TransformationServer(
+        final Map<String, PreparedTransformation> modules, final int port,
+        final int threads) throws IOException {
+        this(
+            modules,
+            port,
+            threads,
+            new File("."),
+            TransformationServer.randomToken()
+        );
+    }
+
+    /**
+     * Default constructor.
+     * @param modules Pairs of module name and prepared transformation
+     * @param port The local port to listen on
+     * @param threads The maximum number of concurrent jobs
+     * @param root The directory model paths are resolved against
+     * @param token The token jobs must send in the {@value #TOKEN} header
+     * @throws IOException If the server cannot bind to the port, or the
+     *  root directory does not exist
+     */
+    public TransformationServer(
+        final Map<String, PreparedTransformation> modules, final int port,
+        final int threads, final File root, final String token)
+        throws IOException {
+        if (token.isEmpty()) {
+            throw new IllegalArgumentException("The token cannot be empty");
+        }
+        this.modules = modules;
+        this.root = root.toPath().toRealPath();
+        this.token = token;
+        this.server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+            0
+        );
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.started = System.nanoTime();
+        this.completed = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.running = new AtomicInteger();
+        this.busy = new AtomicLong();
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/transform", this::transform);
+        this.server.createContext("/health", this::health);
+        this.server.createContext("/stats", this::stats);
+    }
+
+    /**
+     * Starts accepting jobs.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stops accepting jobs and waits for the running ones to finish.
+     * @param timeout The maximum number of seconds to wait
+     */
+    public void stop(final int timeout) {
+        this.server.stop(timeout);
+        this.executor.shutdown();
+    }
+
+    /**
+     * The address the server listens on.
+     * @return The socket address
+     */
+    public InetSocketAddress address() {
+        return this.server.getAddress();
+    }
+
+    /**
+     * The token jobs must send in the {@value #TOKEN} header.
+     * @return The token
+     */
+    public String token() {
+        return this.token;
+    }
+
+    /**
+     * Runs a job.
+     * @param exchange The HTTP exchange
+     * @throws IOException If the response cannot be sent
+     */
+    private void transform(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            TransformationServer.send(
+                exchange,
+                TransformationServer.NOT_ALLOWED,
+                TransformationServer.error("Use POST")
+            );
+            return;
+        }
+        if (!this.authorized(exchange)) {
+            TransformationServer.send(
+                exchange,
+                TransformationServer.FORBIDDEN,
+                TransformationServer.error(
+                    String.format(
+                        "Missing or invalid %s header, or foreign origin",
+                        TransformationServer.TOKEN
+                    )
+                )
+            );
+            return;
+        }
+        final Map<String, String> params = TransformationServer.params(
+            exchange.getRequestURI().getRawQuery()
+        );
+        final PreparedTransformation module =
+            this.modules.get(params.get("module"));
+        if (module == null) {
+            TransformationServer.send(
+                exchange,
+                TransformationServer.BAD_REQUEST,
+                TransformationServer.error(
+                    String.format("Unknown module %s", params.get("module"))
+                )
+            );
+            return;
+        }
+        for (final String prefix : new String[] {
+            TransformationServer.INPUT, TransformationServer.OUTPUT}) {
+            if (TransformationServer.inline(params, prefix) > 1) {
+                TransformationServer.send(
+                    exchange,
+                    TransformationServer.BAD_REQUEST,
+                    TransformationServer.error(
+                        String.format(
+                            "At most one %s* parameter can be %s",
+                            prefix,
+                            TransformationServer.BODY
+                        )
+                    )
+                );
+                return;
+            }
+        }
+        for (final Map.Entry<String, String> entry : params.entrySet()) {
+            if (TransformationServer.model(entry.getKey())
+                && !TransformationServer.BODY.equals(entry.getValue())
+                && this.file(entry.getValue()) == null) {
+                TransformationServer.send(
+                    exchange,
+                    TransformationServer.FORBIDDEN,
+                    TransformationServer.error(
+                        String.format(
+                            "Path %s is outside of %s",
+                            entry.getValue(),
+                            this.root
+                        )
+                    )
+                );
+                return;
+            }
+        }
+        final long start = System.nanoTime();
+        this.running.incrementAndGet();
+        try {
+            final byte[] response = this.execute(module, params, exchange);
+            this.completed.incrementAndGet();
+            TransformationServer.send(
+                exchange,
+                TransformationServer.OK,
+                response
+            );
+        } catch (final IOException | RuntimeException exception) {
+            this.failed.incrementAndGet();
+            TransformationServer.send(
+                exchange,
+                TransformationServer.ERROR,
+                TransformationServer.error(exception.toString())
+            );
+        } finally {
+            this.running.decrementAndGet();
+            this.busy.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Executes a job.
+     * @param module The prepared transformation
+     * @param params The request parameters
+     * @param exchange The HTTP exchange
+     * @return The response body
+     * @throws IOException If a model cannot be read or saved
+     */
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private byte[] execute(final PreparedTransformation module,
+        final Map<String, String> params, final HttpExchange exchange)
+        throws IOException {
+        final Map<ModelType, List<NamedModel>> models =
+            AtlTransformation.Builder.emptyModels();
+        final Map<String, Resource> outputs = new LinkedHashMap<>();
+        String inline = null;
+        for (final Map.Entry<String, String> entry : params.entrySet()) {
+            final String key = entry.getKey();
+            final boolean body =
+                TransformationServer.BODY.equals(entry.getValue());
+            if (key.startsWith(TransformationServer.INPUT)) {
+                final String name =
+                    key.substring(TransformationServer.INPUT.length());
+                if (body) {
+                    final Resource resource;
+                    try (InputStream stream = exchange.getRequestBody()) {
+                        resource = module.load(
+                            URI.createURI("inline.xmi"),
+                            stream
+                        );
+                    }
+                    models.get(ModelType.INPUT)
+                        .add(new NamedModel(name, resource));
+                } else {
+                    models.get(ModelType.INPUT)
+                        .add(new NamedModel(name, this.file(entry.getValue())));
+                }
+            } else if (key.startsWith(TransformationServer.OUTPUT)) {
+                final String name =
+                    key.substring(TransformationServer.OUTPUT.length());
+                if (body) {
+                    inline = name;
+                    models.get(ModelType.OUTPUT)
+                        .add(new NamedModel(name, new XMIResourceImpl()));
+                } else {
+                    models.get(ModelType.OUTPUT)
+                        .add(new NamedModel(name, this.file(entry.getValue())));
+                }
+            }
+        }
+        final long start = System.nanoTime();
+        final Map<String, Model> result =
+            module.run(models);
+        for (final NamedModel ref : models.get(ModelType.OUTPUT)) {
+            if (ref.getPath() != null) {
+                result.get(ref.getName())
+                    .getResource()
+                    .save(module.saveOptions());
+            }
+            outputs.put(ref.getName(), result.get(ref.getName()).getResource());
+        }
+        final byte[] response;
+        if (inline == null) {
+            response = String.format(
+                "{\"module\":%s,\"outputs\":%d,\"elapsed\":%d}",
+                RunMetrics.quote(params.get("module")),
+                outputs.size(),
+                System.nanoTime() - start
+            ).getBytes(StandardCharsets.UTF_8);
+        } else {
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            outputs.get(inline).save(stream, module.saveOptions());
+            response = stream.toByteArray();
+        }
+        return response;
+    }
+
+    /**
+     * Checks that a job comes with the server's token and, if sent by a
+     * browser, from the server's own origin.
+     * @param exchange The HTTP exchange
+     * @return Whether the job can be executed
+     */
+    private boolean authorized(final HttpExchange exchange) {
+        final String origin = exchange.getRequestHeaders().getFirst("Origin");
+        if (origin != null) {
+            final int port = this.server.getAddress().getPort();
+            if (!origin.equals(String.format("http://127.0.0.1:%d", port))
+                && !origin.equals(String.format("http://localhost:%d", port))) {
+                return false;
+            }
+        }
+        final String sent = exchange.getRequestHeaders()
+            .getFirst(TransformationServer.TOKEN);
+        return sent != null && MessageDigest.isEqual(
+            sent.getBytes(StandardCharsets.UTF_8),
+            this.token.getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Resolves a model path against the root directory.
+     * @param path The model path
+     * @return The model file, or {@code null} if the path, or a symbolic
+     *  link on it, leads outside of the root directory
+     * @throws IOException If the real path of an existing file cannot be
+     *  found
+     */
+    private File file(final String path) throws IOException {
+        final Path resolved;
+        try {
+            resolved = this.root.resolve(path).normalize();
+        } catch (final InvalidPathException exception) {
+            return null;
+        }
+        if (!resolved.startsWith(this.root)) {
+            return null;
+        }
+        Path existing = resolved;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null || !existing.toRealPath().startsWith(this.root)) {
+            return null;
+        }
+        return resolved.toFile();
+    }
+
+    /**
+     * Reports the server status.
+     * @param exchange The HTTP exchange
+     * @throws IOException If the response cannot be sent
+     */
+    private void health(final HttpExchange exchange) throws IOException {
+        final StringBuilder json = new StringBuilder("{\"status\":\"UP\"");
+        json.append(",\"modules\":[");
+        String separator = "";
+        for (final String name : this.modules.keySet()) {
+            json.append(separator).append(RunMetrics.quote(name));
+            separator = ",";
+        }
+        json.append("]}");
+        TransformationServer.send(
+            exchange,
+            TransformationServer.OK,
+            json.toString().getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Reports job counts, throughput and latency.
+     * @param exchange The HTTP exchange
+     * @throws IOException If the response cannot be sent
+     */
+    private void stats(final HttpExchange exchange) throws IOException {
+        final long finished = this.completed.get() + this.failed.get();
+        final double uptime = (System.nanoTime() - this.started)
+            / (double) TimeUnit.SECONDS.toNanos(1);
+        TransformationServer.send(
+            exchange,
+            TransformationServer.OK,
+            String.format(
+                "{\"completed\":%d,\"failed\":%d,\"running\":%d,"
+                    + "\"uptime\":%.3f,\"throughput\":%.3f,\"latency\":%.3f}",
+                this.completed.get(),
+                this.failed.get(),
+                this.running.get(),
+                uptime,
+                finished / uptime,
+                finished == 0L ? 0.0
+                    : this.busy.get() / 1.0e6 / finished
+            ).getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Parses a query string.
+     * @param query The raw query string
+     * @return Pairs of parameter name and value, in order
+     * @throws UnsupportedEncodingException If UTF-8 is not supported
+     */
+    private static Map<String, String> params(final String query)
+        throws UnsupportedEncodingException {
+        final Map<String, String> params = new LinkedHashMap<>();
+        if (query != null) {
+            for (final String pair : query.split("&")) {
+                final int index = pair.indexOf('=');
+                if (index > 0) {
+                    params.put(
+                        URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                        URLDecoder.decode(pair.substring(index + 1), "UTF-8")
+                    );
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Checks whether a request parameter names an input or output model.
+     * @param key The parameter name
+     * @return Whether the parameter's value is a model path
+     */
+    private static boolean model(final String key) {
+        return key.startsWith(TransformationServer.INPUT)
+            || key.startsWith(TransformationServer.OUTPUT);
+    }
+
+    /**
+     * Counts the models with the given prefix that are read from the
+     * request body or returned in the response.
+     * @param params The request parameters
+     * @param prefix The input or output prefix
+     * @return The number of inline models
+     */
+    private static long inline(final Map<String, String> params,
+        final String prefix) {
+        return params.entrySet().stream()
+            .filter(entry -> entry.getKey().startsWith(prefix))
+            .filter(entry -> TransformationServer.BODY.equals(entry.getValue()))
+            .count();
+    }
+
+    /**
+     * Generates a random token.
+     * @return A hexadecimal token
+     */
+    private static String randomToken() {
+        final byte[] bytes = new byte[TransformationServer.TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder token = new StringBuilder();
+        for (final byte value : bytes) {
+            token.append(String.format("%02x", value));
+        }
+        return token.toString();
+    }
+
+    /**
+     * Formats an error message as JSON.
+     * @param message The error message
+     * @return The JSON-formatted bytes
+     */
+    private static byte[] error(final String message) {
+        return String.format("{\"error\":%s}", RunMetrics.quote(message))
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends a response.
+     * @param exchange The HTTP exchange
+     * @param status The HTTP status
+     * @param body The response body
+     * @throws IOException If the response cannot be sent
+     */
+    private static void send(final HttpExchange exchange, final int status,
+        final byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+
+}
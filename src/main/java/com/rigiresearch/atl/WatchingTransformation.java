@@ -0,0 +1,356 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import com.rigiresearch.atl.AtlTransformation.NamedModel;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * Runs prepared transformations again whenever the files they depend on
+ * change, in the same process. Input and in-out models, metamodels and
+ * .atl/.emftvm modules are watched with the NIO {@link WatchService}.
+ * <p>
+ * Changes are debounced: a run only starts once no file has changed for a
+ * while, so that a burst of changes (e.g., an editor saving several files)
+ * triggers a single run. Only the transformations that depend on a changed
+ * file are run. Each prepared transformation keeps its metamodels and module
+ * loaded between runs, and reloads them only if they changed. Output models
+ * are saved if the transformations were built with output saving.
+ * <p>
+ * Saving rewrites the in-out model files a transformation depends on. To not
+ * run it again because of its own writes, the modification time and size of
+ * each file it saved are recorded after the run, and changes to that file are
+ * ignored while the file still matches them.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+@ToString(of = {"jobs", "debounce"})
+public final class WatchingTransformation implements Closeable {
+
+    /**
+     * The watched transformations, by name.
+     */
+    private final Map<String, Job> jobs;
+
+    /**
+     * The quiet period that ends a burst of changes, in milliseconds.
+     */
+    private final long debounce;
+
+    /**
+     * The listener notified after each run.
+     */
+    private final RerunListener listener;
+
+    /**
+     * The watch service, or {@code null} if not watching.
+     */
+    private volatile WatchService service;
+
+    /**
+     * Default constructor.
+     * @param debounce The quiet period that ends a burst of changes, in
+     *  milliseconds
+     * @param listener The listener notified after each run
+     */
+    public WatchingTransformation(final long debounce,
+        final RerunListener listener) {
+        this.jobs = new LinkedHashMap<>();
+        this.debounce = debounce;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a transformation to run when its files change.
+     * @param name The name of the transformation, used in reports
+     * @param transformation The prepared transformation
+     * @param models The input, output and in-out models
+     * @return This object
+     */
+    public WatchingTransformation watch(final String name,
+        final PreparedTransformation transformation,
+        final Map<ModelType, List<NamedModel>> models) {
+        this.jobs.put(
+            name,
+            new Job(
+                name,
+                transformation,
+                models,
+                WatchingTransformation.paths(
+                    transformation.dependencies(models)
+                ),
+                WatchingTransformation.paths(transformation.outputs(models))
+            )
+        );
+        return this;
+    }
+
+    /**
+     * Adds a transformation to run on the models given to its builder when
+     * its files change.
+     * @param name The name of the transformation, used in reports
+     * @param transformation The prepared transformation
+     * @return This object
+     */
+    public WatchingTransformation watch(final String name,
+        final PreparedTransformation transformation) {
+        return this.watch(name, transformation, transformation.models());
+    }
+
+    /**
+     * Runs every transformation once, then watches their files and runs the
+     * affected transformations after each burst of changes, until this
+     * object is closed.
+     * @throws IOException If the directories cannot be watched
+     * @throws InterruptedException If interrupted while watching
+     */
+    public void run() throws IOException, InterruptedException {
+        this.service = FileSystems.getDefault().newWatchService();
+        try {
+            final Set<Path> directories = new HashSet<>();
+            for (final Job job : this.jobs.values()) {
+                for (final Path file : job.files) {
+                    final Path directory = file.getParent();
+                    if (directory != null && directories.add(directory)) {
+                        directory.register(
+                            this.service,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE
+                        );
+                    }
+                }
+            }
+            for (final Job job : this.jobs.values()) {
+                this.rerun(job, Collections.emptySet(), System.nanoTime());
+            }
+            while (true) {
+                final WatchKey key = this.service.take();
+                final long first = System.nanoTime();
+                final Set<Path> changes = new LinkedHashSet<>();
+                this.collect(key, changes);
+                WatchKey next = this.service.poll(
+                    this.debounce,
+                    TimeUnit.MILLISECONDS
+                );
+                while (next != null) {
+                    this.collect(next, changes);
+                    next = this.service.poll(
+                        this.debounce,
+                        TimeUnit.MILLISECONDS
+                    );
+                }
+                for (final Job job : this.jobs.values()) {
+                    final Set<Path> affecting = new LinkedHashSet<>(changes);
+                    affecting.retainAll(job.files);
+                    affecting.removeIf(job::saved);
+                    if (!affecting.isEmpty()) {
+                        this.rerun(job, affecting, first);
+                    }
+                }
+            }
+        } catch (final ClosedWatchServiceException exception) {
+            // Closed from another thread; stop watching
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * Stops watching. The current run, if any, is completed.
+     * @throws IOException If the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        final WatchService current = this.service;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Adds the files changed in a watched directory, and re-arms its key.
+     * Files of all the transformations are added if events were lost.
+     * @param key The key of the directory
+     * @param changes The changed files
+     */
+    private void collect(final WatchKey key, final Set<Path> changes) {
+        final Path directory = (Path) key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                for (final Job job : this.jobs.values()) {
+                    changes.addAll(job.files);
+                }
+            } else {
+                changes.add(
+                    directory.resolve((Path) event.context()).normalize()
+                );
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Runs a transformation and notifies the listener.
+     * @param job The transformation
+     * @param changes The changed files that triggered the run
+     * @param first When the first change was detected, in nanoseconds
+     */
+    private void rerun(final Job job, final Set<Path> changes,
+        final long first) {
+        final long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            job.transformation.run(job.models);
+        // A failing run, e.g. because of a half-written file, must not stop
+        // the watch
+        } catch (final RuntimeException exception) {
+            failure = exception;
+        }
+        job.stamp();
+        final long end = System.nanoTime();
+        this.listener.finished(
+            new Rerun(job.name, changes, end - first, end - start, failure)
+        );
+    }
+
+    /**
+     * The absolute paths of some files.
+     * @param files The files
+     * @return The normalized paths
+     */
+    private static Set<Path> paths(final List<File> files) {
+        final Set<Path> paths = new HashSet<>();
+        for (final File file : files) {
+            paths.add(file.toPath().toAbsolutePath().normalize());
+        }
+        return paths;
+    }
+
+    /**
+     * A watched transformation.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @RequiredArgsConstructor
+    @ToString(of = "name")
+    private static final class Job {
+
+        /**
+         * The name of the transformation.
+         */
+        private final String name;
+
+        /**
+         * The prepared transformation.
+         */
+        private final PreparedTransformation transformation;
+
+        /**
+         * The input, output and in-out models.
+         */
+        private final Map<ModelType, List<NamedModel>> models;
+
+        /**
+         * The absolute paths of the files the transformation depends on.
+         */
+        private final Set<Path> files;
+
+        /**
+         * The absolute paths of the files the transformation saves.
+         */
+        private final Set<Path> outputs;
+
+        /**
+         * The state of each saved file after the last run.
+         */
+        private final Map<Path, Stamp> saved = new HashMap<>();
+
+        /**
+         * Records the state of the saved files, after a run.
+         */
+        void stamp() {
+            this.saved.clear();
+            for (final Path file : this.outputs) {
+                final Stamp stamp = Stamp.of(file);
+                if (stamp != null) {
+                    this.saved.put(file, stamp);
+                }
+            }
+        }
+
+        /**
+         * Whether a file is as the last run saved it.
+         * @param file The absolute path of the file
+         * @return Whether a change to the file was made by the last run
+         */
+        boolean saved(final Path file) {
+            final Stamp stamp = this.saved.get(file);
+            return stamp != null && stamp.equals(Stamp.of(file));
+        }
+    }
+
+    /**
+     * The modification time and size of a file.
+     * @author Miguel Jimenez (miguel@uvic.ca)
+     * @version $Id$
+     * @since 0.1.0
+     */
+    @Data
+    private static final class Stamp {
+
+        /**
+         * The last modification time.
+         */
+        private final FileTime modified;
+
+        /**
+         * The size, in bytes.
+         */
+        private final long size;
+
+        /**
+         * Reads the state of a file.
+         * @param file The file
+         * @return The state, or {@code null} if the file cannot be read
+         */
+        static Stamp of(final Path file) {
+            try {
+                final BasicFileAttributes attributes =
+                    Files.readAttributes(file, BasicFileAttributes.class);
+                return new Stamp(
+                    attributes.lastModifiedTime(),
+                    attributes.size()
+                );
+            } catch (final IOException exception) {
+                return null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.eclipse.m2m.atl.emftvm.Model;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks how {@link AtlTransformation} loads input models that reference
+ * each other or are bound to the same file.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class AtlTransformationTest {
+
+    /**
+     * The declarations of the Composed model files.
+     */
+    private static final String NAMESPACES = String.join(
+        " ",
+        "xmi:version=\"2.0\"",
+        "xmlns:xmi=\"http://www.omg.org/XMI\"",
+        "xmlns:student=\"http://ualberta.edu.cs.ssrg.student\""
+    );
+
+    /**
+     * A directory for the model files.
+     */
+    private Path directory;
+
+    /**
+     * Writes two models that reference each other: the supervisor of the
+     * student in the first one is the professor in the second one, whose
+     * affiliation is the department in the first one.
+     * @throws IOException If the files cannot be written
+     */
+    @BeforeEach
+    void setup() throws IOException {
+        this.directory = Files.createTempDirectory("inputs");
+        AtlTransformationTest.write(
+            this.directory.resolve("students.xmi"),
+            String.format(
+                "<xmi:XMI %s>\n"
+                    + "  <student:Student name=\"Victor Guana\">\n"
+                    + "    <supervisor href=\"professors.xmi#/\"/>\n"
+                    + "  </student:Student>\n"
+                    + "  <student:Department name=\"Computing Science\"/>\n"
+                    + "</xmi:XMI>\n",
+                AtlTransformationTest.NAMESPACES
+            )
+        );
+        AtlTransformationTest.write(
+            this.directory.resolve("professors.xmi"),
+            String.format(
+                "<student:Professor %s name=\"Eleni Stroulia\">\n"
+                    + "  <affiliation href=\"students.xmi#/1\"/>\n"
+                    + "</student:Professor>\n",
+                AtlTransformationTest.NAMESPACES
+            )
+        );
+    }
+
+    /**
+     * Deletes the model files.
+     * @throws IOException If the files cannot be deleted
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final File file : this.directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(this.directory);
+    }
+
+    /**
+     * References across inputs loaded one after another resolve to the
+     * loaded inputs.
+     */
+    @Test
+    void resolvesReferencesAcrossInputs() {
+        this.check(1);
+    }
+
+    /**
+     * References across inputs loaded concurrently, each in a resource set
+     * of its own, resolve to the loaded inputs once they are moved to the
+     * run's resource set.
+     */
+    @Test
+    void resolvesReferencesAcrossConcurrentInputs() {
+        this.check(2);
+    }
+
+    /**
+     * Runs the Composed2Simple module on both models, the second one bound
+     * twice, and checks the output and the resources the references resolve
+     * to.
+     * @param threads The loading parallelism
+     */
+    private void check(final int threads) {
+        final Resource output = new XMIResourceImpl();
+        final Map<String, Model> models = new AtlTransformation.Builder()
+            .withMetamodel("Simple", "metamodels/Simple.ecore")
+            .withMetamodel("Composed", "metamodels/Composed.ecore")
+            .withModel(
+                ModelType.INPUT,
+                "IN",
+                this.directory.resolve("students.xmi").toString()
+            )
+            .withModel(
+                ModelType.INPUT,
+                "IN2",
+                this.directory.resolve("professors.xmi").toString()
+            )
+            // The same file, bound to another variable
+            .withModel(
+                ModelType.INPUT,
+                "IN3",
+                this.directory.resolve(".").resolve("professors.xmi")
+                    .toString()
+            )
+            .withModel(ModelType.OUTPUT, "OUT", output)
+            .withTransformation("transformations/Composed2Simple.atl")
+            .withLoadingThreads(threads)
+            .build()
+            .run();
+        Assertions.assertEquals(1, output.getContents().size());
+        final EObject simple = output.getContents().get(0);
+        Assertions.assertEquals(
+            "Eleni Stroulia",
+            AtlTransformationTest.get(simple, "supervisor")
+        );
+        Assertions.assertEquals(
+            "Computing Science",
+            AtlTransformationTest.get(simple, "affiliation")
+        );
+        final Resource students = models.get("IN").getResource();
+        final Resource professors = models.get("IN2").getResource();
+        final EObject professor = (EObject) AtlTransformationTest.get(
+            students.getContents().get(0),
+            "supervisor"
+        );
+        Assertions.assertSame(professors, models.get("IN3").getResource());
+        Assertions.assertSame(professors, professor.eResource());
+        Assertions.assertSame(
+            students.getContents().get(1),
+            AtlTransformationTest.get(professor, "affiliation")
+        );
+        Assertions.assertSame(
+            students.getResourceSet(),
+            professors.getResourceSet()
+        );
+        for (final Resource input : new Resource[] {students, professors}) {
+            Assertions.assertEquals(
+                1L,
+                input.getResourceSet().getResources().stream()
+                    .filter(
+                        resource -> input.getURI().equals(resource.getURI())
+                    )
+                    .count(),
+                "A referenced input was loaded again"
+            );
+        }
+    }
+
+    /**
+     * Writes a model file.
+     * @param file The file
+     * @param contents The XML contents, without the declaration
+     * @throws IOException If the file cannot be written
+     */
+    private static void write(final Path file, final String contents)
+        throws IOException {
+        Files.write(
+            file,
+            String.format(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n%s",
+                contents
+            ).getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    /**
+     * Reads a single-valued feature of an object, resolving proxies.
+     * @param object The object
+     * @param feature The feature name
+     * @return The value
+     */
+    private static Object get(final EObject object, final String feature) {
+        return object.eGet(object.eClass().getEStructuralFeature(feature));
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link ModelCompaction} shares equal strings, trims lists and
+ * turns notifications off in a loaded model.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class ModelCompactionTest {
+
+    /**
+     * The number of students in the model.
+     */
+    private static final int SIZE = 1_000;
+
+    /**
+     * The number of distinct professors and departments.
+     */
+    private static final int DISTINCT = 100;
+
+    /**
+     * A file with the model.
+     */
+    private static Path file;
+
+    /**
+     * Writes the model. The Composed package is registered globally, so
+     * that {@link SerializationParser} can load it.
+     * @throws IOException If the file cannot be written
+     */
+    @BeforeAll
+    static void setup() throws IOException {
+        final EPackage epackage = EPackage.Registry.INSTANCE.getEPackage(
+            AtlTransformation.Builder.nsUri(
+                new File("metamodels/Composed.ecore"),
+                EPackage.Registry.INSTANCE
+            ).toString()
+        );
+        final List<EObject> students =
+            new ArrayList<>(ModelCompactionTest.SIZE);
+        for (int index = 0; index < ModelCompactionTest.SIZE; index += 1) {
+            final int group = index % ModelCompactionTest.DISTINCT;
+            final EObject department = ModelCompactionTest.create(
+                epackage,
+                "Department",
+                String.format("Department %d", group)
+            );
+            final EObject professor = ModelCompactionTest.create(
+                epackage,
+                "Professor",
+                String.format("Professor %d", group)
+            );
+            ModelCompactionTest.set(professor, "affiliation", department);
+            final EObject student = ModelCompactionTest.create(
+                epackage,
+                "Student",
+                String.format("Student %d", index)
+            );
+            ModelCompactionTest.set(student, "supervisor", professor);
+            students.add(student);
+        }
+        ModelCompactionTest.file = Files.createTempFile("composed", ".xmi");
+        new SerializationParser().save(ModelCompactionTest.file, students);
+    }
+
+    /**
+     * Deletes the model file.
+     * @throws IOException If the file cannot be deleted
+     */
+    @AfterAll
+    static void tearDown() throws IOException {
+        Files.deleteIfExists(ModelCompactionTest.file);
+    }
+
+    /**
+     * The names of different professors with the same name are the same
+     * string once compacted.
+     * @throws IOException If the model cannot be loaded
+     */
+    @Test
+    void sharesEqualStrings() throws IOException {
+        final EList<EObject> students =
+            new SerializationParser(ModelFormat.XMI, true)
+                .asEObjects(ModelCompactionTest.file);
+        for (int index = ModelCompactionTest.DISTINCT;
+            index < ModelCompactionTest.SIZE; index += 1) {
+            final EObject professor = ModelCompactionTest.supervisor(
+                students.get(index)
+            );
+            final EObject first = ModelCompactionTest.supervisor(
+                students.get(index % ModelCompactionTest.DISTINCT)
+            );
+            Assertions.assertNotSame(first, professor);
+            Assertions.assertSame(
+                ModelCompactionTest.get(first, "name"),
+                ModelCompactionTest.get(professor, "name")
+            );
+        }
+    }
+
+    /**
+     * The roots of a compacted model are kept in a list without spare
+     * capacity, and its elements do not send notifications.
+     * @throws IOException If the model cannot be loaded
+     */
+    @Test
+    void trimsListsAndTurnsNotificationsOff() throws IOException {
+        final EList<EObject> students =
+            new SerializationParser(ModelFormat.XMI, true)
+                .asEObjects(ModelCompactionTest.file);
+        Assertions.assertEquals(ModelCompactionTest.SIZE, students.size());
+        Assertions.assertEquals(
+            students.size(),
+            ((BasicEList<?>) students).data().length
+        );
+        Assertions.assertFalse(students.get(0).eResource().eDeliver());
+        final Iterator<EObject> iterator =
+            students.get(0).eResource().getAllContents();
+        while (iterator.hasNext()) {
+            Assertions.assertFalse(iterator.next().eDeliver());
+        }
+    }
+
+    /**
+     * Reads the supervisor of a student.
+     * @param student The student
+     * @return The professor
+     */
+    private static EObject supervisor(final EObject student) {
+        return (EObject) ModelCompactionTest.get(student, "supervisor");
+    }
+
+    /**
+     * Reads a feature of an object.
+     * @param object The object
+     * @param feature The feature name
+     * @return The value
+     */
+    private static Object get(final EObject object, final String feature) {
+        return object.eGet(object.eClass().getEStructuralFeature(feature));
+    }
+
+    /**
+     * Instantiates a named class of the Composed package.
+     * @param epackage The Composed package
+     * @param type The class name
+     * @param name The value of the name attribute
+     * @return A new object
+     */
+    private static EObject create(final EPackage epackage, final String type,
+        final String name) {
+        final EObject object =
+            EcoreUtil.create((EClass) epackage.getEClassifier(type));
+        ModelCompactionTest.set(object, "name", name);
+        return object;
+    }
+
+    /**
+     * Sets a feature of an object.
+     * @param object The object
+     * @param feature The feature name
+     * @param value The new value
+     */
+    private static void set(final EObject object, final String feature,
+        final Object value) {
+        object.eSet(object.eClass().getEStructuralFeature(feature), value);
+    }
+
+}
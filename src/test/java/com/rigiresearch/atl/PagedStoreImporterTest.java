@@ -0,0 +1,510 @@
+package com.rigiresearch.atl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.EcorePackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link PagedStoreImporter} imports XMI models as the
+ * {@link PagedStoreWriter} would, without loading them.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class PagedStoreImporterTest {
+
+    /**
+     * The number of students in the model imported with a bounded heap.
+     * Loaded, its 900,000 elements take several times the heap limit.
+     */
+    private static final int SIZE = 300_000;
+
+    /**
+     * The heap limit of the bounded import.
+     */
+    private static final String HEAP = "-Xmx32m";
+
+    /**
+     * A directory for the model files.
+     */
+    private Path directory;
+
+    /**
+     * Creates the directory for the model files.
+     * @throws IOException If the directory cannot be created
+     */
+    @BeforeEach
+    void setup() throws IOException {
+        this.directory = Files.createTempDirectory("import");
+    }
+
+    /**
+     * Deletes the model files.
+     * @throws IOException If the files cannot be deleted
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final File file : this.directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(this.directory);
+    }
+
+    /**
+     * References written as fragment paths, across several roots, are
+     * imported as the same elements.
+     * @throws IOException If the model cannot be written or imported
+     */
+    @Test
+    void importsReferencesByPath() throws IOException {
+        this.check(false);
+    }
+
+    /**
+     * References written as XMI identifiers are imported as the same
+     * elements.
+     * @throws IOException If the model cannot be written or imported
+     */
+    @Test
+    void importsReferencesById() throws IOException {
+        this.check(true);
+    }
+
+    /**
+     * A model with a single root, without the XMI wrapper element, is
+     * imported as the same elements.
+     * @throws IOException If the model cannot be imported
+     */
+    @Test
+    void importsSingleRoot() throws IOException {
+        final ResourceSet set = new ResourceSetImpl();
+        AtlTransformation.Builder.nsUri(
+            new File("metamodels/Composed.ecore"),
+            set.getPackageRegistry()
+        );
+        final File source = new File("models/composed.xmi");
+        final Resource expected = set.getResource(
+            URI.createFileURI(source.getAbsolutePath()),
+            true
+        );
+        final File target = this.directory.resolve("composed.xmip").toFile();
+        new PagedStoreImporter(set.getPackageRegistry())
+            .convert(source, target);
+        final Resource actual = PagedStoreImporterTest.load(set, target);
+        Assertions.assertTrue(
+            EcoreUtil.equals(expected.getContents(), actual.getContents())
+        );
+    }
+
+    /**
+     * A reference to the file itself, relative to its directory, is
+     * imported as a reference within the model.
+     * @throws IOException If the model cannot be written or imported
+     */
+    @Test
+    void importsRelativeSelfReferences() throws IOException {
+        final EPackage epackage = PagedStoreImporterTest.teams();
+        final ResourceSet set = new ResourceSetImpl();
+        set.getPackageRegistry().put(epackage.getNsURI(), epackage);
+        final File target = this.directory.resolve("teams.xmip").toFile();
+        new PagedStoreImporter(set.getPackageRegistry()).convert(
+            this.teams(
+                "<members name=\"A\">"
+                    + "<mentor href=\"./teams.xmi#//@members.1\"/>"
+                    + "</members><members name=\"B\"/>"
+            ),
+            target
+        );
+        final EObject first = PagedStoreImporterTest.load(set, target)
+            .getContents().get(0).eContents().get(0);
+        Assertions.assertEquals(
+            "B",
+            PagedStoreImporterTest.get(first, "mentor").eGet(
+                first.eClass().getEStructuralFeature("name")
+            )
+        );
+    }
+
+    /**
+     * Fragments with keys and DTDs are rejected, and the target file is not
+     * left behind.
+     * @throws IOException If the models cannot be written
+     */
+    @Test
+    void rejectsUnsupportedModels() throws IOException {
+        final EPackage epackage = PagedStoreImporterTest.teams();
+        final ResourceSet set = new ResourceSetImpl();
+        set.getPackageRegistry().put(epackage.getNsURI(), epackage);
+        final File target = this.directory.resolve("teams.xmip").toFile();
+        final File keyed = this.teams(
+            "<members name=\"A\" mentor=\"//@members[name='B']\"/>"
+                + "<members name=\"B\"/>"
+        );
+        Assertions.assertTrue(
+            Assertions.assertThrows(
+                IOException.class,
+                () -> new PagedStoreImporter(set.getPackageRegistry())
+                    .convert(keyed, target)
+            ).getMessage().contains("is not supported")
+        );
+        Assertions.assertFalse(target.exists());
+        final Path doctype = this.directory.resolve("doctype.xmi");
+        Files.write(
+            doctype,
+            String.join(
+                "\n",
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+                "<!DOCTYPE teams:Team [",
+                "  <!ENTITY secret SYSTEM \"file:///etc/hostname\">",
+                "]>",
+                "<teams:Team xmlns:teams=\"http://rigiresearch.com/atl/test/"
+                    + "teams\" name=\"&secret;\"/>",
+                ""
+            ).getBytes(StandardCharsets.UTF_8)
+        );
+        Assertions.assertThrows(
+            IOException.class,
+            () -> new PagedStoreImporter(set.getPackageRegistry())
+                .convert(doctype.toFile(), target)
+        );
+        Assertions.assertFalse(target.exists());
+    }
+
+    /**
+     * A model whose loaded elements do not fit the heap is imported with
+     * that heap.
+     * @throws IOException If the model cannot be written or read
+     * @throws InterruptedException If interrupted while converting
+     */
+    @Test
+    void importsWithinBoundedHeap() throws IOException, InterruptedException {
+        final Path source = this.directory.resolve("students.xmi");
+        try (BufferedWriter writer =
+            Files.newBufferedWriter(source, StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write(
+                "<xmi:XMI xmi:version=\"2.0\""
+                    + " xmlns:xmi=\"http://www.omg.org/XMI\""
+                    + " xmlns:student="
+                    + "\"http://ualberta.edu.cs.ssrg.student\">\n"
+            );
+            for (int index = 0; index < PagedStoreImporterTest.SIZE;
+                index += 1) {
+                writer.write(
+                    String.format(
+                        "  <student:Student name=\"Student %d\">\n"
+                            + "    <supervisor name=\"Professor %d\">\n"
+                            + "      <affiliation name=\"Department %d\"/>\n"
+                            + "    </supervisor>\n"
+                            + "  </student:Student>\n",
+                        index,
+                        index,
+                        index
+                    )
+                );
+            }
+            writer.write("</xmi:XMI>\n");
+        }
+        final Path paged = this.directory.resolve("students.xmip");
+        Assertions.assertEquals(
+            0,
+            PagedStoreImporterTest.convert(source, paged),
+            "The streaming import ran out of heap"
+        );
+        AtlTransformation.Builder.nsUri(
+            new File("metamodels/Composed.ecore"),
+            EPackage.Registry.INSTANCE
+        );
+        final PagedResourceImpl resource = new PagedResourceImpl(
+            URI.createFileURI(paged.toFile().getAbsolutePath())
+        );
+        resource.load(Collections.emptyMap());
+        try {
+            Assertions.assertEquals(
+                PagedStoreImporterTest.SIZE * 3L,
+                resource.size()
+            );
+            final EObject last = resource.getContents()
+                .get(PagedStoreImporterTest.SIZE - 1);
+            final EObject affiliation = PagedStoreImporterTest.get(
+                PagedStoreImporterTest.get(last, "supervisor"),
+                "affiliation"
+            );
+            Assertions.assertEquals(
+                String.format(
+                    "Department %d",
+                    PagedStoreImporterTest.SIZE - 1
+                ),
+                affiliation.eGet(
+                    affiliation.eClass().getEStructuralFeature("name")
+                )
+            );
+        } finally {
+            resource.unload();
+        }
+    }
+
+    /**
+     * Writes a model with cross references, imports it and compares the
+     * imported elements with the written ones.
+     * @param ids Whether references are written as XMI identifiers
+     * @throws IOException If the model cannot be written or imported
+     */
+    private void check(final boolean ids) throws IOException {
+        final EPackage epackage = PagedStoreImporterTest.teams();
+        final ResourceSet set = new ResourceSetImpl();
+        set.getPackageRegistry().put(epackage.getNsURI(), epackage);
+        final File source = this.directory.resolve("teams.xmi").toFile();
+        final XMIResourceImpl resource =
+            new XMIResourceImpl(URI.createFileURI(source.getAbsolutePath())) {
+                @Override
+                protected boolean useUUIDs() {
+                    return ids;
+                }
+            };
+        set.getResources().add(resource);
+        resource.getContents().addAll(PagedStoreImporterTest.model(epackage));
+        resource.save(Collections.emptyMap());
+        final File target = this.directory.resolve("teams.xmip").toFile();
+        new PagedStoreImporter(set.getPackageRegistry())
+            .convert(source, target);
+        final Resource actual = PagedStoreImporterTest.load(set, target);
+        Assertions.assertTrue(
+            EcoreUtil.equals(resource.getContents(), actual.getContents())
+        );
+    }
+
+    /**
+     * Writes a model file with a team.
+     * @param members The XML elements of the team's members
+     * @return The file, named teams.xmi
+     * @throws IOException If the file cannot be written
+     */
+    private File teams(final String members) throws IOException {
+        final Path file = this.directory.resolve("teams.xmi");
+        Files.write(
+            file,
+            String.format(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<teams:Team xmi:version=\"2.0\""
+                    + " xmlns:xmi=\"http://www.omg.org/XMI\""
+                    + " xmlns:teams=\"http://rigiresearch.com/atl/test/teams\""
+                    + " name=\"T\">%s</teams:Team>\n",
+                members
+            ).getBytes(StandardCharsets.UTF_8)
+        );
+        return file.toFile();
+    }
+
+    /**
+     * Converts a model with {@link com.rigiresearch.Application} in a JVM
+     * with a bounded heap.
+     * @param source The XMI file
+     * @param target The file to write
+     * @return The exit code of the JVM
+     * @throws IOException If the JVM cannot be started
+     * @throws InterruptedException If interrupted while converting
+     */
+    private static int convert(final Path source, final Path target)
+        throws IOException, InterruptedException {
+        final File java = new File(
+            System.getProperty("java.home"),
+            String.format("bin%sjava", File.separator)
+        );
+        final Process process = new ProcessBuilder(
+            java.getAbsolutePath(),
+            PagedStoreImporterTest.HEAP,
+            "-cp",
+            System.getProperty(
+                "test.classpath",
+                System.getProperty("java.class.path")
+            ),
+            "com.rigiresearch.Application",
+            "convert",
+            source.toString(),
+            target.toString()
+        ).inheritIO().start();
+        return process.waitFor();
+    }
+
+    /**
+     * Loads a paged model.
+     * @param set The resource set, with the model's packages registered
+     * @param file The paged file
+     * @return The loaded resource
+     * @throws IOException If the file cannot be loaded
+     */
+    private static Resource load(final ResourceSet set, final File file)
+        throws IOException {
+        final Resource resource =
+            new PagedResourceImpl(URI.createFileURI(file.getAbsolutePath()));
+        set.getResources().add(resource);
+        resource.load(Collections.emptyMap());
+        return resource;
+    }
+
+    /**
+     * Creates a package of teams whose members reference each other.
+     * @return The package
+     */
+    private static EPackage teams() {
+        final EcoreFactory factory = EcoreFactory.eINSTANCE;
+        final EPackage epackage = factory.createEPackage();
+        epackage.setName("teams");
+        epackage.setNsPrefix("teams");
+        epackage.setNsURI("http://rigiresearch.com/atl/test/teams");
+        final EClass team = factory.createEClass();
+        team.setName("Team");
+        final EClass person = factory.createEClass();
+        person.setName("Person");
+        team.getEStructuralFeatures().add(PagedStoreImporterTest.name());
+        final EReference members = factory.createEReference();
+        members.setName("members");
+        members.setEType(person);
+        members.setContainment(true);
+        members.setUpperBound(-1);
+        team.getEStructuralFeatures().add(members);
+        person.getEStructuralFeatures().add(PagedStoreImporterTest.name());
+        final EAttribute nicknames = PagedStoreImporterTest.name();
+        nicknames.setName("nicknames");
+        nicknames.setUpperBound(-1);
+        person.getEStructuralFeatures().add(nicknames);
+        final EReference mentor = factory.createEReference();
+        mentor.setName("mentor");
+        mentor.setEType(person);
+        person.getEStructuralFeatures().add(mentor);
+        final EReference friends = factory.createEReference();
+        friends.setName("friends");
+        friends.setEType(person);
+        friends.setUpperBound(-1);
+        person.getEStructuralFeatures().add(friends);
+        epackage.getEClassifiers().addAll(Arrays.asList(team, person));
+        return epackage;
+    }
+
+    /**
+     * Creates a name attribute.
+     * @return The attribute
+     */
+    private static EAttribute name() {
+        final EAttribute name = EcoreFactory.eINSTANCE.createEAttribute();
+        name.setName("name");
+        name.setEType(EcorePackage.Literals.ESTRING);
+        return name;
+    }
+
+    /**
+     * Creates two teams whose members reference members of both.
+     * @param epackage The package of teams
+     * @return The teams
+     */
+    private static List<EObject> model(final EPackage epackage) {
+        final List<EObject> teams = new ArrayList<>();
+        final List<EObject> people = new ArrayList<>();
+        for (int index = 0; index < 2; index += 1) {
+            final EObject team = EcoreUtil.create(
+                (EClass) epackage.getEClassifier("Team")
+            );
+            PagedStoreImporterTest.set(
+                team,
+                "name",
+                String.format("T%d", index)
+            );
+            for (int member = 0; member < 3; member += 1) {
+                final EObject person = EcoreUtil.create(
+                    (EClass) epackage.getEClassifier("Person")
+                );
+                PagedStoreImporterTest.set(
+                    person,
+                    "name",
+                    String.format("P%d.%d", index, member)
+                );
+                PagedStoreImporterTest.set(
+                    person,
+                    "nicknames",
+                    Arrays.asList("a <b>", String.format("c%d", member))
+                );
+                PagedStoreImporterTest.set(
+                    team,
+                    "members",
+                    Collections.singletonList(person)
+                );
+                people.add(person);
+            }
+            teams.add(team);
+        }
+        for (int index = 0; index < people.size(); index += 1) {
+            final EObject person = people.get(index);
+            PagedStoreImporterTest.set(
+                person,
+                "mentor",
+                people.get((index + 3) % people.size())
+            );
+            PagedStoreImporterTest.set(
+                person,
+                "friends",
+                Arrays.asList(
+                    people.get((index + 1) % people.size()),
+                    people.get((index + 4) % people.size())
+                )
+            );
+        }
+        return teams;
+    }
+
+    /**
+     * Sets a feature of an object, adding the values of many-valued
+     * features.
+     * @param object The object
+     * @param feature The feature name
+     * @param value The new value, or the values to add
+     */
+    @SuppressWarnings("unchecked")
+    private static void set(final EObject object, final String feature,
+        final Object value) {
+        final Object current =
+            object.eGet(object.eClass().getEStructuralFeature(feature));
+        if (current instanceof List) {
+            ((List<Object>) current).addAll((List<Object>) value);
+        } else {
+            object.eSet(object.eClass().getEStructuralFeature(feature), value);
+        }
+    }
+
+    /**
+     * Reads a single-valued reference of an object.
+     * @param object The object
+     * @param feature The reference name
+     * @return The referenced object
+     */
+    private static EObject get(final EObject object, final String feature) {
+        return (EObject) object.eGet(
+            object.eClass().getEStructuralFeature(feature)
+        );
+    }
+
+}
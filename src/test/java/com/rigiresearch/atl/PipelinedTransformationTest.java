@@ -0,0 +1,156 @@
+package com.rigiresearch.atl;
+
+import com.rigiresearch.atl.AtlTransformation.ModelType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link PipelinedTransformation} finishes when some input
+ * models fail.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class PipelinedTransformationTest {
+
+    /**
+     * The longest time a run may take.
+     */
+    private static final Duration TIMEOUT = Duration.ofMinutes(1L);
+
+    /**
+     * A directory for the model files.
+     */
+    private Path directory;
+
+    /**
+     * Creates the directory.
+     * @throws IOException If the directory cannot be created
+     */
+    @BeforeEach
+    void setup() throws IOException {
+        this.directory = Files.createTempDirectory("pipeline");
+    }
+
+    /**
+     * Deletes the model files.
+     * @throws IOException If the files cannot be deleted
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final File file : this.directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(this.directory);
+    }
+
+    /**
+     * A model that cannot be parsed and a model that cannot be transformed
+     * are recorded as failed, and the other models are still saved.
+     * @throws IOException If the model files cannot be written
+     */
+    @Test
+    void finishesWhenModelsFail() throws IOException {
+        final File valid = this.write(
+            "valid.xmi",
+            "<student:Student %s name=\"Victor Guana\">\n"
+                + "  <supervisor name=\"Eleni Stroulia\">\n"
+                + "    <affiliation name=\"Computing Science\"/>\n"
+                + "  </supervisor>\n"
+                + "</student:Student>\n"
+        );
+        final File malformed = this.write(
+            "malformed.xmi",
+            "<student:Student %s name=\"Victor Guana\">\n"
+        );
+        // The rule navigates the missing supervisor
+        final File unsupervised = this.write(
+            "unsupervised.xmi",
+            "<student:Student %s name=\"Victor Guana\"/>\n"
+        );
+        final List<File> files = Arrays.asList(malformed, unsupervised, valid);
+        for (final int workers : new int[] {1, 2}) {
+            final PipelinedTransformation pipeline =
+                new PipelinedTransformation(
+                    new AtlTransformation.Builder()
+                        .withMetamodel("Simple", "metamodels/Simple.ecore")
+                        .withMetamodel("Composed", "metamodels/Composed.ecore")
+                        .withModel(ModelType.INPUT, "IN", valid.toString())
+                        .withModel(
+                            ModelType.OUTPUT,
+                            "OUT",
+                            new XMIResourceImpl()
+                        )
+                        .withTransformation(
+                            "transformations/Composed2Simple.atl"
+                        )
+                        .build()
+                        .prepare(),
+                    "IN",
+                    "OUT",
+                    this.directory.resolve("%s.out.xmi").toString(),
+                    workers,
+                    1
+                );
+            final BatchResult result = Assertions.assertTimeoutPreemptively(
+                PipelinedTransformationTest.TIMEOUT,
+                () -> pipeline.run(files)
+            );
+            Assertions.assertEquals(
+                Arrays.asList(
+                    this.directory.resolve("valid.out.xmi").toFile()
+                ),
+                result.getOutputs()
+            );
+            Assertions.assertEquals(
+                new HashSet<>(Arrays.asList(malformed, unsupervised)),
+                result.getFailures().keySet()
+            );
+            Assertions.assertTrue(
+                this.directory.resolve("valid.out.xmi").toFile().isFile()
+            );
+        }
+    }
+
+    /**
+     * Writes a Composed model file.
+     * @param name The file name
+     * @param contents The XML contents, without the declaration, with a
+     *  placeholder for the namespace declarations
+     * @return The file
+     * @throws IOException If the file cannot be written
+     */
+    private File write(final String name, final String contents)
+        throws IOException {
+        final Path file = this.directory.resolve(name);
+        Files.write(
+            file,
+            String.format(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n%s",
+                String.format(
+                    contents,
+                    String.join(
+                        " ",
+                        "xmi:version=\"2.0\"",
+                        "xmlns:xmi=\"http://www.omg.org/XMI\"",
+                        "xmlns:student=\"http://ualberta.edu.cs.ssrg.student\""
+                    )
+                )
+            ).getBytes(StandardCharsets.UTF_8)
+        );
+        return file.toFile();
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.rigiresearch.atl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.impl.XMIResourceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link StreamingOutputWriter} writes the same model as a
+ * regular save.
+ * @author Miguel Jimenez (miguel@uvic.ca)
+ * @version $Id$
+ * @since 0.1.0
+ */
+final class StreamingOutputWriterTest {
+
+    /**
+     * The number of teams.
+     */
+    private static final int TEAMS = 3;
+
+    /**
+     * The number of members of each team.
+     */
+    private static final int MEMBERS = 3;
+
+    /**
+     * A directory for the model files.
+     */
+    private Path directory;
+
+    /**
+     * Creates the directory for the model files.
+     * @throws IOException If the directory cannot be created
+     */
+    @BeforeEach
+    void setup() throws IOException {
+        this.directory = Files.createTempDirectory("stream");
+    }
+
+    /**
+     * Deletes the model files.
+     * @throws IOException If the files cannot be deleted
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final File file : this.directory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(this.directory);
+    }
+
+    /**
+     * Several roots whose elements reference other elements of the same
+     * root, and the root itself, are reloaded as the same model, with the
+     * namespaces declared once.
+     * @throws IOException If the models cannot be written or loaded
+     */
+    @Test
+    void writesReferencesWithinRoots() throws IOException {
+        final EPackage epackage = StreamingOutputWriterTest.teams();
+        final File expected = this.directory.resolve("saved.xmi").toFile();
+        final Resource saved =
+            new XMIResourceImpl(URI.createFileURI(expected.getAbsolutePath()));
+        saved.getContents().addAll(StreamingOutputWriterTest.model(epackage));
+        saved.save(Collections.emptyMap());
+        final File actual = this.directory.resolve("streamed.xmi").toFile();
+        try (StreamingOutputWriter writer =
+            new StreamingOutputWriter(actual, Collections.emptyMap())) {
+            final List<EObject> roots =
+                StreamingOutputWriterTest.model(epackage);
+            // One root first, so that the rest are written after it
+            writer.write(roots.subList(0, 1));
+            writer.write(roots.subList(1, roots.size()));
+        }
+        Assertions.assertTrue(
+            EcoreUtil.equals(
+                StreamingOutputWriterTest.load(epackage, expected),
+                StreamingOutputWriterTest.load(epackage, actual)
+            )
+        );
+        final String contents = new String(
+            Files.readAllBytes(actual.toPath()),
+            StandardCharsets.UTF_8
+        );
+        for (final String declaration : new String[] {
+            "xmi:version=", "xmlns:xmi=", "xmlns:teams="}) {
+            Assertions.assertEquals(
+                contents.indexOf(declaration),
+                contents.lastIndexOf(declaration),
+                String.format("%s is declared more than once", declaration)
+            );
+        }
+    }
+
+    /**
+     * Loads a model with a regular XMI resource.
+     * @param epackage The package of teams
+     * @param file The model file
+     * @return The root elements
+     */
+    private static List<EObject> load(final EPackage epackage,
+        final File file) {
+        final ResourceSet set = new ResourceSetImpl();
+        set.getPackageRegistry().put(epackage.getNsURI(), epackage);
+        set.getResourceFactoryRegistry()
+            .getExtensionToFactoryMap()
+            .put("xmi", XMIResourceImpl::new);
+        return set.getResource(
+            URI.createFileURI(file.getAbsolutePath()),
+            true
+        ).getContents();
+    }
+
+    /**
+     * Creates a package of teams whose members reference their team and
+     * each other.
+     * @return The package
+     */
+    private static EPackage teams() {
+        final EcoreFactory factory = EcoreFactory.eINSTANCE;
+        final EPackage epackage = factory.createEPackage();
+        epackage.setName("teams");
+        epackage.setNsPrefix("teams");
+        epackage.setNsURI("http://rigiresearch.com/atl/test/streamed");
+        final EClass team = factory.createEClass();
+        team.setName("Team");
+        final EClass person = factory.createEClass();
+        person.setName("Person");
+        final EReference members = factory.createEReference();
+        members.setName("members");
+        members.setEType(person);
+        members.setContainment(true);
+        members.setUpperBound(-1);
+        team.getEStructuralFeatures().add(members);
+        final EReference captain = factory.createEReference();
+        captain.setName("captain");
+        captain.setEType(person);
+        team.getEStructuralFeatures().add(captain);
+        final EReference mentor = factory.createEReference();
+        mentor.setName("mentor");
+        mentor.setEType(person);
+        person.getEStructuralFeatures().add(mentor);
+        final EReference membership = factory.createEReference();
+        membership.setName("team");
+        membership.setEType(team);
+        person.getEStructuralFeatures().add(membership);
+        epackage.getEClassifiers().add(team);
+        epackage.getEClassifiers().add(person);
+        return epackage;
+    }
+
+    /**
+     * Creates teams whose members reference their team and the next
+     * member. The last member of each team is its captain.
+     * @param epackage The package of teams
+     * @return The teams
+     */
+    @SuppressWarnings("unchecked")
+    private static List<EObject> model(final EPackage epackage) {
+        final EClass team = (EClass) epackage.getEClassifier("Team");
+        final EClass person = (EClass) epackage.getEClassifier("Person");
+        final List<EObject> teams = new ArrayList<>();
+        for (int index = 0; index < StreamingOutputWriterTest.TEAMS;
+            index += 1) {
+            final EObject root = EcoreUtil.create(team);
+            final List<EObject> members = (List<EObject>) root.eGet(
+                team.getEStructuralFeature("members")
+            );
+            for (int member = 0; member < StreamingOutputWriterTest.MEMBERS;
+                member += 1) {
+                final EObject element = EcoreUtil.create(person);
+                element.eSet(person.getEStructuralFeature("team"), root);
+                members.add(element);
+            }
+            for (int member = 0; member < members.size(); member += 1) {
+                members.get(member).eSet(
+                    person.getEStructuralFeature("mentor"),
+                    members.get((member + 1) % members.size())
+                );
+            }
+            root.eSet(
+                team.getEStructuralFeature("captain"),
+                members.get(members.size() - 1)
+            );
+            teams.add(root);
+        }
+        return teams;
+    }
+
+}